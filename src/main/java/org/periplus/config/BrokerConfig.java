@@ -10,19 +10,86 @@ public class BrokerConfig {
     private static final long DEFAULT_SEGMENT_SIZE_BYTES = 1024L * 1024 * 1024; // 1GB
     private static final int DEFAULT_MAX_INDEX_ENTRIES = 10_000_000;
     private static final String DEFAULT_DATA_DIRECTORY = "./data";
+    private static final boolean DEFAULT_PREALLOCATE = false;
+    private static final long DEFAULT_FLUSH_INTERVAL_MESSAGES = Long.MAX_VALUE;
+    private static final long DEFAULT_FLUSH_INTERVAL_MS = 1000;
+    private static final int DEFAULT_REPLICA_FETCH_MAX_MESSAGES = 500;
+    private static final int DEFAULT_REPLICA_FETCH_MAX_IN_FLIGHT = 4;
+    private static final long DEFAULT_REPLICA_FETCH_BACKOFF_MS = 10;
+    private static final long DEFAULT_REPLICA_LAG_TIME_MAX_MS = 10_000;
+    private static final int DEFAULT_PRODUCER_SEQUENCE_WINDOW = 5;
+    private static final long DEFAULT_PRODUCER_EXPIRY_MS = 24 * 60 * 60 * 1000; // 1 day
+    private static final int DEFAULT_PRODUCER_MAX_COUNT = 10_000;
+    private static final long DEFAULT_REMOTE_UPLOAD_INTERVAL_MS = 30_000;
+    private static final int DEFAULT_REMOTE_CHUNK_BYTES = 4 * 1024 * 1024; // 4MB
+    private static final long DEFAULT_REMOTE_CACHE_BYTES = 256L * 1024 * 1024; // 256MB
+    private static final int DEFAULT_REMOTE_PREFETCH_CHUNKS = 1;
+    private static final long DEFAULT_QUOTA_UNLIMITED = Long.MAX_VALUE;
+    private static final long DEFAULT_QUOTA_BURST_MS = 1000;
+    private static final long DEFAULT_QUOTA_MAX_THROTTLE_MS = 30_000;
+    private static final long DEFAULT_QUOTA_CLIENT_IDLE_MS = 60 * 60 * 1000; // 1 hour
+    private static final long DEFAULT_CONNECTION_MAX_INFLIGHT_BYTES = 100L * 1024 * 1024; // 100MB
+    private static final long DEFAULT_TRANSACTION_TIMEOUT_MS = 60_000;
+    private static final long DEFAULT_FETCH_MAX_SCAN_BYTES = 16L * 1024 * 1024; // 16MB
 
     private final long segmentSizeBytes;
     private final int maxIndexEntries;
     private final String dataDirectory;
+    private final boolean preallocate;
+    private final long flushIntervalMessages;
+    private final long flushIntervalMs;
     private final int brokerId;
     private final String listenAddress;
+    private final int replicaFetchMaxMessages;
+    private final int replicaFetchMaxInFlight;
+    private final long replicaFetchBackoffMs;
+    private final long replicaLagTimeMaxMs;
+    private final int producerSequenceWindow;
+    private final long producerExpiryMs;
+    private final int producerMaxCount;
+    private final long remoteUploadIntervalMs;
+    private final int remoteChunkBytes;
+    private final long remoteCacheBytes;
+    private final int remotePrefetchChunks;
+    private final long quotaProduceBytesPerSecond;
+    private final long quotaFetchBytesPerSecond;
+    private final long quotaRequestsPerSecond;
+    private final long quotaBurstMs;
+    private final long quotaMaxThrottleMs;
+    private final long quotaClientIdleMs;
+    private final long connectionMaxInFlightBytes;
+    private final long transactionTimeoutMs;
+    private final long fetchMaxScanBytes;
 
     private BrokerConfig(Builder builder) {
         this.segmentSizeBytes = builder.segmentSizeBytes;
         this.maxIndexEntries = builder.maxIndexEntries;
         this.dataDirectory = builder.dataDirectory;
+        this.preallocate = builder.preallocate;
+        this.flushIntervalMessages = builder.flushIntervalMessages;
+        this.flushIntervalMs = builder.flushIntervalMs;
         this.brokerId = builder.brokerId;
         this.listenAddress = builder.listenAddress;
+        this.replicaFetchMaxMessages = builder.replicaFetchMaxMessages;
+        this.replicaFetchMaxInFlight = builder.replicaFetchMaxInFlight;
+        this.replicaFetchBackoffMs = builder.replicaFetchBackoffMs;
+        this.replicaLagTimeMaxMs = builder.replicaLagTimeMaxMs;
+        this.producerSequenceWindow = builder.producerSequenceWindow;
+        this.producerExpiryMs = builder.producerExpiryMs;
+        this.producerMaxCount = builder.producerMaxCount;
+        this.remoteUploadIntervalMs = builder.remoteUploadIntervalMs;
+        this.remoteChunkBytes = builder.remoteChunkBytes;
+        this.remoteCacheBytes = builder.remoteCacheBytes;
+        this.remotePrefetchChunks = builder.remotePrefetchChunks;
+        this.quotaProduceBytesPerSecond = builder.quotaProduceBytesPerSecond;
+        this.quotaFetchBytesPerSecond = builder.quotaFetchBytesPerSecond;
+        this.quotaRequestsPerSecond = builder.quotaRequestsPerSecond;
+        this.quotaBurstMs = builder.quotaBurstMs;
+        this.quotaMaxThrottleMs = builder.quotaMaxThrottleMs;
+        this.quotaClientIdleMs = builder.quotaClientIdleMs;
+        this.connectionMaxInFlightBytes = builder.connectionMaxInFlightBytes;
+        this.transactionTimeoutMs = builder.transactionTimeoutMs;
+        this.fetchMaxScanBytes = builder.fetchMaxScanBytes;
     }
 
     // Modern factory method (Java 9+)
@@ -36,8 +103,31 @@ public class BrokerConfig {
                 .segmentSizeBytes(parseLong(props, "log.segment.bytes", DEFAULT_SEGMENT_SIZE_BYTES))
                 .maxIndexEntries(parseInt(props, "log.index.max.entries", DEFAULT_MAX_INDEX_ENTRIES))
                 .dataDirectory(props.getProperty("log.data.directory", DEFAULT_DATA_DIRECTORY))
+                .preallocate(parseBoolean(props, "log.preallocate", DEFAULT_PREALLOCATE))
+                .flushIntervalMessages(parseLong(props, "log.flush.interval.messages", DEFAULT_FLUSH_INTERVAL_MESSAGES))
+                .flushIntervalMs(parseLong(props, "log.flush.interval.ms", DEFAULT_FLUSH_INTERVAL_MS))
                 .brokerId(parseInt(props, "broker.id"))
                 .listenAddress(props.getProperty("network.listen.address"))
+                .replicaFetchMaxMessages(parseInt(props, "replica.fetch.max.messages", DEFAULT_REPLICA_FETCH_MAX_MESSAGES))
+                .replicaFetchMaxInFlight(parseInt(props, "replica.fetch.max.inflight", DEFAULT_REPLICA_FETCH_MAX_IN_FLIGHT))
+                .replicaFetchBackoffMs(parseLong(props, "replica.fetch.backoff.ms", DEFAULT_REPLICA_FETCH_BACKOFF_MS))
+                .replicaLagTimeMaxMs(parseLong(props, "replica.lag.time.max.ms", DEFAULT_REPLICA_LAG_TIME_MAX_MS))
+                .producerSequenceWindow(parseInt(props, "producer.sequence.window", DEFAULT_PRODUCER_SEQUENCE_WINDOW))
+                .producerExpiryMs(parseLong(props, "producer.expiry.ms", DEFAULT_PRODUCER_EXPIRY_MS))
+                .producerMaxCount(parseInt(props, "producer.max.count", DEFAULT_PRODUCER_MAX_COUNT))
+                .remoteUploadIntervalMs(parseLong(props, "log.remote.upload.interval.ms", DEFAULT_REMOTE_UPLOAD_INTERVAL_MS))
+                .remoteChunkBytes(parseInt(props, "log.remote.chunk.bytes", DEFAULT_REMOTE_CHUNK_BYTES))
+                .remoteCacheBytes(parseLong(props, "log.remote.cache.bytes", DEFAULT_REMOTE_CACHE_BYTES))
+                .remotePrefetchChunks(parseInt(props, "log.remote.prefetch.chunks", DEFAULT_REMOTE_PREFETCH_CHUNKS))
+                .quotaProduceBytesPerSecond(parseLong(props, "quota.produce.bytes.per.second", DEFAULT_QUOTA_UNLIMITED))
+                .quotaFetchBytesPerSecond(parseLong(props, "quota.fetch.bytes.per.second", DEFAULT_QUOTA_UNLIMITED))
+                .quotaRequestsPerSecond(parseLong(props, "quota.requests.per.second", DEFAULT_QUOTA_UNLIMITED))
+                .quotaBurstMs(parseLong(props, "quota.burst.ms", DEFAULT_QUOTA_BURST_MS))
+                .quotaMaxThrottleMs(parseLong(props, "quota.max.throttle.ms", DEFAULT_QUOTA_MAX_THROTTLE_MS))
+                .quotaClientIdleMs(parseLong(props, "quota.client.idle.ms", DEFAULT_QUOTA_CLIENT_IDLE_MS))
+                .connectionMaxInFlightBytes(parseLong(props, "connection.max.inflight.bytes", DEFAULT_CONNECTION_MAX_INFLIGHT_BYTES))
+                .transactionTimeoutMs(parseLong(props, "transaction.timeout.ms", DEFAULT_TRANSACTION_TIMEOUT_MS))
+                .fetchMaxScanBytes(parseLong(props, "fetch.max.scan.bytes", DEFAULT_FETCH_MAX_SCAN_BYTES))
                 .build();
     }
 
@@ -47,6 +137,11 @@ public class BrokerConfig {
         return value != null ? Long.parseLong(value) : defaultValue;
     }
 
+    private static boolean parseBoolean(Properties props, String key, boolean defaultValue) {
+        String value = props.getProperty(key);
+        return value != null ? Boolean.parseBoolean(value) : defaultValue;
+    }
+
     private static int parseInt(Properties props, String key, int defaultValue) {
         String value = props.getProperty(key);
         return value != null ? Integer.parseInt(value) : defaultValue;
@@ -73,13 +168,136 @@ public class BrokerConfig {
         return dataDirectory;
     }
 
+    public boolean preallocate() {
+        return preallocate;
+    }
+
+    public long flushIntervalMessages() {
+        return flushIntervalMessages;
+    }
+
+    public long flushIntervalMs() {
+        return flushIntervalMs;
+    }
+
+    public int brokerId() {
+        return brokerId;
+    }
+
+    public String listenAddress() {
+        return listenAddress;
+    }
+
+    public int replicaFetchMaxMessages() {
+        return replicaFetchMaxMessages;
+    }
+
+    public int replicaFetchMaxInFlight() {
+        return replicaFetchMaxInFlight;
+    }
+
+    public long replicaFetchBackoffMs() {
+        return replicaFetchBackoffMs;
+    }
+
+    public long replicaLagTimeMaxMs() {
+        return replicaLagTimeMaxMs;
+    }
+
+    public int producerSequenceWindow() {
+        return producerSequenceWindow;
+    }
+
+    public long producerExpiryMs() {
+        return producerExpiryMs;
+    }
+
+    public int producerMaxCount() {
+        return producerMaxCount;
+    }
+
+    public long remoteUploadIntervalMs() {
+        return remoteUploadIntervalMs;
+    }
+
+    public int remoteChunkBytes() {
+        return remoteChunkBytes;
+    }
+
+    public long remoteCacheBytes() {
+        return remoteCacheBytes;
+    }
+
+    public int remotePrefetchChunks() {
+        return remotePrefetchChunks;
+    }
+
+    public long quotaProduceBytesPerSecond() {
+        return quotaProduceBytesPerSecond;
+    }
+
+    public long quotaFetchBytesPerSecond() {
+        return quotaFetchBytesPerSecond;
+    }
+
+    public long quotaRequestsPerSecond() {
+        return quotaRequestsPerSecond;
+    }
+
+    public long quotaBurstMs() {
+        return quotaBurstMs;
+    }
+
+    public long quotaMaxThrottleMs() {
+        return quotaMaxThrottleMs;
+    }
+
+    public long quotaClientIdleMs() {
+        return quotaClientIdleMs;
+    }
+
+    public long connectionMaxInFlightBytes() {
+        return connectionMaxInFlightBytes;
+    }
+
+    public long transactionTimeoutMs() {
+        return transactionTimeoutMs;
+    }
+
+    public long fetchMaxScanBytes() {
+        return fetchMaxScanBytes;
+    }
+
     // Builder pattern (Effective Java Item 2)
     public static class Builder {
         private long segmentSizeBytes = DEFAULT_SEGMENT_SIZE_BYTES;
         private int maxIndexEntries = DEFAULT_MAX_INDEX_ENTRIES;
         private String dataDirectory = DEFAULT_DATA_DIRECTORY;
+        private boolean preallocate = DEFAULT_PREALLOCATE;
+        private long flushIntervalMessages = DEFAULT_FLUSH_INTERVAL_MESSAGES;
+        private long flushIntervalMs = DEFAULT_FLUSH_INTERVAL_MS;
         private int brokerId = -1;
         private String listenAddress;
+        private int replicaFetchMaxMessages = DEFAULT_REPLICA_FETCH_MAX_MESSAGES;
+        private int replicaFetchMaxInFlight = DEFAULT_REPLICA_FETCH_MAX_IN_FLIGHT;
+        private long replicaFetchBackoffMs = DEFAULT_REPLICA_FETCH_BACKOFF_MS;
+        private long replicaLagTimeMaxMs = DEFAULT_REPLICA_LAG_TIME_MAX_MS;
+        private int producerSequenceWindow = DEFAULT_PRODUCER_SEQUENCE_WINDOW;
+        private long producerExpiryMs = DEFAULT_PRODUCER_EXPIRY_MS;
+        private int producerMaxCount = DEFAULT_PRODUCER_MAX_COUNT;
+        private long remoteUploadIntervalMs = DEFAULT_REMOTE_UPLOAD_INTERVAL_MS;
+        private int remoteChunkBytes = DEFAULT_REMOTE_CHUNK_BYTES;
+        private long remoteCacheBytes = DEFAULT_REMOTE_CACHE_BYTES;
+        private int remotePrefetchChunks = DEFAULT_REMOTE_PREFETCH_CHUNKS;
+        private long quotaProduceBytesPerSecond = DEFAULT_QUOTA_UNLIMITED;
+        private long quotaFetchBytesPerSecond = DEFAULT_QUOTA_UNLIMITED;
+        private long quotaRequestsPerSecond = DEFAULT_QUOTA_UNLIMITED;
+        private long quotaBurstMs = DEFAULT_QUOTA_BURST_MS;
+        private long quotaMaxThrottleMs = DEFAULT_QUOTA_MAX_THROTTLE_MS;
+        private long quotaClientIdleMs = DEFAULT_QUOTA_CLIENT_IDLE_MS;
+        private long connectionMaxInFlightBytes = DEFAULT_CONNECTION_MAX_INFLIGHT_BYTES;
+        private long transactionTimeoutMs = DEFAULT_TRANSACTION_TIMEOUT_MS;
+        private long fetchMaxScanBytes = DEFAULT_FETCH_MAX_SCAN_BYTES;
 
         public Builder segmentSizeBytes(long segmentSizeBytes) {
             this.segmentSizeBytes = segmentSizeBytes;
@@ -95,6 +313,21 @@ public class BrokerConfig {
             return this;
         }
 
+        public Builder preallocate(boolean preallocate) {
+            this.preallocate = preallocate;
+            return this;
+        }
+
+        public Builder flushIntervalMessages(long flushIntervalMessages) {
+            this.flushIntervalMessages = flushIntervalMessages;
+            return this;
+        }
+
+        public Builder flushIntervalMs(long flushIntervalMs) {
+            this.flushIntervalMs = flushIntervalMs;
+            return this;
+        }
+
         public Builder brokerId(int brokerId) {
             this.brokerId = brokerId;
             return this;
@@ -105,6 +338,106 @@ public class BrokerConfig {
             return this;
         }
 
+        public Builder replicaFetchMaxMessages(int replicaFetchMaxMessages) {
+            this.replicaFetchMaxMessages = replicaFetchMaxMessages;
+            return this;
+        }
+
+        public Builder replicaFetchMaxInFlight(int replicaFetchMaxInFlight) {
+            this.replicaFetchMaxInFlight = replicaFetchMaxInFlight;
+            return this;
+        }
+
+        public Builder replicaFetchBackoffMs(long replicaFetchBackoffMs) {
+            this.replicaFetchBackoffMs = replicaFetchBackoffMs;
+            return this;
+        }
+
+        public Builder replicaLagTimeMaxMs(long replicaLagTimeMaxMs) {
+            this.replicaLagTimeMaxMs = replicaLagTimeMaxMs;
+            return this;
+        }
+
+        public Builder producerSequenceWindow(int producerSequenceWindow) {
+            this.producerSequenceWindow = producerSequenceWindow;
+            return this;
+        }
+
+        public Builder producerExpiryMs(long producerExpiryMs) {
+            this.producerExpiryMs = producerExpiryMs;
+            return this;
+        }
+
+        public Builder producerMaxCount(int producerMaxCount) {
+            this.producerMaxCount = producerMaxCount;
+            return this;
+        }
+
+        public Builder remoteUploadIntervalMs(long remoteUploadIntervalMs) {
+            this.remoteUploadIntervalMs = remoteUploadIntervalMs;
+            return this;
+        }
+
+        public Builder remoteChunkBytes(int remoteChunkBytes) {
+            this.remoteChunkBytes = remoteChunkBytes;
+            return this;
+        }
+
+        public Builder remoteCacheBytes(long remoteCacheBytes) {
+            this.remoteCacheBytes = remoteCacheBytes;
+            return this;
+        }
+
+        public Builder remotePrefetchChunks(int remotePrefetchChunks) {
+            this.remotePrefetchChunks = remotePrefetchChunks;
+            return this;
+        }
+
+        public Builder quotaProduceBytesPerSecond(long quotaProduceBytesPerSecond) {
+            this.quotaProduceBytesPerSecond = quotaProduceBytesPerSecond;
+            return this;
+        }
+
+        public Builder quotaFetchBytesPerSecond(long quotaFetchBytesPerSecond) {
+            this.quotaFetchBytesPerSecond = quotaFetchBytesPerSecond;
+            return this;
+        }
+
+        public Builder quotaRequestsPerSecond(long quotaRequestsPerSecond) {
+            this.quotaRequestsPerSecond = quotaRequestsPerSecond;
+            return this;
+        }
+
+        public Builder quotaBurstMs(long quotaBurstMs) {
+            this.quotaBurstMs = quotaBurstMs;
+            return this;
+        }
+
+        public Builder quotaMaxThrottleMs(long quotaMaxThrottleMs) {
+            this.quotaMaxThrottleMs = quotaMaxThrottleMs;
+            return this;
+        }
+
+        public Builder quotaClientIdleMs(long quotaClientIdleMs) {
+            this.quotaClientIdleMs = quotaClientIdleMs;
+            return this;
+        }
+
+        public Builder connectionMaxInFlightBytes(long connectionMaxInFlightBytes) {
+            this.connectionMaxInFlightBytes = connectionMaxInFlightBytes;
+            return this;
+        }
+
+        public Builder transactionTimeoutMs(long transactionTimeoutMs) {
+            this.transactionTimeoutMs = transactionTimeoutMs;
+            return this;
+        }
+
+        public Builder fetchMaxScanBytes(long fetchMaxScanBytes) {
+            this.fetchMaxScanBytes = fetchMaxScanBytes;
+            return this;
+        }
+
         public BrokerConfig build() {
             validateConfig();
             return new BrokerConfig(this);
@@ -114,6 +447,23 @@ public class BrokerConfig {
             if (brokerId < 0) throw new IllegalStateException("broker.id must be set");
             if (listenAddress == null) throw new IllegalStateException("network.listen.address must be set");
             if (segmentSizeBytes <= 0) throw new IllegalArgumentException("log.segment.bytes must be positive");
+            if (flushIntervalMessages <= 0) throw new IllegalArgumentException("log.flush.interval.messages must be positive");
+            if (flushIntervalMs <= 0) throw new IllegalArgumentException("log.flush.interval.ms must be positive");
+            if (replicaFetchMaxMessages <= 0) throw new IllegalArgumentException("replica.fetch.max.messages must be positive");
+            if (replicaFetchMaxInFlight <= 0) throw new IllegalArgumentException("replica.fetch.max.inflight must be positive");
+            if (producerSequenceWindow <= 0) throw new IllegalArgumentException("producer.sequence.window must be positive");
+            if (producerExpiryMs <= 0) throw new IllegalArgumentException("producer.expiry.ms must be positive");
+            if (producerMaxCount <= 0) throw new IllegalArgumentException("producer.max.count must be positive");
+            if (remoteChunkBytes <= 0) throw new IllegalArgumentException("log.remote.chunk.bytes must be positive");
+            if (remoteCacheBytes < remoteChunkBytes) throw new IllegalArgumentException("log.remote.cache.bytes must hold at least one chunk");
+            if (quotaProduceBytesPerSecond <= 0) throw new IllegalArgumentException("quota.produce.bytes.per.second must be positive");
+            if (quotaFetchBytesPerSecond <= 0) throw new IllegalArgumentException("quota.fetch.bytes.per.second must be positive");
+            if (quotaRequestsPerSecond <= 0) throw new IllegalArgumentException("quota.requests.per.second must be positive");
+            if (quotaBurstMs <= 0) throw new IllegalArgumentException("quota.burst.ms must be positive");
+            if (quotaClientIdleMs <= 0) throw new IllegalArgumentException("quota.client.idle.ms must be positive");
+            if (connectionMaxInFlightBytes <= 0) throw new IllegalArgumentException("connection.max.inflight.bytes must be positive");
+            if (transactionTimeoutMs <= 0) throw new IllegalArgumentException("transaction.timeout.ms must be positive");
+            if (fetchMaxScanBytes <= 0) throw new IllegalArgumentException("fetch.max.scan.bytes must be positive");
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,225 @@
+package org.periplus.memory;
+
+import java.lang.ref.Cleaner;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A pool of direct buffers in power-of-two size classes, shared by the whole broker. Each thread
+ * keeps a few released buffers of every class for itself, so the common acquire/release pair on
+ * one thread touches no shared state and allocates nothing.
+ *
+ * <p>The pool never holds more than {@code maxDirectBytes} of direct memory. Once that much has
+ * been allocated, requests that find no free buffer get a heap buffer instead, and so do requests
+ * larger than the biggest size class; neither is pooled.
+ *
+ * <p>With leak detection on, the pool remembers where every outstanding buffer was acquired, and
+ * releasing a buffer twice or one it did not hand out fails. This is meant for tests and is enabled
+ * with the {@value #LEAK_DETECTION_PROPERTY} system property for the {@link #shared()} pool.
+ */
+public final class BufferPool {
+    public static final String MAX_DIRECT_BYTES_PROPERTY = "periplus.buffer.pool.max.bytes";
+    public static final String LEAK_DETECTION_PROPERTY = "periplus.buffer.pool.leak.detection";
+
+    private static final long DEFAULT_MAX_DIRECT_BYTES = 64L * 1024 * 1024; // 64MB
+    private static final int MIN_CLASS_SHIFT = 9; // 512B
+    private static final int MAX_CLASS_SHIFT = 20; // 1MB
+    private static final int THREAD_CACHE_SLOTS = 4;
+    private static final Cleaner CLEANER = Cleaner.create();
+    private static final BufferPool SHARED = new BufferPool(
+            Long.getLong(MAX_DIRECT_BYTES_PROPERTY, DEFAULT_MAX_DIRECT_BYTES),
+            Boolean.getBoolean(LEAK_DETECTION_PROPERTY));
+
+    private final long maxDirectBytes;
+    private final AtomicLong directBytes = new AtomicLong();
+    private final LongAdder outstanding = new LongAdder();
+    private final LongAdder heapFallbacks = new LongAdder();
+    private final List<ArrayDeque<ByteBuffer>> freeLists = new ArrayList<>();
+    private final ThreadLocal<ThreadCache> threadCaches = ThreadLocal.withInitial(this::newThreadCache);
+    // allocation site of every outstanding buffer; null unless leak detection is on
+    private final Map<ByteBuffer, Throwable> allocationSites;
+
+    public BufferPool(long maxDirectBytes, boolean leakDetection) {
+        this.maxDirectBytes = maxDirectBytes;
+        this.allocationSites = leakDetection ? Collections.synchronizedMap(new IdentityHashMap<>()) : null;
+        for (int shift = MIN_CLASS_SHIFT; shift <= MAX_CLASS_SHIFT; shift++) {
+            freeLists.add(new ArrayDeque<>());
+        }
+    }
+
+    public static BufferPool shared() {
+        return SHARED;
+    }
+
+    /**
+     * Returns a cleared buffer with at least {@code size} bytes of capacity and its limit set to
+     * {@code size}. It must be handed back with {@link #release} exactly once.
+     */
+    public ByteBuffer acquire(int size) {
+        int sizeClass = sizeClass(size);
+        ByteBuffer buffer = null;
+        if (sizeClass >= 0) {
+            buffer = threadCaches.get().poll(sizeClass);
+            if (buffer == null) {
+                buffer = pollShared(sizeClass);
+            }
+            if (buffer == null) {
+                buffer = allocate(sizeClass);
+            }
+        }
+        if (buffer == null) {
+            heapFallbacks.increment();
+            buffer = ByteBuffer.allocate(sizeClass >= 0 ? capacityOf(sizeClass) : size);
+        }
+
+        buffer.clear().limit(size);
+        outstanding.increment();
+        if (allocationSites != null) {
+            allocationSites.put(buffer, new Throwable("buffer of " + size + " bytes acquired here"));
+        }
+        return buffer;
+    }
+
+    public void release(ByteBuffer buffer) {
+        if (allocationSites != null && allocationSites.remove(buffer) == null) {
+            throw new IllegalStateException("buffer released twice or not acquired from this pool");
+        }
+        outstanding.decrement();
+
+        if (!buffer.isDirect()) {
+            return;
+        }
+        int sizeClass = sizeClass(buffer.capacity());
+        if (!threadCaches.get().offer(sizeClass, buffer)) {
+            ArrayDeque<ByteBuffer> freeList = freeLists.get(sizeClass);
+            synchronized (freeList) {
+                freeList.push(buffer);
+            }
+        }
+    }
+
+    private ByteBuffer pollShared(int sizeClass) {
+        ArrayDeque<ByteBuffer> freeList = freeLists.get(sizeClass);
+        synchronized (freeList) {
+            return freeList.poll();
+        }
+    }
+
+    private ByteBuffer allocate(int sizeClass) {
+        int capacity = capacityOf(sizeClass);
+        while (true) {
+            long current = directBytes.get();
+            if (current + capacity > maxDirectBytes) {
+                return null;
+            }
+            if (directBytes.compareAndSet(current, current + capacity)) {
+                return ByteBuffer.allocateDirect(capacity);
+            }
+        }
+    }
+
+    private static int sizeClass(int size) {
+        if (size > 1 << MAX_CLASS_SHIFT) {
+            return -1;
+        }
+        int shift = Math.max(MIN_CLASS_SHIFT, 32 - Integer.numberOfLeadingZeros(Math.max(1, size) - 1));
+        return shift - MIN_CLASS_SHIFT;
+    }
+
+    private static int capacityOf(int sizeClass) {
+        return 1 << (sizeClass + MIN_CLASS_SHIFT);
+    }
+
+    /**
+     * Buffers that have been acquired and not yet released.
+     */
+    public long getOutstandingBuffers() {
+        return outstanding.sum();
+    }
+
+    /**
+     * Direct memory allocated by the pool so far; it is kept for reuse, never freed.
+     */
+    public long getDirectBytes() {
+        return directBytes.get();
+    }
+
+    public long getHeapFallbacks() {
+        return heapFallbacks.sum();
+    }
+
+    /**
+     * Fails with the allocation site of an outstanding buffer if there is one. Only buffers
+     * acquired while leak detection was on are reported.
+     */
+    public void checkForLeaks() {
+        if (allocationSites == null) {
+            return;
+        }
+        synchronized (allocationSites) {
+            if (!allocationSites.isEmpty()) {
+                Throwable site = allocationSites.values().iterator().next();
+                throw new IllegalStateException(allocationSites.size() + " buffer(s) were never released", site);
+            }
+        }
+    }
+
+    private ThreadCache newThreadCache() {
+        ThreadCache cache = new ThreadCache(freeLists.size());
+        // once the thread is gone its cached buffers go back to the shared free lists
+        CLEANER.register(cache, new Drain(freeLists, cache.slots, cache.counts));
+        return cache;
+    }
+
+    private static final class ThreadCache {
+        private final ByteBuffer[][] slots;
+        private final int[] counts;
+
+        private ThreadCache(int sizeClasses) {
+            this.slots = new ByteBuffer[sizeClasses][THREAD_CACHE_SLOTS];
+            this.counts = new int[sizeClasses];
+        }
+
+        private ByteBuffer poll(int sizeClass) {
+            int count = counts[sizeClass];
+            if (count == 0) {
+                return null;
+            }
+            counts[sizeClass] = --count;
+            ByteBuffer buffer = slots[sizeClass][count];
+            slots[sizeClass][count] = null;
+            return buffer;
+        }
+
+        private boolean offer(int sizeClass, ByteBuffer buffer) {
+            int count = counts[sizeClass];
+            if (count == THREAD_CACHE_SLOTS) {
+                return false;
+            }
+            slots[sizeClass][count] = buffer;
+            counts[sizeClass] = count + 1;
+            return true;
+        }
+    }
+
+    private record Drain(List<ArrayDeque<ByteBuffer>> freeLists, ByteBuffer[][] slots, int[] counts) implements Runnable {
+        @Override
+        public void run() {
+            for (int sizeClass = 0; sizeClass < slots.length; sizeClass++) {
+                ArrayDeque<ByteBuffer> freeList = freeLists.get(sizeClass);
+                synchronized (freeList) {
+                    for (int i = 0; i < counts[sizeClass]; i++) {
+                        freeList.push(slots[sizeClass][i]);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -1,55 +1,69 @@
 package org.periplus.network.serialization;
 
+import org.periplus.storage.ControlRecordType;
 import org.periplus.storage.Message;
 
 import java.io.*;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 import java.util.Map;
 
 public class BinaryMessageSerializer implements MessageSerializer {
+    // bits of the attributes byte that ends every record
+    static final int TRANSACTIONAL = 1;
+    private static final int CONTROL = 1 << 1;
+    private static final int ABORT = 1 << 2;
+
     @Override
     public byte[] serialize(Message message) {
-        ByteArrayOutputStream boas = new ByteArrayOutputStream();
-        DataOutputStream dos = new DataOutputStream(boas);
-
-        try {
-            dos.writeLong(message.getTimestamp());
-
-            if (message.getKey() != null) {
-                byte[] keyBytes = message.getKey().getBytes(StandardCharsets.UTF_8);
-                dos.writeInt(keyBytes.length);
-                dos.write(keyBytes);
-            } else {
-                dos.writeInt(0);
-            }
-
-            dos.writeInt(message.getValue().length());
-            dos.write(message.getValue().getBytes());
-
-            dos.writeInt(message.getHeaders().size());
-            for (Map.Entry<String, String> header : message.getHeaders().entrySet()) {
-                writeString(dos, header.getKey());
-                writeString(dos, header.getValue());
-            }
+        byte[] bytes = new byte[serializedSize(message)];
+        serialize(message, ByteBuffer.wrap(bytes));
+        return bytes;
+    }
 
-            byte[] messageBytes = boas.toByteArray();
-            ByteArrayOutputStream finalStream = new ByteArrayOutputStream();
-            DataOutputStream finalDos = new DataOutputStream(finalStream);
-            finalDos.writeInt(messageBytes.length);
-            finalDos.write(messageBytes);
+    /**
+     * Writes the record for {@code message}, length prefix included, at the buffer's position.
+     * The buffer needs {@link #serializedSize} bytes remaining; strings are encoded straight into
+     * it, so no intermediate arrays are allocated.
+     */
+    public void serialize(Message message, ByteBuffer buffer) {
+        int start = buffer.position();
+        buffer.putInt(0);
+        buffer.putLong(message.getTimestamp());
+
+        if (message.getKey() != null) {
+            putString(buffer, message.getKey());
+        } else {
+            buffer.putInt(0);
+        }
+        putString(buffer, message.getValue());
 
-            return finalStream.toByteArray();
-        } catch (IOException e) {
-            throw new SerializationException(e);
+        buffer.putInt(message.getHeaders().size());
+        for (Map.Entry<String, String> header : message.getHeaders().entrySet()) {
+            putString(buffer, header.getKey());
+            putString(buffer, header.getValue());
         }
+
+        buffer.putLong(message.getProducerId());
+        buffer.putInt(message.getSequence());
+        buffer.put(attributes(message));
+        buffer.putInt(start, buffer.position() - start - Integer.BYTES);
     }
 
+    /**
+     * Decodes a record as produced by {@link #serialize}, including its length prefix.
+     */
     @Override
     public Message deserialize(byte[] data) {
         ByteArrayInputStream bais = new ByteArrayInputStream(data);
         DataInputStream dis = new DataInputStream(bais);
         try {
+            int messageLength = dis.readInt();
+            if (messageLength != data.length - 4) {
+                throw new SerializationException("record length " + messageLength + " does not match " + (data.length - 4) + " bytes");
+            }
+
             long timestamp = dis.readLong();
 
             int keyLength = dis.readInt();
@@ -73,18 +87,90 @@ public class BinaryMessageSerializer implements MessageSerializer {
                 headers.put(headerKey, headerValue);
             }
 
-            return new Message(timestamp, key, valueString, headers);
+            long producerId = dis.readLong();
+            int sequence = dis.readInt();
+            int attributes = dis.readByte();
 
+            Message message = new Message(timestamp, key, valueString, headers, producerId, sequence);
+            message.setTransactional((attributes & TRANSACTIONAL) != 0);
+            if ((attributes & CONTROL) != 0) {
+                message.setControlType((attributes & ABORT) != 0 ? ControlRecordType.ABORT : ControlRecordType.COMMIT);
+            }
+            return message;
 
         } catch (IOException e) {
             throw new SerializationException("failed to deserialize message", e);
         }
     }
 
-    private void writeString(DataOutputStream dos, String str) throws IOException {
-        byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
-        dos.writeInt(bytes.length);
-        dos.write(bytes);
+    /**
+     * The length {@link #serialize} would produce for {@code message}, length prefix included,
+     * computed without encoding it.
+     */
+    public int serializedSize(Message message) {
+        int size = Integer.BYTES + Long.BYTES;
+        size += Integer.BYTES + (message.getKey() != null ? utf8Length(message.getKey()) : 0);
+        size += Integer.BYTES + utf8Length(message.getValue());
+        size += Integer.BYTES;
+        for (Map.Entry<String, String> header : message.getHeaders().entrySet()) {
+            size += Integer.BYTES + utf8Length(header.getKey()) + Integer.BYTES + utf8Length(header.getValue());
+        }
+        return size + Long.BYTES + Integer.BYTES + Byte.BYTES;
+    }
+
+    private static byte attributes(Message message) {
+        int attributes = message.isTransactional() ? TRANSACTIONAL : 0;
+        if (message.isControl()) {
+            attributes |= CONTROL;
+            if (message.getControlType() == ControlRecordType.ABORT) {
+                attributes |= ABORT;
+            }
+        }
+        return (byte) attributes;
+    }
+
+    private static int utf8Length(String str) {
+        int length = 0;
+        for (int i = 0; i < str.length(); i++) {
+            char c = str.charAt(i);
+            if (c < 0x80) {
+                length += 1;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < str.length() && Character.isLowSurrogate(str.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else {
+                // lone surrogates are encoded as '?'
+                length += Character.isSurrogate(c) ? 1 : 3;
+            }
+        }
+        return length;
+    }
+
+    private static void putString(ByteBuffer buffer, String str) {
+        buffer.putInt(utf8Length(str));
+        for (int i = 0; i < str.length(); i++) {
+            char c = str.charAt(i);
+            if (c < 0x80) {
+                buffer.put((byte) c);
+            } else if (c < 0x800) {
+                buffer.put((byte) (0xC0 | (c >> 6)));
+                buffer.put((byte) (0x80 | (c & 0x3F)));
+            } else if (Character.isHighSurrogate(c) && i + 1 < str.length() && Character.isLowSurrogate(str.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, str.charAt(++i));
+                buffer.put((byte) (0xF0 | (codePoint >> 18)));
+                buffer.put((byte) (0x80 | ((codePoint >> 12) & 0x3F)));
+                buffer.put((byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+                buffer.put((byte) (0x80 | (codePoint & 0x3F)));
+            } else if (Character.isSurrogate(c)) {
+                buffer.put((byte) '?');
+            } else {
+                buffer.put((byte) (0xE0 | (c >> 12)));
+                buffer.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+                buffer.put((byte) (0x80 | (c & 0x3F)));
+            }
+        }
     }
 
     public String readString(DataInputStream dis) throws IOException {
@@ -0,0 +1,104 @@
+package org.periplus.network.serialization;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Reads fields straight out of a record written by {@link BinaryMessageSerializer}, so a record
+ * can be inspected without decoding it into a {@code Message}. One view is reused for every record
+ * of a scan via {@link #wrap}.
+ */
+public class BinaryRecordView {
+    private static final int TIMESTAMP_POSITION = 4;
+    private static final int KEY_LENGTH_POSITION = 12;
+
+    private ByteBuffer buffer;
+    // index of the record's length prefix in the buffer
+    private int start;
+
+    public BinaryRecordView wrap(byte[] record) {
+        return wrap(ByteBuffer.wrap(record), 0);
+    }
+
+    /**
+     * Views the record whose length prefix is at index {@code start} of {@code buffer}, e.g. one
+     * record among many in a read buffer. Nothing is copied.
+     */
+    public BinaryRecordView wrap(ByteBuffer buffer, int start) {
+        this.buffer = buffer;
+        this.start = start;
+        return this;
+    }
+
+    public long timestamp() {
+        return buffer.getLong(start + TIMESTAMP_POSITION);
+    }
+
+    public boolean keyStartsWith(byte[] prefix) {
+        int keyLength = buffer.getInt(start + KEY_LENGTH_POSITION);
+        if (keyLength < prefix.length) {
+            return false;
+        }
+        return regionEquals(start + KEY_LENGTH_POSITION + 4, prefix);
+    }
+
+    public long producerId() {
+        return buffer.getLong(producerFieldsPosition());
+    }
+
+    public boolean isTransactional() {
+        // the attributes follow the producer id and sequence
+        int attributesPosition = producerFieldsPosition() + Long.BYTES + Integer.BYTES;
+        return (buffer.get(attributesPosition) & BinaryMessageSerializer.TRANSACTIONAL) != 0;
+    }
+
+    /**
+     * Returns true if the record has a header with exactly this name and value. Lengths are
+     * compared before any bytes, so most non-matching headers cost two int reads.
+     */
+    public boolean hasHeader(byte[] name, byte[] value) {
+        int position = start + KEY_LENGTH_POSITION;
+        position += 4 + buffer.getInt(position);
+        position += 4 + buffer.getInt(position);
+
+        int headerCount = buffer.getInt(position);
+        position += 4;
+        for (int i = 0; i < headerCount; i++) {
+            int nameLength = buffer.getInt(position);
+            int nameStart = position + 4;
+            int valueLength = buffer.getInt(nameStart + nameLength);
+            int valueStart = nameStart + nameLength + 4;
+
+            if (nameLength == name.length && valueLength == value.length
+                    && regionEquals(nameStart, name)
+                    && regionEquals(valueStart, value)) {
+                return true;
+            }
+            position = valueStart + valueLength;
+        }
+        return false;
+    }
+
+    // index just past the headers, where the producer id starts
+    private int producerFieldsPosition() {
+        int position = start + KEY_LENGTH_POSITION;
+        position += 4 + buffer.getInt(position);
+        position += 4 + buffer.getInt(position);
+        int headerCount = buffer.getInt(position);
+        position += 4;
+        for (int i = 0; i < headerCount; i++) {
+            position += 4 + buffer.getInt(position);
+            position += 4 + buffer.getInt(position);
+        }
+        return position;
+    }
+
+    // both compare whole ranges at once rather than byte by byte; pooled read buffers are direct
+    private boolean regionEquals(int index, byte[] expected) {
+        if (buffer.hasArray()) {
+            int from = buffer.arrayOffset() + index;
+            return Arrays.equals(buffer.array(), from, from + expected.length, expected, 0, expected.length);
+        }
+        return buffer.slice(index, expected.length).mismatch(ByteBuffer.wrap(expected)) == -1;
+    }
+}
@@ -0,0 +1,99 @@
+package org.periplus.network.serialization;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads the encodings written by {@link ColumnWriter}.
+ */
+class ColumnReader {
+    private final ByteBuffer buffer;
+
+    ColumnReader(ByteBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    int readByte() {
+        return buffer.get() & 0xFF;
+    }
+
+    long readVarLong() {
+        long value = 0;
+        int shift = 0;
+        while (true) {
+            int b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+            shift += 7;
+            if (shift > 63) {
+                throw new SerializationException("malformed varint");
+            }
+        }
+    }
+
+    int readVarInt() {
+        return Math.toIntExact(readVarLong());
+    }
+
+    long readLong() {
+        return buffer.getLong();
+    }
+
+    String readString() {
+        int length = readVarInt();
+        String value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+
+    long[] readDeltas(int count) {
+        long[] values = new long[count];
+        long previous = 0;
+        for (int i = 0; i < count; i++) {
+            long zigzag = readVarLong();
+            previous += (zigzag >>> 1) ^ -(zigzag & 1);
+            values[i] = previous;
+        }
+        return values;
+    }
+
+    String[] readDictionary(int count) {
+        int dictionarySize = readVarInt();
+        String[] dictionary = new String[dictionarySize + 1];
+        for (int i = 1; i <= dictionarySize; i++) {
+            dictionary[i] = readString();
+        }
+        String[] values = new String[count];
+        for (int i = 0; i < count; i++) {
+            values[i] = dictionary[readVarInt()];
+        }
+        return values;
+    }
+
+    boolean[] readBitmap(int count) {
+        boolean[] bits = new boolean[count];
+        byte[] bitmap = new byte[(count + 7) / 8];
+        buffer.get(bitmap);
+        for (int i = 0; i < count; i++) {
+            bits[i] = (bitmap[i >>> 3] & (1 << (i & 7))) != 0;
+        }
+        return bits;
+    }
+
+    /**
+     * Returns a reader over the next length-prefixed block and moves past it.
+     */
+    ColumnReader readBlock() {
+        int length = readVarInt();
+        ByteBuffer block = buffer.slice(buffer.position(), length);
+        buffer.position(buffer.position() + length);
+        return new ColumnReader(block);
+    }
+
+    void skipBlock() {
+        int length = readVarInt();
+        buffer.position(buffer.position() + length);
+    }
+}
@@ -0,0 +1,107 @@
+package org.periplus.network.serialization;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Growable byte sink with the primitive encodings used by {@link ColumnarJsonSerializer}:
+ * unsigned LEB128 varints, zigzag deltas for sorted-ish numbers and dictionary-encoded strings.
+ */
+class ColumnWriter {
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+    void writeByte(int value) {
+        out.write(value);
+    }
+
+    void writeBytes(byte[] bytes) {
+        out.write(bytes, 0, bytes.length);
+    }
+
+    void writeVarLong(long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    void writeLong(long value) {
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            out.write((int) (value >>> shift));
+        }
+    }
+
+    void writeString(String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarLong(bytes.length);
+        writeBytes(bytes);
+    }
+
+    /**
+     * Writes the first value followed by zigzag-encoded differences between neighbours, so
+     * timestamps and counters cost a byte or two each.
+     */
+    void writeDeltas(long[] values, int count) {
+        long previous = 0;
+        for (int i = 0; i < count; i++) {
+            long delta = values[i] - previous;
+            writeVarLong((delta << 1) ^ (delta >> 63));
+            previous = values[i];
+        }
+    }
+
+    /**
+     * Writes each distinct string once followed by one index per value; {@code null} is index 0.
+     */
+    void writeDictionary(List<String> values) {
+        Map<String, Integer> dictionary = new HashMap<>();
+        int[] indices = new int[values.size()];
+        ColumnWriter entries = new ColumnWriter();
+        for (int i = 0; i < values.size(); i++) {
+            String value = values.get(i);
+            if (value == null) {
+                continue;
+            }
+            Integer index = dictionary.get(value);
+            if (index == null) {
+                index = dictionary.size() + 1;
+                dictionary.put(value, index);
+                entries.writeString(value);
+            }
+            indices[i] = index;
+        }
+
+        writeVarLong(dictionary.size());
+        writeBytes(entries.toByteArray());
+        for (int index : indices) {
+            writeVarLong(index);
+        }
+    }
+
+    void writeBitmap(boolean[] bits, int count) {
+        byte[] bitmap = new byte[(count + 7) / 8];
+        for (int i = 0; i < count; i++) {
+            if (bits[i]) {
+                bitmap[i >>> 3] |= (byte) (1 << (i & 7));
+            }
+        }
+        writeBytes(bitmap);
+    }
+
+    /**
+     * Writes {@code block} behind its length so a reader can skip it without decoding it.
+     */
+    void writeBlock(ColumnWriter block) {
+        byte[] bytes = block.toByteArray();
+        writeVarLong(bytes.length);
+        writeBytes(bytes);
+    }
+
+    byte[] toByteArray() {
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,441 @@
+package org.periplus.network.serialization;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.periplus.storage.ControlRecordType;
+import org.periplus.storage.Message;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Encodes batches of messages whose values are flat JSON objects of the same shape into columns:
+ * one per top-level field, with numbers delta-encoded and strings dictionary-encoded. The schema is
+ * taken from the batch itself and written into its header, so one instance can serve each topic
+ * without a registry.
+ *
+ * <p>A value is stored in columns only if rebuilding it from the columns gives back the exact
+ * original string; anything else (other shapes, whitespace, number formatting Jackson would
+ * change) is stored as-is, so decoding always returns the original values.
+ */
+public class ColumnarJsonSerializer implements MessageSerializer {
+    private static final int MAGIC = 0x43;
+    private static final int VERSION = 1;
+
+    private static final int TYPE_LONG = 0;
+    private static final int TYPE_DOUBLE = 1;
+    private static final int TYPE_BOOLEAN = 2;
+    private static final int TYPE_STRING = 3;
+    private static final int TYPE_JSON = 4;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @Override
+    public byte[] serialize(Message message) {
+        return serializeBatch(List.of(message));
+    }
+
+    @Override
+    public Message deserialize(byte[] data) {
+        return deserializeBatch(data).get(0);
+    }
+
+    public byte[] serializeBatch(List<Message> messages) {
+        int count = messages.size();
+        ColumnWriter out = new ColumnWriter();
+        out.writeByte(MAGIC);
+        out.writeByte(VERSION);
+        out.writeVarLong(count);
+
+        long[] timestamps = new long[count];
+        long[] producerIds = new long[count];
+        long[] sequences = new long[count];
+        boolean[] transactional = new boolean[count];
+        boolean[] control = new boolean[count];
+        boolean[] abort = new boolean[count];
+        List<String> keys = new ArrayList<>(count);
+        List<String> headerNames = new ArrayList<>();
+        List<String> headerValues = new ArrayList<>();
+        ColumnWriter headerCounts = new ColumnWriter();
+        for (int i = 0; i < count; i++) {
+            Message message = messages.get(i);
+            timestamps[i] = message.getTimestamp();
+            producerIds[i] = message.getProducerId();
+            sequences[i] = message.getSequence();
+            transactional[i] = message.isTransactional();
+            control[i] = message.isControl();
+            abort[i] = message.getControlType() == ControlRecordType.ABORT;
+            keys.add(message.getKey());
+            headerCounts.writeVarLong(message.getHeaders().size());
+            for (Map.Entry<String, String> header : message.getHeaders().entrySet()) {
+                headerNames.add(header.getKey());
+                headerValues.add(header.getValue());
+            }
+        }
+        out.writeDeltas(timestamps, count);
+        out.writeDeltas(producerIds, count);
+        out.writeDeltas(sequences, count);
+        out.writeBitmap(transactional, count);
+        out.writeBitmap(control, count);
+        out.writeBitmap(abort, count);
+        out.writeDictionary(keys);
+        out.writeBytes(headerCounts.toByteArray());
+        out.writeDictionary(headerNames);
+        out.writeDictionary(headerValues);
+
+        writeValues(out, messages);
+        return out.toByteArray();
+    }
+
+    public List<Message> deserializeBatch(byte[] data) {
+        return deserializeBatch(data, null);
+    }
+
+    /**
+     * Decodes a batch, keeping only the given top-level fields in each value. Columns for other
+     * fields are skipped without being decoded. {@code null} keeps every field.
+     */
+    public List<Message> deserializeBatch(byte[] data, Set<String> fields) {
+        try {
+            ColumnReader in = new ColumnReader(ByteBuffer.wrap(data));
+            if (in.readByte() != MAGIC) {
+                throw new SerializationException("not a columnar batch");
+            }
+            int version = in.readByte();
+            if (version != VERSION) {
+                throw new SerializationException("unsupported columnar batch version " + version);
+            }
+            int count = in.readVarInt();
+
+            long[] timestamps = in.readDeltas(count);
+            long[] producerIds = in.readDeltas(count);
+            long[] sequences = in.readDeltas(count);
+            boolean[] transactional = in.readBitmap(count);
+            boolean[] control = in.readBitmap(count);
+            boolean[] abort = in.readBitmap(count);
+            String[] keys = in.readDictionary(count);
+            int[] headerCounts = new int[count];
+            int totalHeaders = 0;
+            for (int i = 0; i < count; i++) {
+                headerCounts[i] = in.readVarInt();
+                totalHeaders += headerCounts[i];
+            }
+            String[] headerNames = in.readDictionary(totalHeaders);
+            String[] headerValues = in.readDictionary(totalHeaders);
+
+            String[] values = readValues(in, count, fields);
+
+            List<Message> messages = new ArrayList<>(count);
+            int header = 0;
+            for (int i = 0; i < count; i++) {
+                Map<String, String> headers = new HashMap<>();
+                for (int h = 0; h < headerCounts[i]; h++, header++) {
+                    headers.put(headerNames[header], headerValues[header]);
+                }
+                Message message = new Message(timestamps[i], keys[i], values[i], headers, producerIds[i], (int) sequences[i]);
+                message.setTransactional(transactional[i]);
+                if (control[i]) {
+                    message.setControlType(abort[i] ? ControlRecordType.ABORT : ControlRecordType.COMMIT);
+                }
+                messages.add(message);
+            }
+            return messages;
+        } catch (SerializationException e) {
+            throw e;
+        } catch (RuntimeException | IOException e) {
+            throw new SerializationException("failed to deserialize columnar batch", e);
+        }
+    }
+
+    /**
+     * Value section: schema, a bitmap of rows stored as-is, the as-is strings, then one
+     * length-prefixed block per field holding a null bitmap and the non-null values.
+     */
+    private void writeValues(ColumnWriter out, List<Message> messages) {
+        int count = messages.size();
+        List<String> fieldNames = null;
+        int[] types = null;
+        Object[][] rows = new Object[count][];
+        boolean[] raw = new boolean[count];
+
+        for (int i = 0; i < count; i++) {
+            ObjectNode object = parseObject(messages.get(i).getValue());
+            if (object == null) {
+                raw[i] = true;
+                continue;
+            }
+            if (fieldNames == null) {
+                fieldNames = new ArrayList<>();
+                object.fieldNames().forEachRemaining(fieldNames::add);
+                types = new int[fieldNames.size()];
+                Arrays.fill(types, -1);
+            }
+            // only a row that round-trips may fix the types of its fields
+            int[] rowTypes = types.clone();
+            Object[] row = toRow(object, fieldNames, rowTypes);
+            if (row != null && render(row, fieldNames, rowTypes, null).equals(messages.get(i).getValue())) {
+                rows[i] = row;
+                types = rowTypes;
+            } else {
+                raw[i] = true;
+            }
+        }
+
+        if (fieldNames == null) {
+            fieldNames = List.of();
+            types = new int[0];
+        }
+        out.writeVarLong(fieldNames.size());
+        for (int f = 0; f < fieldNames.size(); f++) {
+            out.writeString(fieldNames.get(f));
+            // a field that is null in every row gets an arbitrary type
+            out.writeByte(types[f] < 0 ? TYPE_STRING : types[f]);
+        }
+
+        out.writeBitmap(raw, count);
+        for (int i = 0; i < count; i++) {
+            if (raw[i]) {
+                out.writeString(messages.get(i).getValue());
+            }
+        }
+
+        for (int f = 0; f < fieldNames.size(); f++) {
+            out.writeBlock(encodeColumn(rows, f, types[f]));
+        }
+    }
+
+    private ColumnWriter encodeColumn(Object[][] rows, int field, int type) {
+        List<Object> present = new ArrayList<>();
+        boolean[] nulls = new boolean[rows.length];
+        int columnRows = 0;
+        for (Object[] row : rows) {
+            if (row == null) {
+                continue;
+            }
+            nulls[columnRows++] = row[field] == null;
+            if (row[field] != null) {
+                present.add(row[field]);
+            }
+        }
+
+        ColumnWriter column = new ColumnWriter();
+        column.writeBitmap(nulls, columnRows);
+        switch (type) {
+            case TYPE_LONG -> {
+                long[] longs = present.stream().mapToLong(value -> (Long) value).toArray();
+                column.writeDeltas(longs, longs.length);
+            }
+            case TYPE_DOUBLE -> present.forEach(value -> column.writeLong(Double.doubleToRawLongBits((Double) value)));
+            case TYPE_BOOLEAN -> {
+                boolean[] booleans = new boolean[present.size()];
+                for (int i = 0; i < booleans.length; i++) {
+                    booleans[i] = (Boolean) present.get(i);
+                }
+                column.writeBitmap(booleans, booleans.length);
+            }
+            default -> column.writeDictionary(present.stream().map(String.class::cast).toList());
+        }
+        return column;
+    }
+
+    private String[] readValues(ColumnReader in, int count, Set<String> projection) throws IOException {
+        int fieldCount = in.readVarInt();
+        String[] fieldNames = new String[fieldCount];
+        int[] types = new int[fieldCount];
+        for (int f = 0; f < fieldCount; f++) {
+            fieldNames[f] = in.readString();
+            types[f] = in.readByte();
+        }
+
+        boolean[] raw = in.readBitmap(count);
+        String[] values = new String[count];
+        int columnRows = 0;
+        for (int i = 0; i < count; i++) {
+            if (raw[i]) {
+                String value = in.readString();
+                values[i] = projection == null ? value : projectRaw(value, projection);
+            } else {
+                columnRows++;
+            }
+        }
+
+        Object[][] columns = new Object[fieldCount][];
+        boolean[] selected = new boolean[fieldCount];
+        for (int f = 0; f < fieldCount; f++) {
+            selected[f] = projection == null || projection.contains(fieldNames[f]);
+            if (selected[f]) {
+                columns[f] = decodeColumn(in.readBlock(), types[f], columnRows);
+            } else {
+                in.skipBlock();
+            }
+        }
+
+        List<String> names = List.of(fieldNames);
+        Object[] row = new Object[fieldCount];
+        int columnRow = 0;
+        for (int i = 0; i < count; i++) {
+            if (raw[i]) {
+                continue;
+            }
+            for (int f = 0; f < fieldCount; f++) {
+                row[f] = selected[f] ? columns[f][columnRow] : null;
+            }
+            values[i] = render(row, names, types, selected);
+            columnRow++;
+        }
+        return values;
+    }
+
+    private Object[] decodeColumn(ColumnReader column, int type, int rows) {
+        boolean[] nulls = column.readBitmap(rows);
+        int present = 0;
+        for (boolean isNull : nulls) {
+            if (!isNull) {
+                present++;
+            }
+        }
+
+        Object[] decoded = new Object[present];
+        switch (type) {
+            case TYPE_LONG -> {
+                long[] longs = column.readDeltas(present);
+                for (int i = 0; i < present; i++) {
+                    decoded[i] = longs[i];
+                }
+            }
+            case TYPE_DOUBLE -> {
+                for (int i = 0; i < present; i++) {
+                    decoded[i] = Double.longBitsToDouble(column.readLong());
+                }
+            }
+            case TYPE_BOOLEAN -> {
+                boolean[] booleans = column.readBitmap(present);
+                for (int i = 0; i < present; i++) {
+                    decoded[i] = booleans[i];
+                }
+            }
+            default -> decoded = column.readDictionary(present);
+        }
+
+        Object[] values = new Object[rows];
+        int next = 0;
+        for (int i = 0; i < rows; i++) {
+            values[i] = nulls[i] ? null : decoded[next++];
+        }
+        return values;
+    }
+
+    private ObjectNode parseObject(String value) {
+        try {
+            JsonNode node = mapper.readTree(value);
+            return node != null && node.isObject() ? (ObjectNode) node : null;
+        } catch (JsonProcessingException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Returns the object's field values in schema order, fixing each field's type on its first
+     * non-null value, or {@code null} if the object does not fit the schema.
+     */
+    private Object[] toRow(ObjectNode object, List<String> fieldNames, int[] types) {
+        if (object.size() != fieldNames.size()) {
+            return null;
+        }
+        Object[] row = new Object[fieldNames.size()];
+        Iterator<Map.Entry<String, JsonNode>> fields = object.properties().iterator();
+        for (int f = 0; f < row.length; f++) {
+            Map.Entry<String, JsonNode> field = fields.next();
+            if (!field.getKey().equals(fieldNames.get(f))) {
+                return null;
+            }
+            JsonNode node = field.getValue();
+            if (node.isNull()) {
+                continue;
+            }
+            int type = typeOf(node);
+            if (types[f] >= 0 && types[f] != type) {
+                return null;
+            }
+            types[f] = type;
+            row[f] = switch (type) {
+                case TYPE_LONG -> node.longValue();
+                case TYPE_DOUBLE -> node.doubleValue();
+                case TYPE_BOOLEAN -> node.booleanValue();
+                case TYPE_STRING -> node.textValue();
+                default -> node.toString();
+            };
+        }
+        return row;
+    }
+
+    private static int typeOf(JsonNode node) {
+        if (node.isInt() || node.isLong()) {
+            return TYPE_LONG;
+        }
+        if (node.isDouble()) {
+            return TYPE_DOUBLE;
+        }
+        if (node.isBoolean()) {
+            return TYPE_BOOLEAN;
+        }
+        if (node.isTextual()) {
+            return TYPE_STRING;
+        }
+        return TYPE_JSON;
+    }
+
+    private String render(Object[] row, List<String> fieldNames, int[] types, boolean[] selected) {
+        StringWriter writer = new StringWriter();
+        try (JsonGenerator generator = mapper.getFactory().createGenerator(writer)) {
+            generator.writeStartObject();
+            for (int f = 0; f < row.length; f++) {
+                if (selected != null && !selected[f]) {
+                    continue;
+                }
+                generator.writeFieldName(fieldNames.get(f));
+                Object value = row[f];
+                if (value == null) {
+                    generator.writeNull();
+                    continue;
+                }
+                switch (types[f]) {
+                    case TYPE_LONG -> generator.writeNumber((Long) value);
+                    case TYPE_DOUBLE -> generator.writeNumber((Double) value);
+                    case TYPE_BOOLEAN -> generator.writeBoolean((Boolean) value);
+                    case TYPE_STRING -> generator.writeString((String) value);
+                    default -> generator.writeRawValue((String) value);
+                }
+            }
+            generator.writeEndObject();
+        } catch (IOException e) {
+            throw new SerializationException("failed to render JSON value", e);
+        }
+        return writer.toString();
+    }
+
+    private String projectRaw(String value, Set<String> projection) throws IOException {
+        ObjectNode object = parseObject(value);
+        if (object == null) {
+            return value;
+        }
+        ObjectNode projected = mapper.createObjectNode();
+        for (Map.Entry<String, JsonNode> field : object.properties()) {
+            if (projection.contains(field.getKey())) {
+                projected.set(field.getKey(), field.getValue());
+            }
+        }
+        return mapper.writeValueAsString(projected);
+    }
+}
@@ -0,0 +1,25 @@
+package org.periplus.quota;
+
+import org.periplus.config.BrokerConfig;
+
+/**
+ * The broker-side state of one client connection: who it belongs to and how many bytes it may
+ * have in flight. Several connections can share a client ID and so share its quotas.
+ */
+public class ClientConnection {
+    private final String clientId;
+    private final InFlightBudget budget;
+
+    public ClientConnection(String clientId, BrokerConfig config) {
+        this.clientId = clientId;
+        this.budget = new InFlightBudget(config.connectionMaxInFlightBytes());
+    }
+
+    public String getClientId() {
+        return clientId;
+    }
+
+    public InFlightBudget getBudget() {
+        return budget;
+    }
+}
@@ -0,0 +1,136 @@
+package org.periplus.quota;
+
+import org.periplus.config.BrokerConfig;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Per-client byte-rate and request-rate quotas. Every client ID gets its own buckets, so clients
+ * never contend with each other and recording usage takes no lock. A client not seen for
+ * {@code quota.client.idle.ms} whose buckets are full again is forgotten, metrics included.
+ */
+public class ClientQuotaManager {
+    private final BrokerConfig config;
+    private final LongSupplier nanoClock;
+    private final long idleNanos;
+    private final Map<String, ClientQuota> quotas = new ConcurrentHashMap<>();
+    private final AtomicLong nextSweepNanos;
+
+    public ClientQuotaManager(BrokerConfig config) {
+        this(config, System::nanoTime);
+    }
+
+    ClientQuotaManager(BrokerConfig config, LongSupplier nanoClock) {
+        this.config = config;
+        this.nanoClock = nanoClock;
+        this.idleNanos = TimeUnit.MILLISECONDS.toNanos(config.quotaClientIdleMs());
+        this.nextSweepNanos = new AtomicLong(nanoClock.getAsLong() + idleNanos);
+    }
+
+    /**
+     * Records a produce request of {@code bytes} and returns how long its response should be
+     * delayed, in milliseconds.
+     */
+    public long recordProduce(String clientId, long bytes) {
+        ClientQuota quota = quotaFor(clientId);
+        quota.produceBytes.add(bytes);
+        return quota.record(quota.produceBucket, bytes);
+    }
+
+    /**
+     * Records a fetch response of {@code bytes} and returns how long it should be delayed, in
+     * milliseconds.
+     */
+    public long recordFetch(String clientId, long bytes) {
+        ClientQuota quota = quotaFor(clientId);
+        quota.fetchBytes.add(bytes);
+        return quota.record(quota.fetchBucket, bytes);
+    }
+
+    public QuotaMetrics metrics(String clientId) {
+        return quotaFor(clientId).snapshot(clientId, nanoClock.getAsLong());
+    }
+
+    /**
+     * Metrics for every client seen so far, ordered by client ID.
+     */
+    public Map<String, QuotaMetrics> allMetrics() {
+        long now = nanoClock.getAsLong();
+        Map<String, QuotaMetrics> metrics = new TreeMap<>();
+        quotas.forEach((clientId, quota) -> metrics.put(clientId, quota.snapshot(clientId, now)));
+        return metrics;
+    }
+
+    private ClientQuota quotaFor(String clientId) {
+        long now = nanoClock.getAsLong();
+        evictIdle(now);
+        ClientQuota quota = quotas.get(clientId);
+        if (quota == null) {
+            quota = quotas.computeIfAbsent(clientId, id -> new ClientQuota(now));
+        }
+        quota.lastUsedNanos = now;
+        return quota;
+    }
+
+    // at most one sweep per idle period, run by whichever caller wins the compare-and-set
+    private void evictIdle(long now) {
+        long sweepAt = nextSweepNanos.get();
+        if (now - sweepAt < 0 || !nextSweepNanos.compareAndSet(sweepAt, now + idleNanos)) {
+            return;
+        }
+        quotas.values().removeIf(quota -> quota.isIdle(now));
+    }
+
+    private final class ClientQuota {
+        private final TokenBucket produceBucket;
+        private final TokenBucket fetchBucket;
+        private final TokenBucket requestBucket;
+        private final LongAdder produceBytes = new LongAdder();
+        private final LongAdder fetchBytes = new LongAdder();
+        private final LongAdder requests = new LongAdder();
+        private final LongAdder throttledRequests = new LongAdder();
+        private final LongAdder throttleTimeMs = new LongAdder();
+        private volatile long lastUsedNanos;
+
+        private ClientQuota(long now) {
+            this.produceBucket = new TokenBucket(config.quotaProduceBytesPerSecond(), config.quotaBurstMs(), config.quotaMaxThrottleMs(), now);
+            this.fetchBucket = new TokenBucket(config.quotaFetchBytesPerSecond(), config.quotaBurstMs(), config.quotaMaxThrottleMs(), now);
+            this.requestBucket = new TokenBucket(config.quotaRequestsPerSecond(), config.quotaBurstMs(), config.quotaMaxThrottleMs(), now);
+            this.lastUsedNanos = now;
+        }
+
+        private boolean isIdle(long now) {
+            return now - lastUsedNanos >= idleNanos
+                    && produceBucket.isFull(now) && fetchBucket.isFull(now) && requestBucket.isFull(now);
+        }
+
+        private long record(TokenBucket byteBucket, long bytes) {
+            long now = nanoClock.getAsLong();
+            requests.increment();
+            long delayNanos = Math.max(byteBucket.record(bytes, now), requestBucket.record(1, now));
+            long delayMs = Math.min(TimeUnit.NANOSECONDS.toMillis(delayNanos), config.quotaMaxThrottleMs());
+            if (delayMs > 0) {
+                throttledRequests.increment();
+                throttleTimeMs.add(delayMs);
+            }
+            return delayMs;
+        }
+
+        private QuotaMetrics snapshot(String clientId, long now) {
+            return new QuotaMetrics(clientId,
+                    produceBytes.sum(),
+                    fetchBytes.sum(),
+                    requests.sum(),
+                    throttledRequests.sum(),
+                    throttleTimeMs.sum(),
+                    produceBucket.available(now),
+                    fetchBucket.available(now));
+        }
+    }
+}
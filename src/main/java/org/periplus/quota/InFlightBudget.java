@@ -0,0 +1,47 @@
+package org.periplus.quota;
+
+import java.util.concurrent.Semaphore;
+
+/**
+ * Bounds the bytes a single connection can have in flight, from the moment a request is accepted
+ * until its (possibly delayed) response is sent. When the budget is spent the connection stops
+ * being read from, which pushes back on the client instead of queueing without limit.
+ */
+public class InFlightBudget {
+    private final int maxBytes;
+    private final Semaphore available;
+
+    public InFlightBudget(long maxBytes) {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("maxBytes must be positive");
+        }
+        this.maxBytes = (int) Math.min(maxBytes, Integer.MAX_VALUE);
+        this.available = new Semaphore(this.maxBytes, true);
+    }
+
+    /**
+     * Blocks until {@code bytes} fit in the budget and reserves them. A request larger than the
+     * whole budget waits for the connection to drain completely rather than never running.
+     */
+    public int acquire(long bytes) throws InterruptedException {
+        int permits = permitsFor(bytes);
+        available.acquire(permits);
+        return permits;
+    }
+
+    public void release(int permits) {
+        available.release(permits);
+    }
+
+    public long getInFlightBytes() {
+        return maxBytes - available.availablePermits();
+    }
+
+    public int getMaxBytes() {
+        return maxBytes;
+    }
+
+    private int permitsFor(long bytes) {
+        return (int) Math.max(1L, Math.min(bytes, maxBytes));
+    }
+}
@@ -0,0 +1,24 @@
+package org.periplus.quota;
+
+/**
+ * A point-in-time view of one client's quota usage.
+ *
+ * @param clientId       the client the usage belongs to
+ * @param produceBytes   bytes appended on behalf of the client
+ * @param fetchBytes     bytes returned to the client
+ * @param requests       produce and fetch requests handled
+ * @param throttledRequests requests whose response was delayed
+ * @param throttleTimeMs total time responses were held back
+ * @param produceBytesAvailable tokens left in the produce byte bucket, negative while in debt
+ * @param fetchBytesAvailable tokens left in the fetch byte bucket, negative while in debt
+ */
+public record QuotaMetrics(
+        String clientId,
+        long produceBytes,
+        long fetchBytes,
+        long requests,
+        long throttledRequests,
+        long throttleTimeMs,
+        long produceBytesAvailable,
+        long fetchBytesAvailable) {
+}
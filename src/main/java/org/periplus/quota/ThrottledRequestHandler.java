@@ -0,0 +1,101 @@
+package org.periplus.quota;
+
+import org.periplus.network.serialization.BinaryMessageSerializer;
+import org.periplus.replication.Replica;
+import org.periplus.storage.FetchFilter;
+import org.periplus.storage.Message;
+import org.periplus.storage.OffsetEntry;
+import org.periplus.storage.ReadResult;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Handles client produce and fetch requests against a replica with quotas applied. A client over
+ * its quota still has its request served, but the response is held back until the client is
+ * within quota again, and the request's bytes stay charged to the connection's in-flight budget
+ * until then. A client that keeps sending therefore ends up blocked on its own budget.
+ */
+public class ThrottledRequestHandler implements AutoCloseable {
+    private final Replica replica;
+    private final ClientQuotaManager quotas;
+    private final BinaryMessageSerializer serializer = new BinaryMessageSerializer();
+    private final ScheduledExecutorService delayedResponses;
+
+    public ThrottledRequestHandler(Replica replica, ClientQuotaManager quotas) {
+        this.replica = replica;
+        this.quotas = quotas;
+        this.delayedResponses = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "delayed-responses-" + replica.getBrokerId());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public CompletableFuture<OffsetEntry> produce(ClientConnection connection, Message message) throws InterruptedException {
+        int bytes = serializer.serializedSize(message);
+        int permits = connection.getBudget().acquire(bytes);
+
+        OffsetEntry entry;
+        try {
+            entry = replica.append(message);
+        } catch (IOException | RuntimeException e) {
+            connection.getBudget().release(permits);
+            return CompletableFuture.failedFuture(e);
+        }
+        long throttleMs = quotas.recordProduce(connection.getClientId(), bytes);
+        return respond(connection, permits, entry, throttleMs);
+    }
+
+    public CompletableFuture<ReadResult> fetch(ClientConnection connection, long startOffset, long maxCount) throws InterruptedException {
+        return fetch(connection, startOffset, maxCount, FetchFilter.ALL);
+    }
+
+    public CompletableFuture<ReadResult> fetch(ClientConnection connection, long startOffset, long maxCount,
+                                               FetchFilter filter) throws InterruptedException {
+        ReadResult result;
+        try {
+            result = replica.fetchForConsumer(startOffset, maxCount, filter);
+        } catch (IOException | RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+
+        long bytes = 0;
+        for (Message message : result.messages()) {
+            bytes += serializer.serializedSize(message);
+        }
+        int permits = connection.getBudget().acquire(bytes);
+        long throttleMs = quotas.recordFetch(connection.getClientId(), bytes);
+        return respond(connection, permits, result, throttleMs);
+    }
+
+    private <T> CompletableFuture<T> respond(ClientConnection connection, int permits, T response, long throttleMs) {
+        if (throttleMs == 0) {
+            connection.getBudget().release(permits);
+            return CompletableFuture.completedFuture(response);
+        }
+        CompletableFuture<T> delayed = new CompletableFuture<>();
+        delayedResponses.schedule(() -> {
+            connection.getBudget().release(permits);
+            delayed.complete(response);
+        }, throttleMs, TimeUnit.MILLISECONDS);
+        return delayed;
+    }
+
+    public ClientQuotaManager getQuotas() {
+        return quotas;
+    }
+
+    /**
+     * Stops the delay timer; responses still waiting are sent immediately.
+     */
+    @Override
+    public void close() {
+        for (Runnable pending : delayedResponses.shutdownNow()) {
+            pending.run();
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package org.periplus.quota;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A token bucket refilled at {@code ratePerSecond} that holds at most {@code burstMs} worth of
+ * tokens. Instead of a token count it keeps the time at which the bucket would be full again, so
+ * recording usage is a single compare-and-set and never blocks.
+ *
+ * <p>Usage is always recorded, even when the bucket is empty: the bucket goes into debt and the
+ * caller is told how long to hold the response back for the debt to be repaid. The debt never
+ * exceeds {@code maxThrottleMs}, so one huge request does not throttle the client long after the
+ * delay it was actually given has passed.
+ */
+public final class TokenBucket {
+    private final long ratePerSecond;
+    private final long burstNanos;
+    private final long maxThrottleNanos;
+    // the bucket is full again at this time; later than now means tokens have been spent
+    private final AtomicLong fullAtNanos;
+
+    public TokenBucket(long ratePerSecond, long burstMs, long maxThrottleMs, long nowNanos) {
+        if (ratePerSecond <= 0) {
+            throw new IllegalArgumentException("ratePerSecond must be positive");
+        }
+        this.ratePerSecond = ratePerSecond;
+        this.burstNanos = TimeUnit.MILLISECONDS.toNanos(burstMs);
+        this.maxThrottleNanos = TimeUnit.MILLISECONDS.toNanos(maxThrottleMs);
+        this.fullAtNanos = new AtomicLong(nowNanos);
+    }
+
+    /**
+     * Takes {@code amount} tokens and returns how many nanoseconds the caller must wait before the
+     * bucket is back within its burst, zero if it never left it.
+     */
+    public long record(long amount, long nowNanos) {
+        if (isUnlimited()) {
+            return 0L;
+        }
+        long cost = costNanos(amount);
+        while (true) {
+            long fullAt = fullAtNanos.get();
+            long maxFullAt = saturatedAdd(nowNanos, saturatedAdd(burstNanos, maxThrottleNanos));
+            long updated = Math.min(saturatedAdd(Math.max(fullAt, nowNanos), cost), maxFullAt);
+            if (fullAtNanos.compareAndSet(fullAt, updated)) {
+                return Math.max(0L, updated - nowNanos - burstNanos);
+            }
+        }
+    }
+
+    /**
+     * Tokens left at {@code nowNanos}; negative while the bucket is in debt.
+     */
+    public long available(long nowNanos) {
+        if (isUnlimited()) {
+            return Long.MAX_VALUE;
+        }
+        long spentNanos = Math.max(0L, fullAtNanos.get() - nowNanos);
+        return tokensFor(burstNanos) - tokensFor(spentNanos);
+    }
+
+    /**
+     * True if no tokens are spent at {@code nowNanos}, i.e. the bucket is as good as a new one.
+     */
+    public boolean isFull(long nowNanos) {
+        return fullAtNanos.get() - nowNanos <= 0;
+    }
+
+    public boolean isUnlimited() {
+        return ratePerSecond == Long.MAX_VALUE;
+    }
+
+    public long getRatePerSecond() {
+        return ratePerSecond;
+    }
+
+    private long costNanos(long amount) {
+        double nanos = (double) amount * TimeUnit.SECONDS.toNanos(1) / ratePerSecond;
+        return nanos >= Long.MAX_VALUE ? Long.MAX_VALUE : (long) Math.ceil(nanos);
+    }
+
+    private long tokensFor(long nanos) {
+        return (long) ((double) nanos * ratePerSecond / TimeUnit.SECONDS.toNanos(1));
+    }
+
+    private static long saturatedAdd(long a, long b) {
+        long sum = a + b;
+        return ((a ^ sum) & (b ^ sum)) < 0 ? Long.MAX_VALUE : sum;
+    }
+}
@@ -0,0 +1,9 @@
+package org.periplus.replication;
+
+/**
+ * A follower's request for messages starting at {@code fetchOffset}. Fetches are pipelined, so
+ * {@code fetchOffset} may run ahead of the follower's log; {@code replicaLogEndOffset} is what the
+ * follower has actually written and is what the leader uses to advance the high watermark.
+ */
+public record FetchRequest(int replicaId, long fetchOffset, int maxMessages, long replicaLogEndOffset) {
+}
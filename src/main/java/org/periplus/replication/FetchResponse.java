@@ -0,0 +1,21 @@
+package org.periplus.replication;
+
+import org.periplus.storage.Message;
+
+import java.util.List;
+
+/**
+ * The leader's answer to a {@link FetchRequest}. {@code logEndOffset} is the leader's log end
+ * offset, which tells a follower whose fetch was out of range where to truncate to.
+ */
+public record FetchResponse(FetchStatus status, long fetchOffset, List<Message> messages, long highWatermark,
+                            long logEndOffset) {
+
+    public static FetchResponse error(FetchStatus status, long fetchOffset) {
+        return new FetchResponse(status, fetchOffset, List.of(), -1L, -1L);
+    }
+
+    public static FetchResponse outOfRange(long fetchOffset, long logEndOffset) {
+        return new FetchResponse(FetchStatus.OFFSET_OUT_OF_RANGE, fetchOffset, List.of(), -1L, logEndOffset);
+    }
+}
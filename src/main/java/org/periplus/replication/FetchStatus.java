@@ -0,0 +1,7 @@
+package org.periplus.replication;
+
+public enum FetchStatus {
+    OK,
+    NOT_LEADER,
+    OFFSET_OUT_OF_RANGE
+}
@@ -0,0 +1,42 @@
+package org.periplus.replication;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Routes fetches between replicas living in the same JVM. Requests are served on a separate
+ * executor so that a follower's in-flight fetches behave like they would over a socket.
+ */
+public class InMemoryReplicationTransport implements ReplicationTransport, AutoCloseable {
+    private final Map<Integer, Replica> replicas = new ConcurrentHashMap<>();
+    private final ExecutorService executor = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "in-memory-transport");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public void register(Replica replica) {
+        replicas.put(replica.getBrokerId(), replica);
+    }
+
+    public void unregister(int brokerId) {
+        replicas.remove(brokerId);
+    }
+
+    @Override
+    public CompletableFuture<FetchResponse> fetch(int leaderId, FetchRequest request) {
+        Replica leader = replicas.get(leaderId);
+        if (leader == null) {
+            return CompletableFuture.failedFuture(new ReplicationException("broker " + leaderId + " is unreachable"));
+        }
+        return CompletableFuture.supplyAsync(() -> leader.handleFetch(request), executor);
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,223 @@
+package org.periplus.replication;
+
+import org.periplus.config.BrokerConfig;
+import org.periplus.storage.FetchFilter;
+import org.periplus.storage.IsolationLevel;
+import org.periplus.storage.Message;
+import org.periplus.storage.OffsetEntry;
+import org.periplus.storage.PartitionLog;
+import org.periplus.storage.ReadResult;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One broker's copy of a partition. As leader it accepts appends and serves fetches from
+ * followers; as follower it runs a {@link ReplicaFetcher} against the current leader.
+ *
+ * <p>The leader also aborts transactions that stay open longer than {@code transaction.timeout.ms}.
+ * The coordinator does that for the transactions it knows, but its state is not persisted, so a
+ * transaction restored from the log after a restart may have no coordinator left to end it.
+ */
+public class Replica implements AutoCloseable {
+    private final int brokerId;
+    private final PartitionLog log;
+    private final BrokerConfig config;
+    private final ReplicationTransport transport;
+    private final Map<Integer, FollowerState> followers = new ConcurrentHashMap<>();
+    private volatile int leaderId = -1;
+    private ReplicaFetcher fetcher;
+    // first offset of each open transaction mapped to when the reaper first saw it
+    private final Map<Long, Long> openTransactionsSeenMs = new HashMap<>();
+    private final ScheduledExecutorService transactionReaper;
+
+    public Replica(BrokerConfig config, PartitionLog log, ReplicationTransport transport) {
+        this.brokerId = config.brokerId();
+        this.config = config;
+        this.log = log;
+        this.transport = transport;
+        this.transactionReaper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "transaction-reaper-" + log.getPartitionDirectory().getFileName());
+            thread.setDaemon(true);
+            return thread;
+        });
+        long checkIntervalMs = Math.min(config.transactionTimeoutMs(), 1000);
+        transactionReaper.scheduleWithFixedDelay(() -> abortExpiredTransactions(System.currentTimeMillis()),
+                checkIntervalMs, checkIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void becomeLeader(Set<Integer> followerIds) {
+        stopFetcher();
+        followers.clear();
+        long now = System.currentTimeMillis();
+        for (int followerId : followerIds) {
+            followers.put(followerId, new FollowerState(now));
+        }
+        leaderId = brokerId;
+        maybeAdvanceHighWatermark();
+    }
+
+    /**
+     * Drops everything above the high watermark before fetching from {@code newLeaderId}: those
+     * records may never have reached the new leader, which may since have written others at the
+     * same offsets. Records below the high watermark are on every in-sync replica, so they stay.
+     */
+    public synchronized void becomeFollower(int newLeaderId) throws IOException {
+        stopFetcher();
+        followers.clear();
+        leaderId = newLeaderId;
+        log.truncateTo(Math.max(log.getHighWatermark(), log.getLocalLogStartOffset()));
+        fetcher = new ReplicaFetcher(this, newLeaderId, transport, config);
+        fetcher.start();
+    }
+
+    public OffsetEntry append(Message message) throws IOException {
+        if (!isLeader()) {
+            throw new ReplicationException("broker " + brokerId + " is not the leader, current leader is " + leaderId);
+        }
+        OffsetEntry entry = log.append(message);
+        maybeAdvanceHighWatermark();
+        return entry;
+    }
+
+    public FetchResponse handleFetch(FetchRequest request) {
+        if (!isLeader()) {
+            return FetchResponse.error(FetchStatus.NOT_LEADER, request.fetchOffset());
+        }
+
+        long logEndOffset = log.getLogEndOffset();
+        FollowerState follower = followers.computeIfAbsent(request.replicaId(), id -> new FollowerState(System.currentTimeMillis()));
+        follower.update(request.replicaLogEndOffset(), logEndOffset);
+        maybeAdvanceHighWatermark();
+
+        if (request.fetchOffset() < log.getLogStartOffset() || request.fetchOffset() > logEndOffset) {
+            return FetchResponse.outOfRange(request.fetchOffset(), logEndOffset);
+        }
+
+        try {
+            ReadResult result = log.readFrom(request.fetchOffset(), request.maxMessages());
+            return new FetchResponse(FetchStatus.OK, request.fetchOffset(), result.messages(), log.getHighWatermark(), logEndOffset);
+        } catch (IOException e) {
+            throw new ReplicationException("failed to read from offset " + request.fetchOffset(), e);
+        }
+    }
+
+    /**
+     * Consumer reads only see messages below the high watermark, i.e. messages every in-sync
+     * replica already holds. Transaction control records are left out.
+     */
+    public ReadResult fetchForConsumer(long startOffset, long maxCount) throws IOException {
+        return fetchForConsumer(startOffset, maxCount, FetchFilter.ALL);
+    }
+
+    public ReadResult fetchForConsumer(long startOffset, long maxCount, FetchFilter filter) throws IOException {
+        return fetchForConsumer(startOffset, maxCount, filter, IsolationLevel.READ_UNCOMMITTED);
+    }
+
+    /**
+     * Read-committed consumers additionally stop at the last stable offset and never see data of
+     * aborted transactions.
+     */
+    public ReadResult fetchForConsumer(long startOffset, long maxCount, FetchFilter filter, IsolationLevel isolation) throws IOException {
+        return log.readForConsumer(startOffset, maxCount, filter, isolation);
+    }
+
+    /**
+     * Aborts the transactions that have been open for {@code transaction.timeout.ms} since this
+     * leader first saw them. The time counts from no earlier than the first transactional append,
+     * which follows the coordinator's begin, so a coordinator that is still around always times
+     * its transactions out first.
+     */
+    public void abortExpiredTransactions(long nowMs) {
+        Map<Long, Long> expired = new HashMap<>();
+        synchronized (openTransactionsSeenMs) {
+            if (!isLeader()) {
+                openTransactionsSeenMs.clear();
+                return;
+            }
+            Map<Long, Long> open = log.openTransactions();
+            openTransactionsSeenMs.keySet().retainAll(open.values());
+            for (Map.Entry<Long, Long> transaction : open.entrySet()) {
+                long seenMs = openTransactionsSeenMs.computeIfAbsent(transaction.getValue(), offset -> nowMs);
+                if (nowMs - seenMs >= config.transactionTimeoutMs()) {
+                    expired.put(transaction.getKey(), transaction.getValue());
+                }
+            }
+        }
+        for (Map.Entry<Long, Long> transaction : expired.entrySet()) {
+            try {
+                if (!isLeader()) {
+                    return;
+                }
+                log.abortTransaction(transaction.getKey(), transaction.getValue());
+                maybeAdvanceHighWatermark();
+            } catch (IOException | RuntimeException e) {
+                // still open, so the next check retries it
+            }
+        }
+    }
+
+    private void maybeAdvanceHighWatermark() {
+        long now = System.currentTimeMillis();
+        long candidate = log.getLogEndOffset();
+        for (FollowerState follower : followers.values()) {
+            if (now - follower.lastCaughtUpMs <= config.replicaLagTimeMaxMs()) {
+                candidate = Math.min(candidate, follower.logEndOffset);
+            }
+        }
+        log.updateHighWatermark(candidate);
+    }
+
+    private void stopFetcher() {
+        if (fetcher != null) {
+            fetcher.shutdown();
+            fetcher = null;
+        }
+    }
+
+    public boolean isLeader() {
+        return leaderId == brokerId;
+    }
+
+    public int getBrokerId() {
+        return brokerId;
+    }
+
+    public int getLeaderId() {
+        return leaderId;
+    }
+
+    public PartitionLog getLog() {
+        return log;
+    }
+
+    @Override
+    public synchronized void close() {
+        transactionReaper.shutdownNow();
+        stopFetcher();
+        leaderId = -1;
+    }
+
+    private static final class FollowerState {
+        private volatile long logEndOffset;
+        private volatile long lastCaughtUpMs;
+
+        private FollowerState(long now) {
+            this.lastCaughtUpMs = now;
+        }
+
+        // pipelined fetches can report stale end offsets out of order, so only ever move forward
+        private synchronized void update(long replicaLogEndOffset, long leaderLogEndOffset) {
+            logEndOffset = Math.max(logEndOffset, replicaLogEndOffset);
+            if (logEndOffset >= leaderLogEndOffset) {
+                lastCaughtUpMs = System.currentTimeMillis();
+            }
+        }
+    }
+}
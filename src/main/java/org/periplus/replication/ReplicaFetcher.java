@@ -0,0 +1,153 @@
+package org.periplus.replication;
+
+import org.periplus.config.BrokerConfig;
+import org.periplus.storage.Message;
+import org.periplus.storage.OffsetEntry;
+import org.periplus.storage.PartitionLog;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Pulls a leader's log into the follower's {@link PartitionLog}. While the follower is behind, up
+ * to {@code replica.fetch.max.inflight} fetches for consecutive offset windows are kept
+ * outstanding so the next batch is already on its way while the current one is being appended.
+ * Once caught up only one fetch is outstanding, since windows past the leader's end come back empty.
+ */
+class ReplicaFetcher {
+    private static final Logger log = LoggerFactory.getLogger(ReplicaFetcher.class);
+    private static final long FETCH_TIMEOUT_MS = 30_000;
+
+    private final Replica replica;
+    private final int leaderId;
+    private final ReplicationTransport transport;
+    private final BrokerConfig config;
+    private final Thread thread;
+    private volatile boolean running = true;
+
+    ReplicaFetcher(Replica replica, int leaderId, ReplicationTransport transport, BrokerConfig config) {
+        this.replica = replica;
+        this.leaderId = leaderId;
+        this.transport = transport;
+        this.config = config;
+        this.thread = new Thread(this::run, "replica-fetcher-" + replica.getBrokerId() + "-from-" + leaderId);
+        this.thread.setDaemon(true);
+    }
+
+    void start() {
+        thread.start();
+    }
+
+    void shutdown() {
+        running = false;
+        thread.interrupt();
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        PartitionLog partitionLog = replica.getLog();
+        Deque<InFlightFetch> inFlight = new ArrayDeque<>();
+        long nextFetchOffset = partitionLog.getLogEndOffset();
+        // only a full batch shows there is more to fetch than the head request covers
+        boolean pipelining = false;
+
+        while (running) {
+            try {
+                int maxInFlight = pipelining ? config.replicaFetchMaxInFlight() : 1;
+                while (inFlight.size() < maxInFlight) {
+                    var request = new FetchRequest(replica.getBrokerId(), nextFetchOffset,
+                            config.replicaFetchMaxMessages(), partitionLog.getLogEndOffset());
+                    inFlight.add(new InFlightFetch(request, transport.fetch(leaderId, request)));
+                    nextFetchOffset += config.replicaFetchMaxMessages();
+                }
+
+                // the head stays queued until it has answered, so a failed wait cancels it with the rest
+                InFlightFetch head = inFlight.peek();
+                FetchResponse response = head.response().get(FETCH_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+                inFlight.poll();
+                if (response.status() == FetchStatus.OFFSET_OUT_OF_RANGE
+                        && response.fetchOffset() == partitionLog.getLogEndOffset()
+                        && response.logEndOffset() < response.fetchOffset()) {
+                    // our log ran past the leader's, e.g. we led before and our last appends were never replicated
+                    log.info("Broker {} truncating its log from {} to leader {}'s end offset {}",
+                            replica.getBrokerId(), response.fetchOffset(), leaderId, response.logEndOffset());
+                    partitionLog.truncateTo(response.logEndOffset());
+                    cancelAll(inFlight);
+                    pipelining = false;
+                    nextFetchOffset = partitionLog.getLogEndOffset();
+                    continue;
+                }
+                if (response.status() != FetchStatus.OK) {
+                    throw new ReplicationException("fetch from broker " + leaderId + " failed with " + response.status());
+                }
+
+                boolean applied = response.fetchOffset() == partitionLog.getLogEndOffset();
+                if (applied) {
+                    appendAll(partitionLog, response);
+                }
+                partitionLog.updateHighWatermark(response.highWatermark());
+
+                pipelining = applied && response.messages().size() == head.request().maxMessages();
+                if (!pipelining) {
+                    // a short batch means the remaining windows start past the leader's end; restart from our own end
+                    cancelAll(inFlight);
+                    nextFetchOffset = partitionLog.getLogEndOffset();
+                    if (response.messages().isEmpty()) {
+                        Thread.sleep(config.replicaFetchBackoffMs());
+                    }
+                }
+            } catch (InterruptedException e) {
+                cancelAll(inFlight);
+                Thread.currentThread().interrupt();
+                return;
+            } catch (ExecutionException | TimeoutException | ReplicationException | IOException e) {
+                if (!running) {
+                    cancelAll(inFlight);
+                    return;
+                }
+                log.warn("Broker {} failed to fetch from leader {}: {}", replica.getBrokerId(), leaderId, e.getMessage());
+                cancelAll(inFlight);
+                pipelining = false;
+                nextFetchOffset = partitionLog.getLogEndOffset();
+                try {
+                    Thread.sleep(config.replicaFetchBackoffMs());
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    private static void cancelAll(Deque<InFlightFetch> inFlight) {
+        for (InFlightFetch fetch : inFlight) {
+            fetch.response().cancel(true);
+        }
+        inFlight.clear();
+    }
+
+    private static void appendAll(PartitionLog partitionLog, FetchResponse response) throws IOException {
+        long expectedOffset = response.fetchOffset();
+        for (Message message : response.messages()) {
+            OffsetEntry entry = partitionLog.append(message);
+            if (entry.logicalOffset() != expectedOffset) {
+                throw new ReplicationException("follower assigned offset " + entry.logicalOffset() + " but leader had " + expectedOffset);
+            }
+            expectedOffset++;
+        }
+    }
+
+    private record InFlightFetch(FetchRequest request, CompletableFuture<FetchResponse> response) {
+    }
+}
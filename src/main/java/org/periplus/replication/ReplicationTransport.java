@@ -0,0 +1,7 @@
+package org.periplus.replication;
+
+import java.util.concurrent.CompletableFuture;
+
+public interface ReplicationTransport {
+    CompletableFuture<FetchResponse> fetch(int leaderId, FetchRequest request);
+}
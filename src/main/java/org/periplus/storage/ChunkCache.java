@@ -0,0 +1,148 @@
+package org.periplus.storage;
+
+import org.periplus.storage.remote.RemoteFile;
+import org.periplus.storage.remote.RemoteSegmentMetadata;
+import org.periplus.storage.remote.RemoteStorage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * LRU cache of fixed-size chunks of remote segment files. Reading a chunk of a log also starts
+ * fetching the chunks after it, since consumers of old data read sequentially.
+ */
+class ChunkCache {
+    private final RemoteStorage remote;
+    private final int chunkSize;
+    private final int prefetchChunks;
+    private final ExecutorService prefetcher;
+    private final Map<ChunkKey, CompletableFuture<byte[]>> chunks;
+
+    ChunkCache(RemoteStorage remote, int chunkSize, long capacityBytes, int prefetchChunks, ExecutorService prefetcher) {
+        this.remote = remote;
+        this.chunkSize = chunkSize;
+        this.prefetchChunks = prefetchChunks;
+        this.prefetcher = prefetcher;
+        long maxChunks = Math.max(1, capacityBytes / chunkSize);
+        this.chunks = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<ChunkKey, CompletableFuture<byte[]>> eldest) {
+                return size() > maxChunks;
+            }
+        };
+    }
+
+    /**
+     * Returns {@code length} bytes of {@code file} starting at {@code position}, or an empty array
+     * if the file ({@code fileSize} bytes long) ends first.
+     */
+    byte[] read(RemoteSegmentMetadata segment, RemoteFile file, long position, int length, long fileSize) throws IOException {
+        if (position + length > fileSize) {
+            return new byte[0];
+        }
+        byte[] result = new byte[length];
+        read(segment, file, position, ByteBuffer.wrap(result), fileSize);
+        return result;
+    }
+
+    /**
+     * Copies bytes of {@code file} from {@code position} into {@code destination} until it is full
+     * or the file ({@code fileSize} bytes long) ends, and returns the number copied.
+     */
+    int read(RemoteSegmentMetadata segment, RemoteFile file, long position, ByteBuffer destination, long fileSize) throws IOException {
+        int length = (int) Math.min(destination.remaining(), Math.max(0L, fileSize - position));
+        int copied = 0;
+        while (copied < length) {
+            long chunkIndex = (position + copied) / chunkSize;
+            byte[] chunk = chunk(new ChunkKey(segment, file, chunkIndex));
+            int offsetInChunk = (int) (position + copied - chunkIndex * chunkSize);
+            int count = Math.min(length - copied, chunk.length - offsetInChunk);
+            if (count <= 0) {
+                throw new IOException("remote " + file + " of segment " + segment.baseOffset() + " is shorter than " + fileSize + " bytes");
+            }
+            destination.put(chunk, offsetInChunk, count);
+            copied += count;
+
+            if (file == RemoteFile.LOG) {
+                prefetch(segment, chunkIndex, fileSize);
+            }
+        }
+        return copied;
+    }
+
+    private byte[] chunk(ChunkKey key) throws IOException {
+        CompletableFuture<byte[]> future;
+        boolean owner = false;
+        synchronized (chunks) {
+            future = chunks.get(key);
+            if (future == null) {
+                future = new CompletableFuture<>();
+                chunks.put(key, future);
+                owner = true;
+            }
+        }
+
+        if (owner) {
+            try {
+                future.complete(fetch(key));
+            } catch (IOException | RuntimeException e) {
+                evict(key, future);
+                future.completeExceptionally(e);
+                throw e;
+            }
+        }
+
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            throw new IOException("failed to fetch chunk " + key.chunkIndex() + " of segment " + key.segment().baseOffset(), e.getCause());
+        }
+    }
+
+    private void prefetch(RemoteSegmentMetadata segment, long chunkIndex, long fileSize) {
+        for (long next = chunkIndex + 1; next <= chunkIndex + prefetchChunks && next * chunkSize < fileSize; next++) {
+            ChunkKey key = new ChunkKey(segment, RemoteFile.LOG, next);
+            CompletableFuture<byte[]> future;
+            synchronized (chunks) {
+                if (chunks.containsKey(key)) {
+                    continue;
+                }
+                future = new CompletableFuture<>();
+                chunks.put(key, future);
+            }
+            CompletableFuture<byte[]> pending = future;
+            prefetcher.execute(() -> {
+                try {
+                    pending.complete(fetch(key));
+                } catch (IOException | RuntimeException e) {
+                    evict(key, pending);
+                    pending.completeExceptionally(e);
+                }
+            });
+        }
+    }
+
+    private byte[] fetch(ChunkKey key) throws IOException {
+        return remote.fetch(key.segment(), key.file(), key.chunkIndex() * chunkSize, chunkSize);
+    }
+
+    private void evict(ChunkKey key, CompletableFuture<byte[]> future) {
+        synchronized (chunks) {
+            chunks.remove(key, future);
+        }
+    }
+
+    int size() {
+        synchronized (chunks) {
+            return chunks.size();
+        }
+    }
+
+    private record ChunkKey(RemoteSegmentMetadata segment, RemoteFile file, long chunkIndex) {
+    }
+}
@@ -0,0 +1,9 @@
+package org.periplus.storage;
+
+/**
+ * The outcome a control record marks for its producer's open transaction on a partition.
+ */
+public enum ControlRecordType {
+    COMMIT,
+    ABORT
+}
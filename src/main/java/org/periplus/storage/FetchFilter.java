@@ -0,0 +1,42 @@
+package org.periplus.storage;
+
+import org.periplus.network.serialization.BinaryRecordView;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A predicate evaluated by the broker on serialized records during a fetch; only matching records
+ * are decoded and returned. Filter arguments are encoded once when the filter is built, not per
+ * record.
+ */
+@FunctionalInterface
+public interface FetchFilter {
+    FetchFilter ALL = record -> true;
+
+    boolean matches(BinaryRecordView record);
+
+    static FetchFilter keyPrefix(String prefix) {
+        byte[] prefixBytes = prefix.getBytes(StandardCharsets.UTF_8);
+        return record -> record.keyStartsWith(prefixBytes);
+    }
+
+    static FetchFilter headerEquals(String name, String value) {
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        byte[] valueBytes = value.getBytes(StandardCharsets.UTF_8);
+        return record -> record.hasHeader(nameBytes, valueBytes);
+    }
+
+    /**
+     * Matches records with {@code fromInclusive <= timestamp < toExclusive}.
+     */
+    static FetchFilter timestampBetween(long fromInclusive, long toExclusive) {
+        return record -> {
+            long timestamp = record.timestamp();
+            return timestamp >= fromInclusive && timestamp < toExclusive;
+        };
+    }
+
+    default FetchFilter and(FetchFilter other) {
+        return record -> matches(record) && other.matches(record);
+    }
+}
@@ -0,0 +1,22 @@
+package org.periplus.storage;
+
+import org.periplus.network.serialization.BinaryRecordView;
+
+/**
+ * Decides which records a fetch skips, such as control records and aborted transactional data,
+ * from the record's offset and serialized bytes, so skipped records are never decoded.
+ */
+@FunctionalInterface
+interface HiddenRecords {
+    HiddenRecords NONE = (offset, record) -> false;
+
+    boolean hides(long offset, BinaryRecordView record);
+
+    /**
+     * A copy that answers the same for offsets from {@code fromOffset} up to {@code toOffset} and
+     * can be used without the lock guarding this one. Must be taken under that lock.
+     */
+    default HiddenRecords detach(long fromOffset, long toOffset) {
+        return this;
+    }
+}
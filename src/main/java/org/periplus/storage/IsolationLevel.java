@@ -0,0 +1,16 @@
+package org.periplus.storage;
+
+/**
+ * What a consumer fetch may see of transactional data.
+ */
+public enum IsolationLevel {
+    /**
+     * Everything below the high watermark, including data of open and aborted transactions.
+     */
+    READ_UNCOMMITTED,
+    /**
+     * Only data below the last stable offset, i.e. before the first open transaction, with
+     * aborted transactions left out.
+     */
+    READ_COMMITTED
+}
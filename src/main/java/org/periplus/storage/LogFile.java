@@ -7,43 +7,122 @@ import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
 import java.util.Objects;
 
-public class LogFile {
+public class LogFile implements RecordSource, AutoCloseable {
     private final FileChannel channel;
+    // logical end of the written data; a preallocated file is longer than this
+    private volatile long size;
 
     public LogFile(Path path) throws IOException {
+        this(path, 0L);
+    }
+
+    /**
+     * Opens the file, extending a new one to {@code preallocateBytes} up front. Like
+     * {@code RandomAccessFile.setLength} this only reserves the logical size: no zeros are written,
+     * and the file system may still allocate blocks as appends reach them. The unwritten part reads
+     * as zeros, which recovery takes as the end of the data. The end of the data is tracked
+     * separately from the file length.
+     */
+    public LogFile(Path path, long preallocateBytes) throws IOException {
         Path channelPath = Objects.requireNonNull(path, "Channel path cannot be null");
         this.channel = FileChannel.open(channelPath,
                 StandardOpenOption.CREATE,
                 StandardOpenOption.WRITE,
-                StandardOpenOption.READ,
-                StandardOpenOption.SYNC
+                StandardOpenOption.READ
         );
+        this.size = channel.size();
+
+        if (size == 0 && preallocateBytes > 0) {
+            channel.write(ByteBuffer.wrap(new byte[1]), preallocateBytes - 1);
+        }
+    }
+
+    public void append(byte[] message) throws IOException {
+        append(ByteBuffer.wrap(message));
     }
 
-    public synchronized void append(byte[] message) throws IOException {
-        ByteBuffer buffer = ByteBuffer.wrap(message);
-        while (buffer.hasRemaining()) {
-            channel.write(buffer, channel.size());
+    /**
+     * Appends the remaining bytes of {@code message}, leaving it fully consumed.
+     */
+    public synchronized void append(ByteBuffer message) throws IOException {
+        long position = size;
+        while (message.hasRemaining()) {
+            position += channel.write(message, position);
         }
+        size = position;
     }
 
-    public byte[] readBytesAtPosition(long offset, int length) throws IOException {
-        // offset indicates line
-        if (channel.size() - channel.position() < length) {
-            return new byte[0];
+    @Override
+    public int read(long position, ByteBuffer destination) throws IOException {
+        long available = size - position;
+        if (available <= 0) {
+            return 0;
         }
-        ByteBuffer buffer = ByteBuffer.allocate(length);
-        channel.read(buffer, offset);
-        buffer.flip();
-        return buffer.array();
+        int start = destination.position();
+        int limit = destination.limit();
+        destination.limit((int) Math.min(limit, start + available));
+        try {
+            while (destination.hasRemaining()) {
+                int read = channel.read(destination, position + destination.position() - start);
+                if (read < 0) {
+                    break;
+                }
+            }
+        } finally {
+            destination.limit(limit);
+        }
+        return destination.position() - start;
     }
 
     public long getCurrentFileSize() throws IOException {
-        return channel.size();
+        return size;
     }
 
     public long getCurrentPosition() throws IOException {
         return channel.position();
     }
 
+    public long getAllocatedSize() throws IOException {
+        return channel.size();
+    }
+
+    /**
+     * Sets the end of the data after recovery has found where the last complete record stops.
+     */
+    synchronized void setLogicalSize(long logicalSize) {
+        this.size = logicalSize;
+    }
+
+    /**
+     * Forces everything appended so far to disk. Appends are not synced on their own; how often
+     * this is called decides how much a crash can lose.
+     */
+    public void flush() throws IOException {
+        channel.force(true);
+    }
+
+    /**
+     * Cuts the file at {@code newSize}, preallocated tail included, so recovery cannot find the
+     * records after it again.
+     */
+    synchronized void truncate(long newSize) throws IOException {
+        channel.truncate(newSize);
+        channel.force(true);
+        size = newSize;
+    }
+
+    /**
+     * Gives back the unused preallocated tail once the file will not be appended to again.
+     */
+    public synchronized void trim() throws IOException {
+        if (channel.isOpen() && channel.size() > size) {
+            channel.truncate(size);
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        trim();
+        channel.close();
+    }
 }
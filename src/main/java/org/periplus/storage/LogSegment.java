@@ -1,16 +1,21 @@
 package org.periplus.storage;
 
 import org.periplus.config.BrokerConfig;
+import org.periplus.memory.BufferPool;
 import org.periplus.network.serialization.BinaryMessageSerializer;
+import org.periplus.network.serialization.BinaryRecordView;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.List;
 
-public class LogSegment {
+public class LogSegment implements AutoCloseable {
+    private static final BinaryMessageSerializer SERIALIZER = new BinaryMessageSerializer();
+
     private final Path segmentDirectory;
     private final long baseOffset;
     private final LogFile logFile;
@@ -19,31 +24,100 @@ public class LogSegment {
     private final BrokerConfig config;
 
     public LogSegment(Path partitionDir, long baseOffset, BrokerConfig config) throws IOException {
+        this(partitionDir, baseOffset, config, null, null);
+    }
+
+    /**
+     * Opens an existing segment, trusting its index only below {@code recoverFrom} and rebuilding
+     * it by scanning the log from there.
+     */
+    LogSegment(Path partitionDir, long baseOffset, BrokerConfig config, OffsetEntry recoverFrom) throws IOException {
+        this(partitionDir, baseOffset, config, null, recoverFrom);
+    }
+
+    LogSegment(Path partitionDir, long baseOffset, BrokerConfig config, PreparedSegment prepared) throws IOException {
+        this(partitionDir, baseOffset, config, prepared, null);
+    }
+
+    /**
+     * Opens the segment starting at {@code baseOffset}. When {@code prepared} is given its pending
+     * directory becomes the segment directory and its already-open files are used as they are.
+     * Otherwise the segment is recovered from {@code recoverFrom}, or from its last index entry if
+     * that is {@code null}.
+     */
+    private LogSegment(Path partitionDir, long baseOffset, BrokerConfig config, PreparedSegment prepared,
+                       OffsetEntry recoverFrom) throws IOException {
         this.config = config;
         this.baseOffset = baseOffset;
         this.nextOffset = baseOffset;
 
         this.segmentDirectory = partitionDir.resolve("segment-" +
                 String.format("%016d", baseOffset));
-        Files.createDirectories(segmentDirectory);
 
         Path logFilePath = segmentDirectory.resolve("log");
         Path indexFilePath = segmentDirectory.resolve("index");
 
-        this.logFile = new LogFile(logFilePath);
-        this.offsetIndex = new OffsetIndex(indexFilePath, config.maxIndexEntries());
+        if (prepared != null) {
+            Files.move(prepared.directory(), segmentDirectory, StandardCopyOption.ATOMIC_MOVE);
+            this.logFile = prepared.logFile();
+            this.offsetIndex = prepared.offsetIndex();
+        } else {
+            Files.createDirectories(segmentDirectory);
+            // only the background preparer preallocates; opening or creating in place never waits on it
+            this.logFile = new LogFile(logFilePath);
+            this.offsetIndex = new OffsetIndex(indexFilePath, config.maxIndexEntries());
+            recover(recoverFrom);
+        }
+    }
 
-        if (offsetIndex.getLastOffset().isPresent()) {
-            this.nextOffset = offsetIndex.getLastOffset().get() + 1;
+    /**
+     * Walks the records after the last trusted one to find where the data ends. A preallocated
+     * file that was not trimmed is zero-filled past its last record, so a zero length marks the end;
+     * a record cut short by a crash is dropped and overwritten by the next append.
+     */
+    private void recover(OffsetEntry recoverFrom) throws IOException {
+        long position = 0L;
+        long offset = baseOffset;
+        long lastIndexedOffset = -1L;
+        if (recoverFrom != null) {
+            // index entries past the recovery point may describe data that never reached the disk
+            offsetIndex.truncateFrom(recoverFrom.logicalOffset());
+            position = recoverFrom.filePosition();
+            offset = recoverFrom.logicalOffset();
+            lastIndexedOffset = offset - 1;
+        } else if (offsetIndex.getLastOffset().isPresent()) {
+            lastIndexedOffset = offsetIndex.getLastOffset().get();
+            position = offsetIndex.findPositionForOffset(lastIndexedOffset).filePosition();
+            offset = lastIndexedOffset;
         }
+
+        long allocatedSize = logFile.getAllocatedSize();
+        logFile.setLogicalSize(allocatedSize);
+        try (RecordCursor cursor = new RecordCursor(logFile, position, allocatedSize)) {
+            while (cursor.next()) {
+                if (offset > lastIndexedOffset) {
+                    offsetIndex.addEntry(offset, cursor.position() - cursor.frameLength());
+                }
+                offset++;
+            }
+            position = cursor.position();
+        }
+
+        logFile.setLogicalSize(position);
+        this.nextOffset = offset;
     }
 
     public OffsetEntry append(Message message) throws IOException {
-        long currentPosition = logFile.getCurrentPosition();
+        long currentPosition = logFile.getCurrentFileSize();
 
-        BinaryMessageSerializer serializer = new BinaryMessageSerializer();
-        byte[] bytes = serializer.serialize(message);
-        logFile.append(bytes);
+        BufferPool pool = BufferPool.shared();
+        ByteBuffer buffer = pool.acquire(SERIALIZER.serializedSize(message));
+        try {
+            SERIALIZER.serialize(message, buffer);
+            logFile.append(buffer.flip());
+        } finally {
+            pool.release(buffer);
+        }
 
         long assignedOffset = nextOffset;
 
@@ -55,45 +129,171 @@ public class LogSegment {
     }
 
     public ReadResult readFrom(long startOffset, long maxCount) throws IOException {
+        return readFrom(startOffset, maxCount, nextOffset, FetchFilter.ALL);
+    }
+
+    /**
+     * Scans records from {@code startOffset} up to (not including) {@code maxOffset} and returns
+     * up to {@code maxCount} of those matching {@code filter}. The filter is evaluated on the
+     * serialized record, so records it rejects are never decoded.
+     */
+    public ReadResult readFrom(long startOffset, long maxCount, long maxOffset, FetchFilter filter) throws IOException {
+        return readFrom(startOffset, maxCount, maxOffset, filter, HiddenRecords.NONE, ScanBudget.unlimited());
+    }
+
+    /**
+     * Like {@link #readFrom(long, long, long, FetchFilter)} but also skips the records
+     * {@code hidden} hides, such as control records and aborted transactional data, and stops
+     * early once {@code budget} is spent.
+     */
+    ReadResult readFrom(long startOffset, long maxCount, long maxOffset, FetchFilter filter, HiddenRecords hidden,
+                        ScanBudget budget) throws IOException {
         if (startOffset < baseOffset) {
             throw new IllegalArgumentException("startOffset " + startOffset + " is before baseOffset " + baseOffset);
         }
 
-        BinaryMessageSerializer serializer = new BinaryMessageSerializer();
-        List<Message> messages = new ArrayList<>();
         // Read messages sequentially, tracking current offset
         OffsetEntry currentOffsetEntry = offsetIndex.findPositionForOffset(startOffset);
         if (currentOffsetEntry == null) {
-            return new ReadResult(messages);
+            return new ReadResult(new ArrayList<>(), startOffset);
         }
-        long currentFilePosition = currentOffsetEntry.filePosition();
-        long currentLogicalOffset = currentOffsetEntry.logicalOffset();
+        return scan(logFile, logFile.getCurrentFileSize(), currentOffsetEntry, startOffset, maxCount,
+                Math.min(nextOffset, maxOffset), filter, hidden, budget);
+    }
 
-        while (messages.size() < maxCount && currentLogicalOffset < nextOffset) {
-            // Skip messages until you reach start_offset
-            byte[] messageLengthBytes = logFile.readBytesAtPosition(currentFilePosition, 4);
+    /**
+     * Walks length-prefixed records in the first {@code sourceSize} bytes of {@code source} from the
+     * record at {@code from}, collecting those at or after {@code startOffset} that are not
+     * {@code hidden} and match {@code filter}, until {@code maxCount} messages are collected,
+     * {@code endOffset} is reached or {@code budget} is spent. Every record walked counts against
+     * the budget, matching or not.
+     */
+    static ReadResult scan(RecordSource source, long sourceSize, OffsetEntry from, long startOffset, long maxCount,
+                           long endOffset, FetchFilter filter, HiddenRecords hidden, ScanBudget budget) throws IOException {
+        BinaryRecordView view = new BinaryRecordView();
+        List<Message> messages = new ArrayList<>();
+        long currentLogicalOffset = from.logicalOffset();
 
-            if (messageLengthBytes.length < 1) {
-                break;
+        try (RecordCursor cursor = new RecordCursor(source, from.filePosition(), sourceSize)) {
+            while (messages.size() < maxCount && currentLogicalOffset < endOffset && !budget.isExhausted() && cursor.next()) {
+                budget.consume(cursor.frameLength());
+                // Skip messages until you reach start_offset; rejected records are never copied out of the buffer
+                view.wrap(cursor.buffer(), cursor.frameStart());
+                if (currentLogicalOffset >= startOffset
+                        && (hidden == HiddenRecords.NONE || !hidden.hides(currentLogicalOffset, view))
+                        && (filter == FetchFilter.ALL || filter.matches(view))) {
+                    messages.add(SERIALIZER.deserialize(cursor.frameBytes()));
+                }
+                currentLogicalOffset++;
             }
+        }
 
-            int messageLength = ByteBuffer.wrap(messageLengthBytes).getInt();
-            currentFilePosition += 4;
-            byte[] messageBytes = logFile.readBytesAtPosition(currentFilePosition, messageLength);
-            currentFilePosition += messageLength;
+        return new ReadResult(messages, Math.max(startOffset, currentLogicalOffset));
+    }
 
-            // Collect messages until you hit max_count or end of segment
-            if (currentLogicalOffset >= startOffset) {
-                messages.add(serializer.deserialize(messageBytes));
+    /**
+     * Drops the records at and after {@code offset}, so the next append is written at {@code offset}.
+     */
+    void truncateTo(long offset) throws IOException {
+        if (offset >= nextOffset) {
+            return;
+        }
+        OffsetEntry from = offsetIndex.findPositionForOffset(offset);
+        long position = from != null ? from.filePosition() : 0L;
+        long current = from != null ? from.logicalOffset() : baseOffset;
+        try (RecordCursor cursor = new RecordCursor(logFile, position, logFile.getCurrentFileSize())) {
+            while (current < offset && cursor.next()) {
+                current++;
             }
-            currentLogicalOffset++;
+            position = cursor.position();
         }
+        offsetIndex.truncateFrom(offset);
+        logFile.truncate(position);
+        nextOffset = offset;
+    }
+
+    public OffsetEntry lookup(long offset) {
+        return offsetIndex.findPositionForOffset(offset);
+    }
 
-        return new ReadResult(messages);
+    public Path getSegmentDirectory() {
+        return segmentDirectory;
+    }
+
+    public long getBaseOffset() {
+        return baseOffset;
+    }
+
+    public long getNextOffset() {
+        return nextOffset;
+    }
+
+    /**
+     * Forces the log to disk and then appends the index entries not yet written, so the index
+     * file never points at data that could be lost.
+     */
+    public void flush() throws IOException {
+        flush(takeUnflushedIndexEntries());
+    }
+
+    /**
+     * Index entries added since the last flush. Taken while appends are excluded and passed to
+     * {@link #flush(List)} afterwards, so the slow part of a flush does not block appends.
+     */
+    List<OffsetEntry> takeUnflushedIndexEntries() {
+        return offsetIndex.takeUnwritten();
+    }
+
+    void flush(List<OffsetEntry> indexEntries) throws IOException {
+        logFile.flush();
+        offsetIndex.appendToDisk(indexEntries);
+    }
+
+    public Path getLogFilePath() {
+        return segmentDirectory.resolve("log");
+    }
+
+    public Path getIndexFilePath() {
+        return segmentDirectory.resolve("index");
+    }
+
+    public long getSizeInBytes() throws IOException {
+        return logFile.getCurrentFileSize();
+    }
+
+    public void trim() throws IOException {
+        logFile.trim();
+    }
+
+    /**
+     * Flushes the segment and closes its files.
+     */
+    @Override
+    public void close() throws IOException {
+        flush();
+        closeFiles();
+    }
+
+    private void closeFiles() throws IOException {
+        offsetIndex.close();
+        logFile.close();
+    }
+
+    /**
+     * Closes the segment and removes its directory.
+     */
+    public void delete() throws IOException {
+        closeFiles();
+        try (var children = Files.list(segmentDirectory)) {
+            for (Path child : (Iterable<Path>) children::iterator) {
+                Files.delete(child);
+            }
+        }
+        Files.delete(segmentDirectory);
     }
 
     public boolean isFull() throws IOException {
         return logFile.getCurrentFileSize() >= config.segmentSizeBytes() ||
-                offsetIndex.getEntries().size() >= config.maxIndexEntries();
+                offsetIndex.size() >= config.maxIndexEntries();
     }
 }
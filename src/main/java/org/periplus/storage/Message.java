@@ -1,19 +1,34 @@
 package org.periplus.storage;
 
 import java.time.Instant;
+import java.util.HashMap;
 import java.util.Map;
 
 public class Message {
+    public static final long NO_PRODUCER_ID = -1L;
+    public static final int NO_SEQUENCE = -1;
+
     private long timestamp;
     private String key;
     private String value;
     private Map<String, String> headers;
+    private long producerId;
+    private int sequence;
+    private boolean transactional;
+    // null for data records
+    private ControlRecordType controlType;
 
     public Message(long timestamp, String key, String value, Map<String, String> headers) {
+        this(timestamp, key, value, headers, NO_PRODUCER_ID, NO_SEQUENCE);
+    }
+
+    public Message(long timestamp, String key, String value, Map<String, String> headers, long producerId, int sequence) {
         this.timestamp = timestamp;
         this.key = key;
         this.value = value;
         this.headers = headers;
+        this.producerId = producerId;
+        this.sequence = sequence;
     }
 
     public static Message create(String key, String value, Map<String, String> headers) {
@@ -24,6 +39,16 @@ public class Message {
         return new Message(timestamp.toEpochMilli(), key, value, headers);
     }
 
+    /**
+     * A marker ending {@code producerId}'s open transaction on the partition it is appended to.
+     * Control records are kept out of consumer fetches.
+     */
+    public static Message controlRecord(long producerId, ControlRecordType type) {
+        Message message = new Message(Instant.now().toEpochMilli(), null, "", new HashMap<>(), producerId, NO_SEQUENCE);
+        message.setControlType(type);
+        return message;
+    }
+
     public long getTimestamp() {
         return timestamp;
     }
@@ -55,4 +80,44 @@ public class Message {
     public void setHeaders(Map<String, String> headers) {
         this.headers = headers;
     }
-}
\ No newline at end of file
+
+    public long getProducerId() {
+        return producerId;
+    }
+
+    public void setProducerId(long producerId) {
+        this.producerId = producerId;
+    }
+
+    public int getSequence() {
+        return sequence;
+    }
+
+    public void setSequence(int sequence) {
+        this.sequence = sequence;
+    }
+
+    public boolean hasProducerId() {
+        return producerId != NO_PRODUCER_ID;
+    }
+
+    public boolean isTransactional() {
+        return transactional;
+    }
+
+    public void setTransactional(boolean transactional) {
+        this.transactional = transactional;
+    }
+
+    public ControlRecordType getControlType() {
+        return controlType;
+    }
+
+    public void setControlType(ControlRecordType controlType) {
+        this.controlType = controlType;
+    }
+
+    public boolean isControl() {
+        return controlType != null;
+    }
+}
@@ -1,9 +1,10 @@
 package org.periplus.storage;
 
+import org.periplus.memory.BufferPool;
+
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
@@ -11,15 +12,29 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
 
-public class OffsetIndex {
+/**
+ * Maps logical offsets to file positions. The index file only ever grows: entries are added in
+ * memory and appended to the file by {@link #saveToDisk} or {@link #appendToDisk}, so a crash
+ * mid-write can at worst leave a torn last entry, which is dropped on load.
+ */
+public class OffsetIndex implements AutoCloseable {
+    private static final int ENTRY_BYTES = 16;
+    // the index is read and written in pooled chunks rather than in one buffer the size of the file
+    private static final int IO_BUFFER_BYTES = 64 * 1024;
+
     private final List<OffsetEntry> entries;
-    private final Path indexToFilePath;
     private final int maxEntries;
+    private final FileChannel channel;
+    // entries in the index file; only the single flushing thread appends, so there is one writer
+    private volatile long fileEntries;
 
     public OffsetIndex(Path indexToFilePath, int maxEntries) throws IOException {
         this.maxEntries = maxEntries;
-        this.indexToFilePath = indexToFilePath;
-        this.entries = new ArrayList<OffsetEntry>(maxEntries);
+        this.entries = new ArrayList<OffsetEntry>();
+        this.channel = FileChannel.open(indexToFilePath,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE,
+                StandardOpenOption.READ);
 
         loadFromDisk();
     }
@@ -46,40 +61,92 @@ public class OffsetIndex {
         return null;
     }
 
-    public void saveToDisk() throws IOException {
-        try (var channel = FileChannel.open(indexToFilePath,
-                StandardOpenOption.CREATE,
-                StandardOpenOption.WRITE,
-                StandardOpenOption.TRUNCATE_EXISTING)) {
-            var buffer = ByteBuffer.allocateDirect(entries.size() * 16);
-            for (var entry : entries) {
+    /**
+     * Appends every entry not yet written to the index file and forces it to disk.
+     */
+    public synchronized void saveToDisk() throws IOException {
+        appendToDisk(takeUnwritten());
+    }
+
+    /**
+     * Returns the entries not in the index file yet, which the caller then passes to
+     * {@link #appendToDisk}. Splitting the two lets the entries be collected while appends are
+     * excluded and written to disk after appends have resumed. Entries whose write fails are
+     * returned again next time.
+     */
+    List<OffsetEntry> takeUnwritten() {
+        return new ArrayList<>(entries.subList((int) fileEntries, entries.size()));
+    }
+
+    void appendToDisk(List<OffsetEntry> unwritten) throws IOException {
+        if (unwritten.isEmpty()) {
+            return;
+        }
+        BufferPool pool = BufferPool.shared();
+        ByteBuffer buffer = pool.acquire(IO_BUFFER_BYTES);
+        try {
+            for (var entry : unwritten) {
+                if (buffer.remaining() < ENTRY_BYTES) {
+                    writeFully(buffer.flip());
+                    buffer.clear();
+                }
                 buffer.putLong(entry.logicalOffset());
                 buffer.putLong(entry.filePosition());
             }
-
-            buffer.flip();
-            channel.write(buffer);
+            writeFully(buffer.flip());
             channel.force(true);
+        } finally {
+            pool.release(buffer);
         }
     }
 
-    public void loadFromDisk() throws IOException {
-        if (!Files.exists(indexToFilePath)) {
-            return;
+    /**
+     * Drops every entry at or after {@code offset}, in memory and in the file.
+     */
+    synchronized void truncateFrom(long offset) throws IOException {
+        int index = Collections.binarySearch(entries, new OffsetEntry(offset, 0));
+        int kept = index >= 0 ? index : -index - 1;
+        entries.subList(kept, entries.size()).clear();
+        if (fileEntries > kept) {
+            channel.truncate((long) kept * ENTRY_BYTES);
+            fileEntries = kept;
         }
+    }
 
+    public synchronized void loadFromDisk() throws IOException {
         entries.clear();
-        try (var channel = FileChannel.open(indexToFilePath, StandardOpenOption.READ)) {
-            var buffer = ByteBuffer.allocateDirect((int) channel.size());
-            channel.read(buffer);
-            buffer.flip();
-
-            while (buffer.hasRemaining()) {
-                long logicalOffset = buffer.getLong();
-                long filePosition = buffer.getLong();
-                entries.add(new OffsetEntry(logicalOffset, filePosition));
+        BufferPool pool = BufferPool.shared();
+        ByteBuffer buffer = pool.acquire(IO_BUFFER_BYTES);
+        try {
+            long position = 0;
+            int read;
+            while ((read = channel.read(buffer, position)) > 0) {
+                position += read;
+                buffer.flip();
+                while (buffer.remaining() >= ENTRY_BYTES) {
+                    long logicalOffset = buffer.getLong();
+                    long filePosition = buffer.getLong();
+                    entries.add(new OffsetEntry(logicalOffset, filePosition));
+                }
+                buffer.compact();
             }
+        } finally {
+            pool.release(buffer);
+        }
+
+        // a torn trailing entry from a crash mid-append is cut off so appends stay aligned
+        fileEntries = entries.size();
+        if (channel.size() > fileEntries * ENTRY_BYTES) {
+            channel.truncate(fileEntries * ENTRY_BYTES);
+        }
+    }
+
+    private void writeFully(ByteBuffer buffer) throws IOException {
+        long position = fileEntries * ENTRY_BYTES;
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
         }
+        fileEntries = position / ENTRY_BYTES;
     }
 
     public Optional<Long> getLastOffset() {
@@ -91,4 +158,13 @@ public class OffsetIndex {
     public List<OffsetEntry> getEntries() {
         return entries;
     }
+
+    public int size() {
+        return entries.size();
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
 }
@@ -0,0 +1,7 @@
+package org.periplus.storage;
+
+public class OutOfOrderSequenceException extends RuntimeException {
+    public OutOfOrderSequenceException(String message) {
+        super(message);
+    }
+}
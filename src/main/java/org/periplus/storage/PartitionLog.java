@@ -1,6 +1,677 @@
 package org.periplus.storage;
 
-public class PartitionLog {
-    // create segment
-    // manage segment     
+import org.periplus.config.BrokerConfig;
+import org.periplus.storage.remote.RemoteSegmentMetadata;
+import org.periplus.storage.remote.RemoteStorage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+public class PartitionLog implements AutoCloseable {
+    private static final Pattern SEGMENT_DIRECTORY = Pattern.compile("segment-(\\d{16})");
+    private static final String RECOVERY_POINT_FILE = "recovery-point";
+    private static final String SNAPSHOT_DIRECTORY = "snapshots";
+    private static final Pattern PRODUCER_SNAPSHOT = Pattern.compile("(\\d{16})\\.producer");
+    private static final String PRODUCER_SNAPSHOT_SUFFIX = ".producer";
+    private static final String TRANSACTION_SNAPSHOT_SUFFIX = ".transaction";
+    // a crash can lose the data after the newest snapshot, so the one before is kept as well
+    private static final int SNAPSHOTS_RETAINED = 2;
+    private static final String TRANSACTION_INDEX_DIRECTORY = "transaction-index";
+    private static final int REPLAY_BATCH_SIZE = 1000;
+
+    private final Path partitionDirectory;
+    private final BrokerConfig config;
+    private final ConcurrentNavigableMap<Long, LogSegment> segments = new ConcurrentSkipListMap<>();
+    private final ProducerStateManager producerState;
+    private final TransactionStateManager transactions = new TransactionStateManager();
+    private final TransactionIndex transactionIndex;
+    private final ExecutorService segmentPreparer;
+    // runs every flush, so flushes never overlap; separate from the preparer because a flush
+    // needs the lock that a roll holds while waiting for the next segment
+    private final ScheduledExecutorService flusher;
+    private LogSegment activeSegment;
+    private Future<PreparedSegment> nextSegment;
+    private TieredStorage tieredStorage;
+    private boolean closed;
+    // rolled segments whose data or index entries may not be on disk yet, oldest first
+    private final Deque<LogSegment> unflushedSegments = new ArrayDeque<>();
+    private long unflushedMessages;
+    private boolean flushScheduled;
+    private volatile RecoveryPoint recoveryPoint;
+    // offsets below the high watermark are replicated to every in-sync replica and visible to consumers
+    private volatile long highWatermark;
+
+    public PartitionLog(Path partitionDirectory, BrokerConfig config) throws IOException {
+        this(partitionDirectory, config, null);
+    }
+
+    /**
+     * Opens the partition with closed segments offloaded to {@code remoteStorage}, or kept
+     * locally forever if it is {@code null}.
+     */
+    public PartitionLog(Path partitionDirectory, BrokerConfig config, RemoteStorage remoteStorage) throws IOException {
+        this.partitionDirectory = partitionDirectory;
+        this.config = config;
+        this.producerState = new ProducerStateManager(config.producerSequenceWindow(), config.producerMaxCount());
+        this.segmentPreparer = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "segment-preparer-" + partitionDirectory.getFileName());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "log-flusher-" + partitionDirectory.getFileName());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        Files.createDirectories(partitionDirectory.resolve(SNAPSHOT_DIRECTORY));
+        this.transactionIndex = TransactionIndex.open(partitionDirectory.resolve(TRANSACTION_INDEX_DIRECTORY));
+        Optional<RecoveryPoint> checkpoint = RecoveryPoint.read(partitionDirectory.resolve(RECOVERY_POINT_FILE));
+        loadSegments(checkpoint);
+        if (segments.isEmpty()) {
+            roll(0L);
+        }
+        this.activeSegment = segments.lastEntry().getValue();
+        this.recoveryPoint = checkpoint.orElse(new RecoveryPoint(segments.firstKey(), segments.firstKey(), 0L));
+        // markers of records lost in a crash must not hide the records that reuse their offsets
+        transactionIndex.truncateFrom(getLogEndOffset());
+        // the replay may have to start in a segment that is only in remote storage
+        if (remoteStorage != null) {
+            this.tieredStorage = new TieredStorage(this, remoteStorage, config);
+        }
+        recoverProducerState();
+        prepareNextSegment();
+        flusher.scheduleWithFixedDelay(this::flushInBackground,
+                config.flushIntervalMs(), config.flushIntervalMs(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Opens the existing segments. Without a checkpoint every segment is scanned in full; with one
+     * only the data written after it is.
+     */
+    private void loadSegments(Optional<RecoveryPoint> checkpoint) throws IOException {
+        try (var children = Files.list(partitionDirectory)) {
+            for (Path child : (Iterable<Path>) children::iterator) {
+                Matcher matcher = SEGMENT_DIRECTORY.matcher(child.getFileName().toString());
+                if (Files.isDirectory(child) && matcher.matches()) {
+                    long baseOffset = Long.parseLong(matcher.group(1));
+                    OffsetEntry recoverFrom = checkpoint.map(point -> point.recoverFrom(baseOffset))
+                            .orElse(new OffsetEntry(baseOffset, 0L));
+                    segments.put(baseOffset, new LogSegment(partitionDirectory, baseOffset, config, recoverFrom));
+                }
+            }
+        }
+        // recovered segments hold index entries that are not in their files yet
+        if (!segments.isEmpty()) {
+            long firstUnflushed = checkpoint.map(RecoveryPoint::segmentBaseOffset).orElse(Long.MIN_VALUE);
+            unflushedSegments.addAll(segments.subMap(firstUnflushed, true, segments.lastKey(), false).values());
+        }
+    }
+
+    /**
+     * Loads the newest producer and transaction snapshots that the log still reaches and replays
+     * whatever was appended after they were taken, or the whole log if there are none. Snapshots
+     * live in the partition directory, so they outlast the segments they describe when those are
+     * offloaded.
+     */
+    private void recoverProducerState() throws IOException {
+        producerState.clear();
+        transactions.clear();
+        long replayFrom = getLogStartOffset();
+        OptionalLong snapshotOffset = OptionalLong.empty();
+        for (long offset : snapshotOffsets()) {
+            if (offset <= getLogEndOffset()) {
+                snapshotOffset = OptionalLong.of(offset);
+            }
+        }
+        if (snapshotOffset.isPresent()) {
+            replayFrom = producerState.loadSnapshot(snapshotFile(snapshotOffset.getAsLong(), PRODUCER_SNAPSHOT_SUFFIX));
+            transactions.loadSnapshot(snapshotFile(snapshotOffset.getAsLong(), TRANSACTION_SNAPSHOT_SUFFIX));
+        }
+
+        long offset = replayFrom;
+        while (offset < getLogEndOffset()) {
+            List<Message> batch = readFrom(offset, REPLAY_BATCH_SIZE).messages();
+            if (batch.isEmpty()) {
+                break;
+            }
+            for (Message message : batch) {
+                producerState.update(message, lookup(offset));
+                updateTransactionState(message, offset);
+                offset++;
+            }
+        }
+    }
+
+    // the entry a replayed message was written at; offloaded segments are only indexed remotely
+    private OffsetEntry lookup(long offset) {
+        Map.Entry<Long, LogSegment> segment = segments.floorEntry(offset);
+        return segment != null ? segment.getValue().lookup(offset) : new OffsetEntry(offset, -1L);
+    }
+
+    /**
+     * Captures the producer and transaction state as of {@code offset}, the log end offset, and
+     * writes it on the flusher thread, so appends never wait for the snapshot to reach the disk. A
+     * snapshot that fails to write only means recovery replays from an older one.
+     */
+    private void scheduleSnapshots(long offset) {
+        ByteBuffer transactionSnapshot = transactions.snapshot(offset);
+        ByteBuffer producerSnapshot = producerState.snapshot(offset);
+        flusher.execute(() -> {
+            try {
+                writeSnapshots(offset, transactionSnapshot, producerSnapshot);
+            } catch (IOException e) {
+                // recovery falls back to the previous snapshot
+            }
+        });
+    }
+
+    /**
+     * Writes a snapshot pair and deletes all but the newest {@value #SNAPSHOTS_RETAINED}. The
+     * producer snapshot is written last, so its presence means the pair is complete.
+     */
+    private void writeSnapshots(long offset, ByteBuffer transactionSnapshot, ByteBuffer producerSnapshot)
+            throws IOException {
+        SnapshotFiles.write(snapshotFile(offset, TRANSACTION_SNAPSHOT_SUFFIX), transactionSnapshot);
+        SnapshotFiles.write(snapshotFile(offset, PRODUCER_SNAPSHOT_SUFFIX), producerSnapshot);
+
+        List<Long> offsets = snapshotOffsets();
+        for (long old : offsets.subList(0, Math.max(0, offsets.size() - SNAPSHOTS_RETAINED))) {
+            Files.deleteIfExists(snapshotFile(old, PRODUCER_SNAPSHOT_SUFFIX));
+            Files.deleteIfExists(snapshotFile(old, TRANSACTION_SNAPSHOT_SUFFIX));
+        }
+    }
+
+    // offsets of the complete snapshots, oldest first
+    private List<Long> snapshotOffsets() throws IOException {
+        List<Long> offsets = new ArrayList<>();
+        try (var files = Files.list(partitionDirectory.resolve(SNAPSHOT_DIRECTORY))) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Matcher matcher = PRODUCER_SNAPSHOT.matcher(file.getFileName().toString());
+                if (matcher.matches()) {
+                    offsets.add(Long.parseLong(matcher.group(1)));
+                }
+            }
+        }
+        offsets.sort(null);
+        return offsets;
+    }
+
+    private Path snapshotFile(long offset, String suffix) {
+        return partitionDirectory.resolve(SNAPSHOT_DIRECTORY).resolve(String.format("%016d", offset) + suffix);
+    }
+
+    private void prepareNextSegment() {
+        nextSegment = segmentPreparer.submit(() -> PreparedSegment.prepare(partitionDirectory, config));
+    }
+
+    /**
+     * Makes a new segment starting at {@code baseOffset} the active one. The previous active
+     * segment is flushed and trimmed and the segment after this one is prepared in the background.
+     * If the prepared segment is not ready yet the new one is created in place rather than waiting.
+     */
+    private LogSegment roll(long baseOffset) throws IOException {
+        LogSegment previous = activeSegment;
+        LogSegment segment = new LogSegment(partitionDirectory, baseOffset, config, takePreparedSegment(false));
+        segments.put(baseOffset, segment);
+        activeSegment = segment;
+
+        if (previous != null) {
+            unflushedSegments.add(previous);
+            scheduleFlush();
+            segmentPreparer.submit(() -> {
+                previous.trim();
+                return null;
+            });
+            // a preparation still in progress is kept for the next roll
+            if (nextSegment == null) {
+                prepareNextSegment();
+            }
+        }
+        return segment;
+    }
+
+    // lets tests roll into a prepared segment deterministically
+    synchronized void awaitNextSegment() throws IOException {
+        try {
+            if (nextSegment != null) {
+                nextSegment.get();
+            }
+        } catch (ExecutionException e) {
+            throw new IOException("preparing the next segment failed", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while waiting for the next segment", e);
+        }
+    }
+
+    private PreparedSegment takePreparedSegment(boolean wait) throws IOException {
+        if (nextSegment == null || (!wait && !nextSegment.isDone())) {
+            return null;
+        }
+        try {
+            return nextSegment.get();
+        } catch (ExecutionException e) {
+            // fall back to creating the segment in place
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while waiting for the next segment", e);
+        } finally {
+            nextSegment = null;
+        }
+    }
+
+    /**
+     * Appends {@code message}, or returns the entry it was first written at if its producer
+     * already appended this sequence number. Transactional data opens its producer's transaction
+     * and a control record ends it.
+     */
+    public synchronized OffsetEntry append(Message message) throws IOException {
+        if ((message.isTransactional() || message.isControl()) && !message.hasProducerId()) {
+            throw new IllegalArgumentException("transactional and control records need a producer id");
+        }
+        Optional<OffsetEntry> duplicate = producerState.checkSequence(message);
+        if (duplicate.isPresent()) {
+            return duplicate.get();
+        }
+
+        if (activeSegment.isFull()) {
+            producerState.removeExpired(System.currentTimeMillis() - config.producerExpiryMs());
+            scheduleSnapshots(activeSegment.getNextOffset());
+            roll(activeSegment.getNextOffset());
+        }
+        OffsetEntry entry = activeSegment.append(message);
+        producerState.update(message, entry);
+        updateTransactionState(message, entry.logicalOffset());
+        if (++unflushedMessages >= config.flushIntervalMessages()) {
+            scheduleFlush();
+        }
+        return entry;
+    }
+
+    /**
+     * The open transactions, each producer id mapped to the offset its transaction started at.
+     */
+    public synchronized Map<Long, Long> openTransactions() {
+        return transactions.openTransactions();
+    }
+
+    /**
+     * Appends an abort marker for {@code producerId} if its open transaction is still the one that
+     * started at {@code firstOffset}, and returns where it was written. Checking and appending
+     * under one lock keeps a transaction that ended in the meantime, or the next one the producer
+     * opened, from being aborted by mistake.
+     */
+    public synchronized Optional<OffsetEntry> abortTransaction(long producerId, long firstOffset) throws IOException {
+        if (transactions.firstOffset(producerId).orElse(-1L) != firstOffset) {
+            return Optional.empty();
+        }
+        return Optional.of(append(Message.controlRecord(producerId, ControlRecordType.ABORT)));
+    }
+
+    /**
+     * An abort is recorded as the range of the transaction it ends, so it costs one index entry and
+     * no read of the data it hides; commits, the common case, cost nothing beyond the marker.
+     */
+    private void updateTransactionState(Message message, long offset) {
+        if (message.isControl()) {
+            transactionIndex.markControl(offset);
+            OptionalLong firstOffset = transactions.end(message.getProducerId());
+            if (firstOffset.isPresent() && message.getControlType() == ControlRecordType.ABORT) {
+                transactionIndex.markAborted(message.getProducerId(), firstOffset.getAsLong(), offset);
+            }
+        } else if (message.isTransactional()) {
+            transactions.begin(message.getProducerId(), offset);
+        }
+    }
+
+    private void scheduleFlush() {
+        if (!flushScheduled) {
+            flushScheduled = true;
+            flusher.execute(this::flushInBackground);
+        }
+    }
+
+    private void flushInBackground() {
+        try {
+            flushNow();
+        } catch (IOException | RuntimeException e) {
+            // the recovery point stays where it was and the next flush retries
+            synchronized (this) {
+                flushScheduled = false;
+            }
+        }
+    }
+
+    /**
+     * Forces everything appended so far to disk and moves the recovery point checkpoint up to
+     * the log end offset. Blocks until done.
+     */
+    public void flush() throws IOException {
+        try {
+            flusher.submit(() -> {
+                flushNow();
+                return null;
+            }).get();
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof IOException io ? io : new IOException("flush failed", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while flushing", e);
+        }
+    }
+
+    // only ever runs on the flusher thread, so flushes happen one at a time and in order
+    private void flushNow() throws IOException {
+        List<LogSegment> toFlush = new ArrayList<>();
+        List<List<OffsetEntry>> indexEntries = new ArrayList<>();
+        TransactionIndex.Changes transactionChanges;
+        RecoveryPoint target;
+        synchronized (this) {
+            flushScheduled = false;
+            unflushedMessages = 0;
+            toFlush.addAll(unflushedSegments);
+            toFlush.add(activeSegment);
+            for (LogSegment segment : toFlush) {
+                indexEntries.add(segment.takeUnflushedIndexEntries());
+            }
+            transactionChanges = transactionIndex.takeChanges();
+            target = new RecoveryPoint(activeSegment.getBaseOffset(), activeSegment.getNextOffset(), activeSegment.getSizeInBytes());
+        }
+        if (target.equals(recoveryPoint) && toFlush.size() == 1 && indexEntries.get(0).isEmpty() && transactionChanges.isEmpty()) {
+            return;
+        }
+
+        // fsync without holding the lock; appends carry on meanwhile and are caught by the next flush
+        try {
+            for (int i = 0; i < toFlush.size(); i++) {
+                toFlush.get(i).flush(indexEntries.get(i));
+            }
+            transactionIndex.write(transactionChanges);
+        } catch (IOException | RuntimeException e) {
+            synchronized (this) {
+                transactionIndex.restore(transactionChanges);
+            }
+            throw e;
+        }
+        target.write(partitionDirectory.resolve(RECOVERY_POINT_FILE));
+        synchronized (this) {
+            unflushedSegments.removeAll(toFlush.subList(0, toFlush.size() - 1));
+            recoveryPoint = target;
+        }
+    }
+
+    /**
+     * Drops every record at or after {@code offset}, e.g. when a follower's log has run past the
+     * new leader's. Runs on the flusher thread, so no flush in progress writes index entries or a
+     * checkpoint for the dropped records. Offloaded segments cannot be truncated.
+     */
+    public void truncateTo(long offset) throws IOException {
+        synchronized (this) {
+            if (offset < getLocalLogStartOffset()) {
+                throw new IllegalArgumentException("cannot truncate to " + offset + ", records before "
+                        + getLocalLogStartOffset() + " are offloaded");
+            }
+        }
+        try {
+            flusher.submit(() -> {
+                truncateNow(offset);
+                return null;
+            }).get();
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof IOException io ? io : new IOException("truncation failed", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while truncating", e);
+        }
+    }
+
+    private synchronized void truncateNow(long offset) throws IOException {
+        if (offset >= getLogEndOffset()) {
+            return;
+        }
+        long baseOffset = segments.floorKey(offset);
+        if (recoveryPoint.offset() > offset) {
+            // segments before this one are untouched and flushed; this one is scanned again on recovery
+            RecoveryPoint lowered = new RecoveryPoint(baseOffset, baseOffset, 0L);
+            lowered.write(partitionDirectory.resolve(RECOVERY_POINT_FILE));
+            recoveryPoint = lowered;
+        }
+        for (LogSegment later : new ArrayList<>(segments.tailMap(baseOffset, false).values())) {
+            segments.remove(later.getBaseOffset());
+            unflushedSegments.remove(later);
+            later.delete();
+        }
+        LogSegment segment = segments.get(baseOffset);
+        segment.truncateTo(offset);
+        unflushedSegments.remove(segment);
+        activeSegment = segment;
+
+        transactionIndex.truncateFrom(offset);
+        highWatermark = Math.min(highWatermark, offset);
+        for (long snapshot : snapshotOffsets()) {
+            if (snapshot > offset) {
+                Files.deleteIfExists(snapshotFile(snapshot, PRODUCER_SNAPSHOT_SUFFIX));
+                Files.deleteIfExists(snapshotFile(snapshot, TRANSACTION_SNAPSHOT_SUFFIX));
+            }
+        }
+        recoverProducerState();
+    }
+
+    public ReadResult readFrom(long startOffset, long maxCount) throws IOException {
+        return readFrom(startOffset, maxCount, getLogEndOffset());
+    }
+
+    /**
+     * Reads up to {@code maxCount} messages starting at {@code startOffset}, never returning
+     * offsets at or beyond {@code maxOffset}. Replicas read up to the log end offset, consumers
+     * up to the high watermark.
+     */
+    public ReadResult readFrom(long startOffset, long maxCount, long maxOffset) throws IOException {
+        return readFrom(startOffset, maxCount, maxOffset, FetchFilter.ALL);
+    }
+
+    /**
+     * Like {@link #readFrom(long, long, long)} but only returns messages matching {@code filter}.
+     * Scanning stops at {@code maxOffset}, or after {@code fetch.max.scan.bytes} of records, even
+     * if fewer than {@code maxCount} messages matched; the result's next offset says where to resume.
+     */
+    public ReadResult readFrom(long startOffset, long maxCount, long maxOffset, FetchFilter filter) throws IOException {
+        return read(startOffset, maxCount, maxOffset, filter, HiddenRecords.NONE);
+    }
+
+    /**
+     * Reads what a consumer at {@code isolation} may see: up to the high watermark, or up to the
+     * last stable offset with aborted transactions skipped when reading committed. Control records
+     * are never returned.
+     */
+    public ReadResult readForConsumer(long startOffset, long maxCount, FetchFilter filter,
+                                      IsolationLevel isolation) throws IOException {
+        long maxOffset;
+        HiddenRecords hidden;
+        synchronized (this) {
+            maxOffset = isolation == IsolationLevel.READ_COMMITTED ? getLastStableOffset() : highWatermark;
+            hidden = transactionIndex.hiddenFrom(isolation);
+        }
+        return read(startOffset, maxCount, maxOffset, filter, hidden);
+    }
+
+    /**
+     * Local segments are read under the lock. Remote segments never change, so they are read
+     * without it, and a cold chunk fetch does not hold up appends and high watermark updates.
+     */
+    private ReadResult read(long startOffset, long maxCount, long maxOffset, FetchFilter filter,
+                            HiddenRecords hidden) throws IOException {
+        if (startOffset < getLogStartOffset()) {
+            throw new IllegalArgumentException("startOffset " + startOffset + " is before log start offset " + getLogStartOffset());
+        }
+
+        List<Message> messages = new ArrayList<>();
+        ScanBudget budget = new ScanBudget(config.fetchMaxScanBytes());
+        long offset = startOffset;
+        while (messages.size() < maxCount && offset < maxOffset) {
+            ReadResult result = null;
+            long segmentEnd;
+            HiddenRecords remoteHidden = null;
+            synchronized (this) {
+                Map.Entry<Long, LogSegment> entry = segments.floorEntry(offset);
+                if (entry != null) {
+                    LogSegment segment = entry.getValue();
+                    result = segment.readFrom(offset, maxCount - messages.size(), maxOffset, filter, hidden, budget);
+                    segmentEnd = segment.getNextOffset();
+                } else if (tieredStorage != null && tieredStorage.contains(offset)) {
+                    segmentEnd = tieredStorage.segmentEnd(offset);
+                    // the index keeps changing under appends, so the remote read gets its own copy
+                    remoteHidden = hidden.detach(offset, segmentEnd);
+                } else {
+                    break;
+                }
+            }
+            if (result == null) {
+                result = tieredStorage.readFrom(offset, maxCount - messages.size(), maxOffset, filter, remoteHidden, budget);
+            }
+
+            messages.addAll(result.messages());
+            offset = result.nextOffset();
+            if (result.corruption().isPresent()) {
+                return new ReadResult(messages, result.corruption(), offset);
+            }
+            if (offset < segmentEnd || offset >= getLogEndOffset() || budget.isExhausted()) {
+                break;
+            }
+        }
+
+        return new ReadResult(messages, offset);
+    }
+
+    /**
+     * The first offset still held in a local segment; offsets before it are only in remote storage.
+     */
+    public long getLocalLogStartOffset() {
+        return segments.firstKey();
+    }
+
+    public long getLogStartOffset() {
+        long localStart = segments.firstKey();
+        return tieredStorage != null ? Math.min(localStart, tieredStorage.getLogStartOffset()) : localStart;
+    }
+
+    /**
+     * Segments that are no longer appended to and are fully on disk, oldest first.
+     */
+    synchronized List<LogSegment> closedSegments() {
+        return new ArrayList<>(segments.headMap(recoveryPoint.segmentBaseOffset()).values());
+    }
+
+    RecoveryPoint getRecoveryPoint() {
+        return recoveryPoint;
+    }
+
+    // false once a truncation has removed the segment or made it the active one again
+    synchronized boolean isClosedSegment(LogSegment segment) {
+        return segments.get(segment.getBaseOffset()) == segment && segment != activeSegment;
+    }
+
+    /**
+     * Switches a closed segment over to its uploaded copy {@code metadata} and deletes the local
+     * copy. Returns false instead if a truncation removed or shortened the segment while it was
+     * uploaded, so the copy is stale. Checked under the lock, so a truncation either happens
+     * before the switch and is seen here, or after it and is refused for the offloaded offsets.
+     */
+    synchronized boolean dropLocalSegment(LogSegment segment, RemoteSegmentMetadata metadata) throws IOException {
+        if (!isClosedSegment(segment) || segment.getNextOffset() != metadata.nextOffset() || segment.getSizeInBytes() != metadata.logSize()) {
+            return false;
+        }
+        tieredStorage.register(metadata);
+        segments.remove(segment.getBaseOffset());
+        segment.delete();
+        return true;
+    }
+
+    TieredStorage getTieredStorage() {
+        return tieredStorage;
+    }
+
+    public synchronized long getLogEndOffset() {
+        return activeSegment.getNextOffset();
+    }
+
+    public long getHighWatermark() {
+        return highWatermark;
+    }
+
+    /**
+     * The offset below which no transaction is still open: the high watermark, or the first
+     * offset of the oldest open transaction if that is lower. Read-committed consumers stop here.
+     */
+    public synchronized long getLastStableOffset() {
+        return Math.min(highWatermark, transactions.firstUnstableOffset());
+    }
+
+    /**
+     * Moves the high watermark forward; it never moves backwards and never passes the log end offset.
+     */
+    public synchronized void updateHighWatermark(long offset) {
+        long bounded = Math.min(offset, getLogEndOffset());
+        if (bounded > highWatermark) {
+            highWatermark = bounded;
+        }
+    }
+
+    public Path getPartitionDirectory() {
+        return partitionDirectory;
+    }
+
+    /**
+     * Flushes the log, so reopening it needs no recovery scan, and closes it.
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        // the flush runs on the flusher thread and needs the lock, so it must not be held here
+        flush();
+
+        synchronized (this) {
+            long offset = activeSegment.getNextOffset();
+            writeSnapshots(offset, transactions.snapshot(offset), producerState.snapshot(offset));
+
+            PreparedSegment unused = takePreparedSegment(true);
+            if (unused != null) {
+                unused.discard();
+            }
+            segmentPreparer.shutdown();
+            flusher.shutdownNow();
+            if (tieredStorage != null) {
+                tieredStorage.close();
+            }
+            for (LogSegment segment : segments.values()) {
+                segment.close();
+            }
+        }
+    }
 }
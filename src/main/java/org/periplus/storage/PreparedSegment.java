@@ -0,0 +1,67 @@
+package org.periplus.storage;
+
+import org.periplus.config.BrokerConfig;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * The files of a segment that does not have a base offset yet. They are created and preallocated
+ * off the append path, so rolling to a new segment only has to rename the pending directory.
+ */
+class PreparedSegment {
+    static final String PENDING_DIRECTORY = "segment-pending";
+
+    private final Path directory;
+    private final LogFile logFile;
+    private final OffsetIndex offsetIndex;
+
+    private PreparedSegment(Path directory, LogFile logFile, OffsetIndex offsetIndex) {
+        this.directory = directory;
+        this.logFile = logFile;
+        this.offsetIndex = offsetIndex;
+    }
+
+    static PreparedSegment prepare(Path partitionDir, BrokerConfig config) throws IOException {
+        Path directory = partitionDir.resolve(PENDING_DIRECTORY);
+        // a pending directory left behind by a crash never received any appends
+        deleteDirectory(directory);
+        Files.createDirectories(directory);
+
+        long preallocateBytes = config.preallocate() ? config.segmentSizeBytes() : 0L;
+        LogFile logFile = new LogFile(directory.resolve("log"), preallocateBytes);
+        OffsetIndex offsetIndex = new OffsetIndex(directory.resolve("index"), config.maxIndexEntries());
+        return new PreparedSegment(directory, logFile, offsetIndex);
+    }
+
+    void discard() throws IOException {
+        offsetIndex.close();
+        logFile.close();
+        deleteDirectory(directory);
+    }
+
+    private static void deleteDirectory(Path directory) throws IOException {
+        if (!Files.exists(directory)) {
+            return;
+        }
+        try (var children = Files.list(directory)) {
+            for (Path child : (Iterable<Path>) children::iterator) {
+                Files.delete(child);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    Path directory() {
+        return directory;
+    }
+
+    LogFile logFile() {
+        return logFile;
+    }
+
+    OffsetIndex offsetIndex() {
+        return offsetIndex;
+    }
+}
@@ -0,0 +1,227 @@
+package org.periplus.storage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Remembers the last {@code producer.sequence.window} sequence numbers each producer appended to a
+ * partition, so a retried append can be answered with the offset it was originally written at
+ * instead of being written twice.
+ *
+ * <p>Producers that have not appended for {@code producer.expiry.ms} are dropped by
+ * {@link #removeExpired}, and beyond {@code producer.max.count} the least recently active producer
+ * is dropped on every new one, so the table stays bounded however many producer ids come and go.
+ */
+public class ProducerStateManager {
+    private static final int SNAPSHOT_VERSION = 1;
+
+    // in access order, so the eldest entry is the producer that was active least recently
+    private final LinkedHashMap<Long, ProducerEntry> producers;
+    private final int windowSize;
+
+    public ProducerStateManager(int windowSize, int maxProducers) {
+        this.windowSize = windowSize;
+        this.producers = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, ProducerEntry> eldest) {
+                return size() > maxProducers;
+            }
+        };
+    }
+
+    /**
+     * Returns the original entry if {@code message} repeats a sequence already appended by its
+     * producer, or empty if it is the next expected sequence.
+     *
+     * <p>A producer this table does not know may start at any sequence: it may be one whose
+     * state expired or was evicted and that carries on where it left off. Retries of appends
+     * made before that are no longer recognized as duplicates.
+     *
+     * @throws OutOfOrderSequenceException if the sequence skips ahead or is too old to verify
+     */
+    public Optional<OffsetEntry> checkSequence(Message message) {
+        if (!message.hasProducerId() || message.isControl()) {
+            return Optional.empty();
+        }
+
+        ProducerEntry producer = producers.get(message.getProducerId());
+        if (producer == null) {
+            return Optional.empty();
+        }
+
+        int sequence = message.getSequence();
+        if (sequence == producer.lastSequence + 1) {
+            return Optional.empty();
+        }
+
+        OffsetEntry duplicate = producer.find(sequence);
+        if (duplicate != null) {
+            return Optional.of(duplicate);
+        }
+        throw new OutOfOrderSequenceException("producer " + message.getProducerId() + " sent sequence " + sequence
+                + " but the last appended sequence was " + producer.lastSequence);
+    }
+
+    /**
+     * Records the sequence of an appended message. Control records are written by the transaction
+     * coordinator on the producer's behalf and carry no sequence, so they are ignored.
+     */
+    public void update(Message message, OffsetEntry entry) {
+        if (!message.hasProducerId() || message.isControl()) {
+            return;
+        }
+        ProducerEntry producer = producers.computeIfAbsent(message.getProducerId(), id -> new ProducerEntry(windowSize));
+        producer.record(message.getSequence(), entry);
+        producer.lastAppendMs = System.currentTimeMillis();
+    }
+
+    /**
+     * Drops the producers whose last append was before {@code cutoffMs}. Append times are the
+     * broker's, not the records' timestamps, which producers set; replayed appends count as made
+     * when they are replayed.
+     */
+    public void removeExpired(long cutoffMs) {
+        producers.values().removeIf(producer -> producer.lastAppendMs < cutoffMs);
+    }
+
+    /**
+     * Writes the table to {@code file} via a temporary file and an atomic rename, so a crash
+     * leaves either the previous snapshot or the new one.
+     */
+    public void writeSnapshot(Path file, long snapshotOffset) throws IOException {
+        SnapshotFiles.write(file, snapshot(snapshotOffset));
+    }
+
+    /**
+     * The table as of {@code snapshotOffset}, serialized in memory so it can be written to disk
+     * later without holding whatever lock guards this table.
+     */
+    public ByteBuffer snapshot(long snapshotOffset) {
+        int entryBytes = 4 + 8 + windowSize * (4 + 8 + 8);
+        var buffer = ByteBuffer.allocate(20 + producers.size() * (8 + 4 + entryBytes));
+        buffer.putInt(SNAPSHOT_VERSION);
+        buffer.putInt(windowSize);
+        buffer.putLong(snapshotOffset);
+        buffer.putInt(producers.size());
+        for (Map.Entry<Long, ProducerEntry> producer : producers.entrySet()) {
+            buffer.putLong(producer.getKey());
+            producer.getValue().writeTo(buffer);
+        }
+        return buffer.flip();
+    }
+
+    /**
+     * Replaces the table with the contents of {@code file} and returns the offset the snapshot
+     * was taken at; messages from that offset on must be replayed through {@link #update}.
+     */
+    public long loadSnapshot(Path file) throws IOException {
+        producers.clear();
+        try (var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            var buffer = ByteBuffer.allocate((int) channel.size());
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                // keep reading until the whole snapshot is in memory
+            }
+            buffer.flip();
+
+            int version = buffer.getInt();
+            if (version != SNAPSHOT_VERSION) {
+                throw new IOException("unsupported producer snapshot version " + version + " in " + file);
+            }
+            int snapshotWindowSize = buffer.getInt();
+            long snapshotOffset = buffer.getLong();
+            int producerCount = buffer.getInt();
+            for (int i = 0; i < producerCount; i++) {
+                long producerId = buffer.getLong();
+                producers.put(producerId, ProducerEntry.readFrom(buffer, snapshotWindowSize, windowSize));
+            }
+            return snapshotOffset;
+        }
+    }
+
+    public void clear() {
+        producers.clear();
+    }
+
+    public int producerCount() {
+        return producers.size();
+    }
+
+    /**
+     * Ring buffer of the last appended sequences, indexed by {@code sequence % windowSize} so both
+     * recording and duplicate lookups are O(1).
+     */
+    private static final class ProducerEntry {
+        private final int[] sequences;
+        private final long[] offsets;
+        private final long[] positions;
+        private int lastSequence = Message.NO_SEQUENCE;
+        private long lastAppendMs;
+
+        private ProducerEntry(int windowSize) {
+            this.sequences = new int[windowSize];
+            this.offsets = new long[windowSize];
+            this.positions = new long[windowSize];
+            Arrays.fill(sequences, Message.NO_SEQUENCE);
+        }
+
+        private void record(int sequence, OffsetEntry entry) {
+            int slot = slot(sequence);
+            sequences[slot] = sequence;
+            offsets[slot] = entry.logicalOffset();
+            positions[slot] = entry.filePosition();
+            lastSequence = sequence;
+        }
+
+        private OffsetEntry find(int sequence) {
+            if (sequence < 0) {
+                return null;
+            }
+            int slot = slot(sequence);
+            return sequences[slot] == sequence ? new OffsetEntry(offsets[slot], positions[slot]) : null;
+        }
+
+        private int slot(int sequence) {
+            return Math.floorMod(sequence, sequences.length);
+        }
+
+        private void writeTo(ByteBuffer buffer) {
+            buffer.putInt(lastSequence);
+            buffer.putLong(lastAppendMs);
+            for (int i = 0; i < sequences.length; i++) {
+                buffer.putInt(sequences[i]);
+                buffer.putLong(offsets[i]);
+                buffer.putLong(positions[i]);
+            }
+        }
+
+        // the window may have been resized since the snapshot was taken, so re-record oldest first
+        private static ProducerEntry readFrom(ByteBuffer buffer, int snapshotWindowSize, int windowSize) {
+            int lastSequence = buffer.getInt();
+            long lastAppendMs = buffer.getLong();
+            int[] sequences = new int[snapshotWindowSize];
+            OffsetEntry[] entries = new OffsetEntry[snapshotWindowSize];
+            for (int i = 0; i < snapshotWindowSize; i++) {
+                sequences[i] = buffer.getInt();
+                entries[i] = new OffsetEntry(buffer.getLong(), buffer.getLong());
+            }
+
+            ProducerEntry entry = new ProducerEntry(windowSize);
+            for (int sequence = lastSequence - snapshotWindowSize + 1; sequence <= lastSequence; sequence++) {
+                int slot = Math.floorMod(sequence, snapshotWindowSize);
+                if (sequence >= 0 && sequences[slot] == sequence) {
+                    entry.record(sequence, entries[slot]);
+                }
+            }
+            entry.lastSequence = lastSequence;
+            entry.lastAppendMs = lastAppendMs;
+            return entry;
+        }
+    }
+}
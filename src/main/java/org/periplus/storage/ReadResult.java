@@ -3,9 +3,12 @@ package org.periplus.storage;
 import java.util.List;
 import java.util.Optional;
 
-public record ReadResult(List<Message> messages, Optional<CorruptionInfo> corruption) {
-    public ReadResult(List<Message> messages) {
-        this(messages, Optional.empty());
+/**
+ * Messages returned by a read. {@code nextOffset} is the offset to continue reading from, which
+ * can be past the last returned message when a filter skipped records.
+ */
+public record ReadResult(List<Message> messages, Optional<CorruptionInfo> corruption, long nextOffset) {
+    public ReadResult(List<Message> messages, long nextOffset) {
+        this(messages, Optional.empty(), nextOffset);
     }
 }
-
@@ -0,0 +1,133 @@
+package org.periplus.storage;
+
+import org.periplus.memory.BufferPool;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Walks the length-prefixed records of a {@link RecordSource} through a pooled read-ahead buffer,
+ * so a scan costs one read per buffer-full of records instead of two per record.
+ */
+final class RecordCursor implements AutoCloseable {
+    private static final int READ_AHEAD_BYTES = 64 * 1024;
+
+    private final RecordSource source;
+    // file position no record may extend past
+    private final long limit;
+    private final BufferPool pool = BufferPool.shared();
+    private ByteBuffer buffer;
+    // file position of buffer index 0; the buffer holds valid data up to its limit
+    private long bufferStart;
+    private long position;
+    private int frameStart;
+    private int frameLength;
+
+    /**
+     * A cursor that treats a record extending past {@code limit}, normally the size of the data,
+     * as cut short, so a corrupt length cannot make it buffer more than the data holds.
+     */
+    RecordCursor(RecordSource source, long position, long limit) {
+        this(source, position, limit, READ_AHEAD_BYTES);
+    }
+
+    /**
+     * Like {@link #RecordCursor(RecordSource, long, long)} but reads ahead {@code readAheadBytes}
+     * at a time.
+     */
+    RecordCursor(RecordSource source, long position, long limit, int readAheadBytes) {
+        this.source = source;
+        this.limit = limit;
+        this.position = position;
+        this.bufferStart = position;
+        this.buffer = pool.acquire(readAheadBytes);
+        buffer.limit(0);
+    }
+
+    /**
+     * Moves to the next complete record. Returns false at the end of the data, at a zero length
+     * (the unwritten tail of a preallocated file) or at a record cut short.
+     */
+    boolean next() throws IOException {
+        if (!fill(Integer.BYTES)) {
+            return false;
+        }
+        int length = buffer.getInt(relative());
+        // compared as longs, so a length near Integer.MAX_VALUE cannot overflow past the check
+        if (length <= 0 || length > limit - position - Integer.BYTES || !fill(Integer.BYTES + length)) {
+            return false;
+        }
+        frameStart = relative();
+        frameLength = Integer.BYTES + length;
+        position += frameLength;
+        return true;
+    }
+
+    /**
+     * The buffer holding the current record; valid until the next call to {@link #next}.
+     */
+    ByteBuffer buffer() {
+        return buffer;
+    }
+
+    /**
+     * Index of the current record's length prefix in {@link #buffer()}.
+     */
+    int frameStart() {
+        return frameStart;
+    }
+
+    /**
+     * Length of the current record, length prefix included.
+     */
+    int frameLength() {
+        return frameLength;
+    }
+
+    byte[] frameBytes() {
+        byte[] bytes = new byte[frameLength];
+        buffer.get(frameStart, bytes);
+        return bytes;
+    }
+
+    /**
+     * File position just after the current record, where the next one starts.
+     */
+    long position() {
+        return position;
+    }
+
+    private int relative() {
+        return (int) (position - bufferStart);
+    }
+
+    // makes sure count bytes from the current position are buffered, reading more if needed
+    private boolean fill(int count) throws IOException {
+        if (relative() + count <= buffer.limit()) {
+            return true;
+        }
+
+        // move the unread bytes to the front, into a larger buffer if the record needs one
+        int remaining = buffer.limit() - relative();
+        if (count > buffer.capacity()) {
+            ByteBuffer larger = pool.acquire(count).clear();
+            larger.put(0, buffer, relative(), remaining).position(remaining);
+            pool.release(buffer);
+            buffer = larger;
+        } else {
+            buffer.position(relative()).compact();
+        }
+        bufferStart = position;
+        int read = source.read(bufferStart + remaining, buffer);
+        buffer.limit(remaining + read).position(0);
+        return count <= remaining + read;
+    }
+
+    @Override
+    public void close() {
+        if (buffer != null) {
+            pool.release(buffer);
+            buffer = null;
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package org.periplus.storage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Random access to the bytes of a segment's log, wherever they are stored.
+ */
+@FunctionalInterface
+interface RecordSource {
+    /**
+     * Reads into {@code destination} from {@code position} until it is full or the data ends, and
+     * returns the number of bytes read.
+     */
+    int read(long position, ByteBuffer destination) throws IOException;
+}
@@ -0,0 +1,72 @@
+package org.periplus.storage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Optional;
+
+/**
+ * How far a partition is known to be on disk: every message before {@code offset}, which sits at
+ * {@code position} of the segment starting at {@code segmentBaseOffset}, has been flushed together
+ * with its index entries. Recovery only has to scan the log from here.
+ */
+record RecoveryPoint(long segmentBaseOffset, long offset, long position) {
+    private static final int CHECKPOINT_VERSION = 1;
+    private static final int CHECKPOINT_BYTES = 4 + 8 + 8 + 8;
+
+    /**
+     * Where a segment should be recovered from: segments before the checkpointed one are trusted
+     * as they are ({@code null}), the checkpointed one is scanned from the checkpoint and later ones
+     * from their start.
+     */
+    OffsetEntry recoverFrom(long baseOffset) {
+        if (baseOffset < segmentBaseOffset) {
+            return null;
+        }
+        return baseOffset == segmentBaseOffset ? new OffsetEntry(offset, position) : new OffsetEntry(baseOffset, 0L);
+    }
+
+    /**
+     * Writes the checkpoint via a temporary file and an atomic rename, so a crash leaves either
+     * the previous checkpoint or this one.
+     */
+    void write(Path file) throws IOException {
+        var buffer = ByteBuffer.allocate(CHECKPOINT_BYTES);
+        buffer.putInt(CHECKPOINT_VERSION);
+        buffer.putLong(segmentBaseOffset);
+        buffer.putLong(offset);
+        buffer.putLong(position);
+        buffer.flip();
+
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try (var channel = FileChannel.open(temporary,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+        Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    static Optional<RecoveryPoint> read(Path file) throws IOException {
+        if (!Files.exists(file)) {
+            return Optional.empty();
+        }
+        var buffer = ByteBuffer.wrap(Files.readAllBytes(file));
+        if (buffer.remaining() < CHECKPOINT_BYTES) {
+            throw new IOException("truncated recovery point checkpoint " + file);
+        }
+        int version = buffer.getInt();
+        if (version != CHECKPOINT_VERSION) {
+            throw new IOException("unsupported recovery point checkpoint version " + version + " in " + file);
+        }
+        return Optional.of(new RecoveryPoint(buffer.getLong(), buffer.getLong(), buffer.getLong()));
+    }
+}
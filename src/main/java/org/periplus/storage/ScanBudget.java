@@ -0,0 +1,26 @@
+package org.periplus.storage;
+
+/**
+ * Bytes one fetch may scan across all the segments it reads. A filter that matches few records
+ * would otherwise walk the log up to the max offset in a single call; once the budget is spent
+ * the fetch returns what it has and the offset to resume from.
+ */
+final class ScanBudget {
+    private long remainingBytes;
+
+    ScanBudget(long bytes) {
+        this.remainingBytes = bytes;
+    }
+
+    static ScanBudget unlimited() {
+        return new ScanBudget(Long.MAX_VALUE);
+    }
+
+    void consume(long bytes) {
+        remainingBytes -= bytes;
+    }
+
+    boolean isExhausted() {
+        return remainingBytes <= 0;
+    }
+}
@@ -0,0 +1,59 @@
+package org.periplus.storage;
+
+import java.nio.file.Path;
+import java.util.Optional;
+
+/**
+ * What {@link SegmentVerifier} found in one segment directory.
+ *
+ * @param records          complete, decodable records from the start of the log
+ * @param dataBytes        bytes those records take up; the log is unreadable or empty past here
+ * @param fileBytes        size of the log file, preallocated space included
+ * @param minTimestamp     smallest record timestamp, or {@link Long#MAX_VALUE} without records
+ * @param maxTimestamp     largest record timestamp, or {@link Long#MIN_VALUE} without records
+ * @param sizeHistogram    record counts by size: bucket {@code i} holds sizes in {@code [2^i, 2^(i+1))}
+ * @param indexEntries     complete entries in the index file
+ * @param indexMismatches  index entries disagreeing with the log, entries past the data included
+ * @param indexRebuilt     whether the index file was rewritten from the log
+ * @param corruption       where and why reading stopped before the end of the data, if it did
+ */
+public record SegmentReport(
+        Path segmentDirectory,
+        long baseOffset,
+        long records,
+        long controlRecords,
+        long transactionalRecords,
+        long dataBytes,
+        long fileBytes,
+        long minTimestamp,
+        long maxTimestamp,
+        long[] sizeHistogram,
+        IndexStatus indexStatus,
+        long indexEntries,
+        long indexMismatches,
+        boolean indexRebuilt,
+        Optional<CorruptionInfo> corruption) {
+
+    public enum IndexStatus {
+        CONSISTENT,
+        /**
+         * Every entry matches but the last records have none yet, as after a crash or while the
+         * segment is being appended to.
+         */
+        BEHIND,
+        INCONSISTENT,
+        MISSING
+    }
+
+    public long nextOffset() {
+        return baseOffset + records;
+    }
+
+    /**
+     * True if the log reads cleanly to its end and the index, as it is now, agrees with it.
+     */
+    public boolean isHealthy() {
+        return corruption.isEmpty()
+                && (indexRebuilt || indexStatus == IndexStatus.CONSISTENT || indexStatus == IndexStatus.BEHIND);
+    }
+}
@@ -0,0 +1,301 @@
+package org.periplus.storage;
+
+import org.periplus.memory.BufferPool;
+import org.periplus.network.serialization.BinaryMessageSerializer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Optional;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Checks a segment directory without opening it as a {@link LogSegment}: every record of the log
+ * is decoded and compared against the offset index, and the index can be rebuilt from the log.
+ * Log and index are streamed through pooled buffers side by side, so memory use does not depend on
+ * the segment size. Files are only read unless an index rebuild is asked for, so a segment of a
+ * running broker can be verified; rebuilding must wait until the broker has stopped.
+ */
+public final class SegmentVerifier {
+    private static final Pattern SEGMENT_DIRECTORY = Pattern.compile("segment-(\\d{16})");
+    private static final BinaryMessageSerializer SERIALIZER = new BinaryMessageSerializer();
+    private static final int INDEX_ENTRY_BYTES = 16;
+    // sequential scans read far ahead; the largest pooled buffer keeps the number of reads down
+    private static final int READ_AHEAD_BYTES = 1024 * 1024;
+    private static final int INDEX_BUFFER_BYTES = 64 * 1024;
+
+    private SegmentVerifier() {
+    }
+
+    public static boolean isSegmentDirectory(Path path) {
+        return Files.isDirectory(path) && SEGMENT_DIRECTORY.matcher(path.getFileName().toString()).matches();
+    }
+
+    /**
+     * Verifies the segment in {@code segmentDirectory}. With {@code rebuildIndex} a missing,
+     * incomplete or inconsistent index is replaced by one written from the records that could be
+     * read.
+     */
+    public static SegmentReport verify(Path segmentDirectory, boolean rebuildIndex) throws IOException {
+        Matcher matcher = SEGMENT_DIRECTORY.matcher(segmentDirectory.getFileName().toString());
+        if (!matcher.matches()) {
+            throw new IllegalArgumentException(segmentDirectory + " is not a segment directory");
+        }
+        long baseOffset = Long.parseLong(matcher.group(1));
+        Path indexFile = segmentDirectory.resolve("index");
+        Path rebuiltIndexFile = segmentDirectory.resolve("index.rebuild");
+
+        // not a resource: it has to be finished before the rebuilt file can replace the index
+        IndexWriter rebuilt = null;
+        try (FileChannel log = FileChannel.open(segmentDirectory.resolve("log"), StandardOpenOption.READ);
+             IndexStream index = IndexStream.open(indexFile)) {
+            if (rebuildIndex) {
+                rebuilt = new IndexWriter(rebuiltIndexFile);
+            }
+            long fileBytes = log.size();
+            RecordSource source = (position, destination) -> readFully(log, position, destination);
+            Scan scan = new Scan(baseOffset);
+
+            try (RecordCursor cursor = new RecordCursor(source, 0L, fileBytes, READ_AHEAD_BYTES)) {
+                while (cursor.next()) {
+                    long position = cursor.position() - cursor.frameLength();
+                    Message message;
+                    try {
+                        message = SERIALIZER.deserialize(cursor.frameBytes());
+                    } catch (RuntimeException e) {
+                        scan.corruption = new CorruptionInfo(scan.nextOffset(), position, "undecodable record: " + e.getMessage());
+                        break;
+                    }
+                    scan.record(message, cursor.frameLength());
+                    index.check(scan.nextOffset() - 1, position);
+                    if (rebuilt != null) {
+                        rebuilt.add(scan.nextOffset() - 1, position);
+                    }
+                    scan.dataBytes = cursor.position();
+                }
+            }
+            if (scan.corruption == null) {
+                scan.corruption = checkTail(log, scan.dataBytes, fileBytes, scan.nextOffset());
+            }
+            index.finish();
+
+            SegmentReport.IndexStatus status = index.status(scan.records);
+            boolean replace = rebuilt != null && status != SegmentReport.IndexStatus.CONSISTENT;
+            if (rebuilt != null) {
+                rebuilt.close();
+                if (replace) {
+                    Files.move(rebuiltIndexFile, indexFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+
+            return new SegmentReport(segmentDirectory, baseOffset, scan.records, scan.controlRecords,
+                    scan.transactionalRecords, scan.dataBytes, fileBytes, scan.minTimestamp, scan.maxTimestamp,
+                    scan.sizeHistogram, status, index.entries, index.mismatches, replace,
+                    Optional.ofNullable(scan.corruption));
+        } finally {
+            if (rebuilt != null) {
+                rebuilt.close();
+                Files.deleteIfExists(rebuiltIndexFile);
+            }
+        }
+    }
+
+    /**
+     * Data past the last record is fine if it is the zero-filled tail of a preallocated file;
+     * anything else is a record that is cut short or has a corrupt length.
+     */
+    private static CorruptionInfo checkTail(FileChannel log, long dataBytes, long fileBytes, long nextOffset) throws IOException {
+        if (dataBytes >= fileBytes) {
+            return null;
+        }
+        ByteBuffer length = ByteBuffer.allocate(Integer.BYTES);
+        readFully(log, dataBytes, length);
+        boolean zeroFilled = true;
+        for (int i = 0; i < length.position(); i++) {
+            zeroFilled &= length.get(i) == 0;
+        }
+        return zeroFilled ? null : new CorruptionInfo(nextOffset, dataBytes, "record cut short or corrupt length");
+    }
+
+    private static int readFully(FileChannel channel, long position, ByteBuffer destination) throws IOException {
+        int total = 0;
+        while (destination.hasRemaining()) {
+            int read = channel.read(destination, position + total);
+            if (read < 0) {
+                break;
+            }
+            total += read;
+        }
+        return total;
+    }
+
+    private static final class Scan {
+        private final long baseOffset;
+        private final long[] sizeHistogram = new long[Integer.SIZE];
+        private long records;
+        private long controlRecords;
+        private long transactionalRecords;
+        private long dataBytes;
+        private long minTimestamp = Long.MAX_VALUE;
+        private long maxTimestamp = Long.MIN_VALUE;
+        private CorruptionInfo corruption;
+
+        private Scan(long baseOffset) {
+            this.baseOffset = baseOffset;
+        }
+
+        private void record(Message message, int frameLength) {
+            records++;
+            if (message.isControl()) {
+                controlRecords++;
+            } else if (message.isTransactional()) {
+                transactionalRecords++;
+            }
+            minTimestamp = Math.min(minTimestamp, message.getTimestamp());
+            maxTimestamp = Math.max(maxTimestamp, message.getTimestamp());
+            sizeHistogram[31 - Integer.numberOfLeadingZeros(frameLength)]++;
+        }
+
+        private long nextOffset() {
+            return baseOffset + records;
+        }
+    }
+
+    /**
+     * Reads the index file entry by entry alongside the log and counts entries that disagree with
+     * it. A torn trailing entry is ignored, as {@link OffsetIndex} does on load.
+     */
+    private static final class IndexStream implements AutoCloseable {
+        private final FileChannel channel;
+        private final BufferPool pool = BufferPool.shared();
+        private ByteBuffer buffer;
+        private long filePosition;
+        private long entries;
+        private long mismatches;
+        private boolean exhausted;
+
+        private IndexStream(FileChannel channel) {
+            this.channel = channel;
+            if (channel != null) {
+                this.buffer = pool.acquire(INDEX_BUFFER_BYTES);
+                buffer.limit(0);
+            }
+            this.exhausted = channel == null;
+        }
+
+        static IndexStream open(Path file) throws IOException {
+            return new IndexStream(Files.exists(file) ? FileChannel.open(file, StandardOpenOption.READ) : null);
+        }
+
+        void check(long offset, long position) throws IOException {
+            if (!hasEntry()) {
+                return;
+            }
+            entries++;
+            long indexedOffset = buffer.getLong();
+            long indexedPosition = buffer.getLong();
+            if (indexedOffset != offset || indexedPosition != position) {
+                mismatches++;
+            }
+        }
+
+        // counts the entries left over once the records are done; they point past the data
+        void finish() throws IOException {
+            while (hasEntry()) {
+                entries++;
+                mismatches++;
+                buffer.position(buffer.position() + INDEX_ENTRY_BYTES);
+            }
+        }
+
+        SegmentReport.IndexStatus status(long records) {
+            if (channel == null) {
+                return SegmentReport.IndexStatus.MISSING;
+            }
+            if (mismatches > 0) {
+                return SegmentReport.IndexStatus.INCONSISTENT;
+            }
+            return entries < records ? SegmentReport.IndexStatus.BEHIND : SegmentReport.IndexStatus.CONSISTENT;
+        }
+
+        private boolean hasEntry() throws IOException {
+            if (exhausted) {
+                return false;
+            }
+            if (buffer.remaining() < INDEX_ENTRY_BYTES) {
+                buffer.compact();
+                int read = readFully(channel, filePosition, buffer);
+                filePosition += read;
+                buffer.flip();
+                if (buffer.remaining() < INDEX_ENTRY_BYTES) {
+                    exhausted = true;
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (channel != null) {
+                pool.release(buffer);
+                channel.close();
+            }
+        }
+    }
+
+    /**
+     * Writes index entries to a new file through a pooled buffer.
+     */
+    private static final class IndexWriter implements AutoCloseable {
+        private final FileChannel channel;
+        private final BufferPool pool = BufferPool.shared();
+        private ByteBuffer buffer;
+
+        private IndexWriter(Path file) throws IOException {
+            this.channel = FileChannel.open(file,
+                    StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+            this.buffer = pool.acquire(INDEX_BUFFER_BYTES).clear();
+        }
+
+        void add(long offset, long position) throws IOException {
+            if (buffer.remaining() < INDEX_ENTRY_BYTES) {
+                writeBuffer();
+            }
+            buffer.putLong(offset).putLong(position);
+        }
+
+        private void writeBuffer() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        /**
+         * Writes out what is buffered and forces the file to disk. Safe to call more than once.
+         */
+        @Override
+        public void close() throws IOException {
+            if (buffer == null) {
+                return;
+            }
+            try {
+                writeBuffer();
+                channel.force(true);
+            } finally {
+                pool.release(buffer);
+                buffer = null;
+                channel.close();
+            }
+        }
+    }
+}
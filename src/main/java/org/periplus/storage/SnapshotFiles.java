@@ -0,0 +1,33 @@
+package org.periplus.storage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes snapshot files via a temporary file and an atomic rename, so a crash leaves either the
+ * previous snapshot or the new one.
+ */
+final class SnapshotFiles {
+    private SnapshotFiles() {
+    }
+
+    static void write(Path file, ByteBuffer contents) throws IOException {
+        ByteBuffer buffer = contents.duplicate();
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try (var channel = FileChannel.open(temporary,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+        Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+}
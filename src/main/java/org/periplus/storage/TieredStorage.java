@@ -0,0 +1,132 @@
+package org.periplus.storage;
+
+import org.periplus.config.BrokerConfig;
+import org.periplus.storage.remote.RemoteFile;
+import org.periplus.storage.remote.RemoteSegmentMetadata;
+import org.periplus.storage.remote.RemoteStorage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Moves a partition's closed segments to a {@link RemoteStorage} and serves reads of offsets that
+ * are no longer on local disk. Uploads run periodically in the background; once a segment is
+ * uploaded its local copy is deleted.
+ */
+class TieredStorage implements AutoCloseable {
+    private static final Logger log = LoggerFactory.getLogger(TieredStorage.class);
+    private static final int INDEX_ENTRY_BYTES = 16;
+
+    private final PartitionLog partitionLog;
+    private final RemoteStorage remote;
+    private final String partition;
+    private final ConcurrentNavigableMap<Long, RemoteSegmentMetadata> remoteSegments = new ConcurrentSkipListMap<>();
+    private final ScheduledExecutorService executor;
+    private final ChunkCache cache;
+
+    TieredStorage(PartitionLog partitionLog, RemoteStorage remote, BrokerConfig config) throws IOException {
+        this.partitionLog = partitionLog;
+        this.remote = remote;
+        this.partition = partitionLog.getPartitionDirectory().getFileName().toString();
+        for (RemoteSegmentMetadata segment : remote.listSegments(partition)) {
+            remoteSegments.put(segment.baseOffset(), segment);
+        }
+
+        this.executor = Executors.newScheduledThreadPool(2, runnable -> {
+            Thread thread = new Thread(runnable, "tiered-storage-" + partition);
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.cache = new ChunkCache(remote, config.remoteChunkBytes(), config.remoteCacheBytes(),
+                config.remotePrefetchChunks(), executor);
+        executor.scheduleWithFixedDelay(this::uploadInBackground,
+                config.remoteUploadIntervalMs(), config.remoteUploadIntervalMs(), TimeUnit.MILLISECONDS);
+    }
+
+    private void uploadInBackground() {
+        try {
+            uploadClosedSegments();
+        } catch (IOException | RuntimeException e) {
+            log.warn("Failed to offload segments of {}, will retry: {}", partition, e.getMessage());
+        }
+    }
+
+    /**
+     * Uploads every closed, flushed local segment not yet in remote storage and deletes the local
+     * copies. A copy made stale by a truncation during its upload is deleted again.
+     */
+    void uploadClosedSegments() throws IOException {
+        for (LogSegment segment : partitionLog.closedSegments()) {
+            if (!partitionLog.isClosedSegment(segment)) {
+                continue;
+            }
+            var metadata = new RemoteSegmentMetadata(partition, segment.getBaseOffset(),
+                    segment.getNextOffset(), segment.getSizeInBytes());
+            if (!metadata.equals(remoteSegments.get(metadata.baseOffset()))) {
+                remote.uploadSegment(metadata, segment.getLogFilePath(), segment.getIndexFilePath());
+            }
+            if (!partitionLog.dropLocalSegment(segment, metadata)) {
+                remoteSegments.remove(metadata.baseOffset(), metadata);
+                remote.deleteSegment(metadata);
+            }
+        }
+    }
+
+    // called by the partition log under its lock, together with dropping the local copy
+    void register(RemoteSegmentMetadata metadata) {
+        remoteSegments.put(metadata.baseOffset(), metadata);
+    }
+
+    boolean contains(long offset) {
+        Map.Entry<Long, RemoteSegmentMetadata> entry = remoteSegments.floorEntry(offset);
+        return entry != null && entry.getValue().contains(offset);
+    }
+
+    long getLogStartOffset() {
+        return remoteSegments.isEmpty() ? Long.MAX_VALUE : remoteSegments.firstKey();
+    }
+
+    /**
+     * Reads from the remote segment holding {@code startOffset}; stops at the end of that segment
+     * or when {@code budget} is spent.
+     */
+    ReadResult readFrom(long startOffset, long maxCount, long maxOffset, FetchFilter filter, HiddenRecords hidden,
+                        ScanBudget budget) throws IOException {
+        RemoteSegmentMetadata segment = remoteSegments.floorEntry(startOffset).getValue();
+
+        // every record is indexed, so the entry for an offset sits at a fixed position in the index
+        long indexSize = (segment.nextOffset() - segment.baseOffset()) * INDEX_ENTRY_BYTES;
+        byte[] entryBytes = cache.read(segment, RemoteFile.INDEX,
+                (startOffset - segment.baseOffset()) * INDEX_ENTRY_BYTES, INDEX_ENTRY_BYTES, indexSize);
+        ByteBuffer entry = ByteBuffer.wrap(entryBytes);
+        OffsetEntry from = new OffsetEntry(entry.getLong(), entry.getLong());
+        if (from.logicalOffset() != startOffset) {
+            throw new IOException("remote index of segment " + segment.baseOffset() + " has offset "
+                    + from.logicalOffset() + " where " + startOffset + " was expected");
+        }
+
+        RecordSource source = (position, destination) -> cache.read(segment, RemoteFile.LOG, position, destination, segment.logSize());
+        return LogSegment.scan(source, segment.logSize(), from, startOffset, maxCount, Math.min(segment.nextOffset(), maxOffset), filter, hidden, budget);
+    }
+
+    long segmentEnd(long offset) {
+        return remoteSegments.floorEntry(offset).getValue().nextOffset();
+    }
+
+    ChunkCache getCache() {
+        return cache;
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+}
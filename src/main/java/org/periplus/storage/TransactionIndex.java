@@ -0,0 +1,325 @@
+package org.periplus.storage;
+
+import org.periplus.network.serialization.BinaryRecordView;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * What consumers must not see: a bitmap of control records, hidden at any isolation level, and
+ * the ranges of aborted transactions, whose data is hidden when reading committed. Control offsets
+ * are split into fixed-size chunks so a partition without transactions costs nothing, and a lookup
+ * during a fetch is a single bit test.
+ *
+ * <p>An aborted transaction is kept as its producer id, first offset and abort marker offset, so
+ * an abort costs one entry however many records it covers; a fetch hides a transactional record
+ * of that producer between the two offsets.
+ *
+ * <p>Each chunk is stored as its own file in the index directory, and the aborted transactions in
+ * one more file appended to as they happen. Not thread-safe; the owning {@link PartitionLog}
+ * guards it with its lock.
+ */
+final class TransactionIndex {
+    private static final int CHUNK_BITS = 20;
+    private static final int FILE_VERSION = 1;
+    private static final String ABORTED_FILE = "aborted-transactions";
+    private static final int ABORTED_ENTRY_BYTES = 3 * Long.BYTES;
+
+    private final Path directory;
+    private final Map<Long, Chunk> chunks = new HashMap<>();
+    private final Set<Long> dirtyChunks = new HashSet<>();
+    // first offset to abort marker offset, per producer
+    private final Map<Long, NavigableMap<Long, Long>> abortedByProducer = new HashMap<>();
+    private final List<AbortedTransaction> unwrittenAborts = new ArrayList<>();
+    // set when aborts were forgotten, so the file must be rewritten rather than appended to
+    private boolean rewriteAborts;
+
+    private TransactionIndex(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Loads every chunk and aborted transaction written to {@code directory}, creating it if
+     * needed.
+     */
+    static TransactionIndex open(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        TransactionIndex index = new TransactionIndex(directory);
+        try (var files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                String name = file.getFileName().toString();
+                if (name.equals(ABORTED_FILE)) {
+                    index.readAborted(file);
+                } else if (!name.endsWith(".tmp")) {
+                    index.chunks.put(Long.parseLong(name), Chunk.read(file));
+                }
+            }
+        }
+        return index;
+    }
+
+    void markControl(long offset) {
+        Chunk chunk = chunkFor(offset);
+        chunk.control.set(bit(offset));
+    }
+
+    /**
+     * Hides the transactional records {@code producerId} wrote from {@code firstOffset} up to its
+     * abort marker at {@code markerOffset} from read-committed fetches.
+     */
+    void markAborted(long producerId, long firstOffset, long markerOffset) {
+        AbortedTransaction aborted = new AbortedTransaction(producerId, firstOffset, markerOffset);
+        if (add(aborted)) {
+            unwrittenAborts.add(aborted);
+        }
+    }
+
+    /**
+     * Forgets everything from {@code offset} on, e.g. records lost in a crash whose offsets will
+     * be reused. An aborted transaction whose marker is lost is forgotten as a whole.
+     */
+    void truncateFrom(long offset) {
+        for (Map.Entry<Long, Chunk> entry : chunks.entrySet()) {
+            long chunkStart = entry.getKey() << CHUNK_BITS;
+            if (chunkStart + (1L << CHUNK_BITS) > offset) {
+                int from = (int) Math.max(0L, offset - chunkStart);
+                entry.getValue().control.clear(from, 1 << CHUNK_BITS);
+                dirtyChunks.add(entry.getKey());
+            }
+        }
+        for (NavigableMap<Long, Long> aborted : abortedByProducer.values()) {
+            rewriteAborts |= aborted.values().removeIf(markerOffset -> markerOffset >= offset);
+        }
+        abortedByProducer.values().removeIf(Map::isEmpty);
+        unwrittenAborts.removeIf(aborted -> aborted.markerOffset() >= offset);
+    }
+
+    /**
+     * The records a fetch at {@code isolation} skips. The returned predicate remembers the last
+     * chunk it looked at, so it is meant for one scan on one thread.
+     */
+    HiddenRecords hiddenFrom(IsolationLevel isolation) {
+        boolean readCommitted = isolation == IsolationLevel.READ_COMMITTED;
+        if (chunks.isEmpty() && (!readCommitted || abortedByProducer.isEmpty())) {
+            return HiddenRecords.NONE;
+        }
+        return new HiddenRecords() {
+            private long cachedChunk = -1;
+            private BitSet cachedBits;
+
+            @Override
+            public boolean hides(long offset, BinaryRecordView record) {
+                long chunkIndex = offset >>> CHUNK_BITS;
+                if (chunkIndex != cachedChunk) {
+                    Chunk chunk = chunks.get(chunkIndex);
+                    cachedChunk = chunkIndex;
+                    cachedBits = chunk == null ? null : chunk.control;
+                }
+                if (cachedBits != null && cachedBits.get(bit(offset))) {
+                    return true;
+                }
+                return readCommitted && !abortedByProducer.isEmpty() && isAborted(offset, record);
+            }
+
+            @Override
+            public HiddenRecords detach(long fromOffset, long toOffset) {
+                return copy(fromOffset, toOffset).hiddenFrom(isolation);
+            }
+        };
+    }
+
+    // an in-memory copy of what covers the given offsets, for reads done without the log's lock
+    private TransactionIndex copy(long fromOffset, long toOffset) {
+        TransactionIndex copy = new TransactionIndex(null);
+        for (long chunkIndex = fromOffset >>> CHUNK_BITS; chunkIndex <= (toOffset - 1) >>> CHUNK_BITS; chunkIndex++) {
+            Chunk chunk = chunks.get(chunkIndex);
+            if (chunk != null) {
+                copy.chunks.put(chunkIndex, new Chunk((BitSet) chunk.control.clone()));
+            }
+        }
+        for (Map.Entry<Long, NavigableMap<Long, Long>> producer : abortedByProducer.entrySet()) {
+            // a producer's transactions never overlap, so only the last one starting before fromOffset can reach it
+            Long before = producer.getValue().floorKey(fromOffset);
+            NavigableMap<Long, Long> overlapping = producer.getValue()
+                    .subMap(before != null ? before : fromOffset, true, toOffset, false);
+            if (!overlapping.isEmpty()) {
+                copy.abortedByProducer.put(producer.getKey(), new TreeMap<>(overlapping));
+            }
+        }
+        return copy;
+    }
+
+    private boolean isAborted(long offset, BinaryRecordView record) {
+        if (!record.isTransactional()) {
+            return false;
+        }
+        NavigableMap<Long, Long> aborted = abortedByProducer.get(record.producerId());
+        if (aborted == null) {
+            return false;
+        }
+        Map.Entry<Long, Long> transaction = aborted.floorEntry(offset);
+        return transaction != null && offset < transaction.getValue();
+    }
+
+    /**
+     * Encoded copies of what changed since the last call. Taken under the log's lock and written
+     * with {@link #write} afterwards, like the index entries of a flush.
+     */
+    Changes takeChanges() {
+        Map<Long, byte[]> copies = new HashMap<>();
+        for (long chunkIndex : dirtyChunks) {
+            copies.put(chunkIndex, chunks.get(chunkIndex).encode());
+        }
+        dirtyChunks.clear();
+
+        byte[] aborts = null;
+        if (rewriteAborts) {
+            List<AbortedTransaction> all = new ArrayList<>();
+            abortedByProducer.forEach((producerId, aborted) -> aborted.forEach((firstOffset, markerOffset) ->
+                    all.add(new AbortedTransaction(producerId, firstOffset, markerOffset))));
+            aborts = encode(all);
+        } else if (!unwrittenAborts.isEmpty()) {
+            aborts = encode(unwrittenAborts);
+        }
+        Changes changes = new Changes(copies, aborts, rewriteAborts);
+        unwrittenAborts.clear();
+        rewriteAborts = false;
+        return changes;
+    }
+
+    /**
+     * Puts changes back after {@link #write} failed, so the next flush retries them.
+     */
+    void restore(Changes failed) {
+        dirtyChunks.addAll(failed.chunks().keySet());
+        // part of an append may have made it to the file, so the retry writes the whole file
+        if (failed.aborts() != null) {
+            rewriteAborts = true;
+        }
+    }
+
+    /**
+     * Writes each chunk via a temporary file and an atomic rename, so a crash leaves either the
+     * previous or the new version of it, and appends the new aborted transactions. A torn
+     * aborted entry is ignored on open and its transaction recovered from the log.
+     */
+    void write(Changes changes) throws IOException {
+        for (Map.Entry<Long, byte[]> chunk : changes.chunks().entrySet()) {
+            writeAtomically(directory.resolve(String.format("%016d", chunk.getKey())), chunk.getValue());
+        }
+        if (changes.aborts() == null) {
+            return;
+        }
+        Path abortedFile = directory.resolve(ABORTED_FILE);
+        if (changes.rewriteAborts()) {
+            writeAtomically(abortedFile, changes.aborts());
+            return;
+        }
+        try (var channel = FileChannel.open(abortedFile,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND)) {
+            ByteBuffer buffer = ByteBuffer.wrap(changes.aborts());
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+    }
+
+    private static void writeAtomically(Path file, byte[] content) throws IOException {
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try (var channel = FileChannel.open(temporary,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.wrap(content);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+        Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private void readAborted(Path file) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file));
+        while (buffer.remaining() >= ABORTED_ENTRY_BYTES) {
+            add(new AbortedTransaction(buffer.getLong(), buffer.getLong(), buffer.getLong()));
+        }
+    }
+
+    private boolean add(AbortedTransaction aborted) {
+        Long previous = abortedByProducer.computeIfAbsent(aborted.producerId(), producerId -> new TreeMap<>())
+                .put(aborted.firstOffset(), aborted.markerOffset());
+        return previous == null || previous != aborted.markerOffset();
+    }
+
+    private static byte[] encode(List<AbortedTransaction> aborts) {
+        ByteBuffer buffer = ByteBuffer.allocate(aborts.size() * ABORTED_ENTRY_BYTES);
+        for (AbortedTransaction aborted : aborts) {
+            buffer.putLong(aborted.producerId()).putLong(aborted.firstOffset()).putLong(aborted.markerOffset());
+        }
+        return buffer.array();
+    }
+
+    private Chunk chunkFor(long offset) {
+        long chunkIndex = offset >>> CHUNK_BITS;
+        dirtyChunks.add(chunkIndex);
+        return chunks.computeIfAbsent(chunkIndex, index -> new Chunk(new BitSet()));
+    }
+
+    private static int bit(long offset) {
+        return (int) (offset & ((1L << CHUNK_BITS) - 1));
+    }
+
+    /**
+     * Encoded changes waiting to be written: chunks by index, and aborted transactions to append,
+     * or to replace the file with if {@code rewriteAborts}; {@code aborts} is {@code null} if
+     * none changed.
+     */
+    record Changes(Map<Long, byte[]> chunks, byte[] aborts, boolean rewriteAborts) {
+        boolean isEmpty() {
+            return chunks.isEmpty() && aborts == null;
+        }
+    }
+
+    private record AbortedTransaction(long producerId, long firstOffset, long markerOffset) {
+    }
+
+    // bitsets only grow up to their highest set bit, so a mostly empty chunk stays small
+    private record Chunk(BitSet control) {
+        byte[] encode() {
+            byte[] controlBytes = control.toByteArray();
+            ByteBuffer buffer = ByteBuffer.allocate(8 + controlBytes.length);
+            buffer.putInt(FILE_VERSION);
+            buffer.putInt(controlBytes.length).put(controlBytes);
+            return buffer.array();
+        }
+
+        static Chunk read(Path file) throws IOException {
+            ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file));
+            int version = buffer.getInt();
+            if (version != FILE_VERSION) {
+                throw new IOException("unsupported transaction index version " + version + " in " + file);
+            }
+            byte[] bytes = new byte[buffer.getInt()];
+            buffer.get(bytes);
+            return new Chunk(BitSet.valueOf(bytes));
+        }
+    }
+}
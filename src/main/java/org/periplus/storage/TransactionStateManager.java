@@ -0,0 +1,118 @@
+package org.periplus.storage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.OptionalLong;
+import java.util.TreeMap;
+
+/**
+ * Tracks the transactions open on a partition: which producers have written transactional data
+ * that no control record has ended yet, and the offset each of them started at. The earliest of
+ * those offsets bounds the last stable offset.
+ */
+public class TransactionStateManager {
+    private static final int SNAPSHOT_VERSION = 1;
+
+    private final Map<Long, Long> firstOffsetByProducer = new HashMap<>();
+    private final TreeMap<Long, Long> producerByFirstOffset = new TreeMap<>();
+
+    /**
+     * Records that {@code producerId} wrote transactional data at {@code offset}; the first such
+     * offset opens its transaction.
+     */
+    public void begin(long producerId, long offset) {
+        if (firstOffsetByProducer.putIfAbsent(producerId, offset) == null) {
+            producerByFirstOffset.put(offset, producerId);
+        }
+    }
+
+    /**
+     * Closes {@code producerId}'s open transaction and returns the offset it started at, or empty
+     * if it had none on this partition.
+     */
+    public OptionalLong end(long producerId) {
+        Long firstOffset = firstOffsetByProducer.remove(producerId);
+        if (firstOffset == null) {
+            return OptionalLong.empty();
+        }
+        producerByFirstOffset.remove(firstOffset);
+        return OptionalLong.of(firstOffset);
+    }
+
+    /**
+     * The first offset of the oldest open transaction, or {@link Long#MAX_VALUE} if none is open.
+     */
+    public long firstUnstableOffset() {
+        return producerByFirstOffset.isEmpty() ? Long.MAX_VALUE : producerByFirstOffset.firstKey();
+    }
+
+    public void clear() {
+        firstOffsetByProducer.clear();
+        producerByFirstOffset.clear();
+    }
+
+    /**
+     * The offset {@code producerId}'s open transaction started at, or empty if it has none here.
+     */
+    public OptionalLong firstOffset(long producerId) {
+        Long firstOffset = firstOffsetByProducer.get(producerId);
+        return firstOffset == null ? OptionalLong.empty() : OptionalLong.of(firstOffset);
+    }
+
+    /**
+     * The open transactions, each producer id mapped to the offset its transaction started at.
+     */
+    public Map<Long, Long> openTransactions() {
+        return Map.copyOf(firstOffsetByProducer);
+    }
+
+    public int openTransactionCount() {
+        return firstOffsetByProducer.size();
+    }
+
+    /**
+     * Writes the open transactions to {@code file} via a temporary file and an atomic rename.
+     */
+    public void writeSnapshot(Path file, long snapshotOffset) throws IOException {
+        SnapshotFiles.write(file, snapshot(snapshotOffset));
+    }
+
+    /**
+     * The open transactions as of {@code snapshotOffset}, serialized in memory.
+     */
+    public ByteBuffer snapshot(long snapshotOffset) {
+        var buffer = ByteBuffer.allocate(16 + firstOffsetByProducer.size() * 16);
+        buffer.putInt(SNAPSHOT_VERSION);
+        buffer.putLong(snapshotOffset);
+        buffer.putInt(firstOffsetByProducer.size());
+        for (Map.Entry<Long, Long> transaction : firstOffsetByProducer.entrySet()) {
+            buffer.putLong(transaction.getKey());
+            buffer.putLong(transaction.getValue());
+        }
+        return buffer.flip();
+    }
+
+    /**
+     * Replaces the open transactions with those in {@code file} and returns the offset the
+     * snapshot was taken at.
+     */
+    public long loadSnapshot(Path file) throws IOException {
+        firstOffsetByProducer.clear();
+        producerByFirstOffset.clear();
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file));
+        int version = buffer.getInt();
+        if (version != SNAPSHOT_VERSION) {
+            throw new IOException("unsupported transaction snapshot version " + version + " in " + file);
+        }
+        long snapshotOffset = buffer.getLong();
+        int count = buffer.getInt();
+        for (int i = 0; i < count; i++) {
+            begin(buffer.getLong(), buffer.getLong());
+        }
+        return snapshotOffset;
+    }
+}
@@ -0,0 +1,128 @@
+package org.periplus.storage.remote;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * {@link RemoteStorage} backed by a directory, laid out as
+ * {@code <root>/<partition>/segment-<baseOffset>/{log,index,metadata}}. Meant for tests and for
+ * running against a mounted network filesystem.
+ */
+public class LocalFileSystemRemoteStorage implements RemoteStorage {
+    private static final String METADATA_FILE = "metadata";
+
+    private final Path root;
+
+    public LocalFileSystemRemoteStorage(Path root) throws IOException {
+        this.root = root;
+        Files.createDirectories(root);
+    }
+
+    @Override
+    public void uploadSegment(RemoteSegmentMetadata metadata, Path logFile, Path indexFile) throws IOException {
+        Path segmentDirectory = segmentDirectory(metadata);
+        Path staging = segmentDirectory.resolveSibling(segmentDirectory.getFileName() + ".uploading");
+        deleteDirectory(staging);
+        Files.createDirectories(staging);
+
+        copyPrefix(logFile, staging.resolve("log"), metadata.logSize());
+        Files.copy(indexFile, staging.resolve("index"));
+
+        var properties = new Properties();
+        properties.setProperty("baseOffset", Long.toString(metadata.baseOffset()));
+        properties.setProperty("nextOffset", Long.toString(metadata.nextOffset()));
+        properties.setProperty("logSize", Long.toString(metadata.logSize()));
+        try (var output = Files.newBufferedWriter(staging.resolve(METADATA_FILE))) {
+            properties.store(output, null);
+        }
+
+        // the rename is what makes the segment visible to listSegments
+        deleteDirectory(segmentDirectory);
+        Files.move(staging, segmentDirectory, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    @Override
+    public byte[] fetch(RemoteSegmentMetadata metadata, RemoteFile file, long position, int length) throws IOException {
+        Path path = segmentDirectory(metadata).resolve(file == RemoteFile.LOG ? "log" : "index");
+        try (var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            int available = (int) Math.max(0, Math.min(length, channel.size() - position));
+            var buffer = ByteBuffer.allocate(available);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, position + buffer.position()) < 0) {
+                    break;
+                }
+            }
+            return buffer.array();
+        }
+    }
+
+    @Override
+    public List<RemoteSegmentMetadata> listSegments(String partition) throws IOException {
+        Path partitionDirectory = root.resolve(partition);
+        List<RemoteSegmentMetadata> segments = new ArrayList<>();
+        if (!Files.isDirectory(partitionDirectory)) {
+            return segments;
+        }
+
+        try (var children = Files.list(partitionDirectory)) {
+            for (Path child : (Iterable<Path>) children::iterator) {
+                Path metadataFile = child.resolve(METADATA_FILE);
+                if (child.getFileName().toString().endsWith(".uploading") || !Files.exists(metadataFile)) {
+                    continue;
+                }
+                var properties = new Properties();
+                try (var input = Files.newBufferedReader(metadataFile)) {
+                    properties.load(input);
+                }
+                segments.add(new RemoteSegmentMetadata(partition,
+                        Long.parseLong(properties.getProperty("baseOffset")),
+                        Long.parseLong(properties.getProperty("nextOffset")),
+                        Long.parseLong(properties.getProperty("logSize"))));
+            }
+        }
+        segments.sort(Comparator.comparingLong(RemoteSegmentMetadata::baseOffset));
+        return segments;
+    }
+
+    @Override
+    public void deleteSegment(RemoteSegmentMetadata metadata) throws IOException {
+        deleteDirectory(segmentDirectory(metadata));
+    }
+
+    private Path segmentDirectory(RemoteSegmentMetadata metadata) {
+        return root.resolve(metadata.partition()).resolve("segment-" + String.format("%016d", metadata.baseOffset()));
+    }
+
+    // only the data part of the log is uploaded, not a preallocated tail
+    private static void copyPrefix(Path source, Path target, long length) throws IOException {
+        try (var in = FileChannel.open(source, StandardOpenOption.READ);
+             var out = FileChannel.open(target, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            long copied = 0;
+            while (copied < length) {
+                copied += in.transferTo(copied, length - copied, out);
+            }
+            out.force(true);
+        }
+    }
+
+    private static void deleteDirectory(Path directory) throws IOException {
+        if (!Files.exists(directory)) {
+            return;
+        }
+        try (var children = Files.list(directory)) {
+            for (Path child : (Iterable<Path>) children::iterator) {
+                Files.delete(child);
+            }
+        }
+        Files.delete(directory);
+    }
+}
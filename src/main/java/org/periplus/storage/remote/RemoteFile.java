@@ -0,0 +1,6 @@
+package org.periplus.storage.remote;
+
+public enum RemoteFile {
+    LOG,
+    INDEX
+}
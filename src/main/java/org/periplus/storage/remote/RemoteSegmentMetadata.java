@@ -0,0 +1,12 @@
+package org.periplus.storage.remote;
+
+/**
+ * Describes a segment held by a {@link RemoteStorage}: the offsets it covers,
+ * {@code [baseOffset, nextOffset)}, and the size of its log file.
+ */
+public record RemoteSegmentMetadata(String partition, long baseOffset, long nextOffset, long logSize) {
+
+    public boolean contains(long offset) {
+        return offset >= baseOffset && offset < nextOffset;
+    }
+}
@@ -0,0 +1,23 @@
+package org.periplus.storage.remote;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * An object store that closed segments are offloaded to. Implementations must make an uploaded
+ * segment visible atomically: {@link #listSegments} never returns a partially uploaded segment.
+ */
+public interface RemoteStorage {
+    void uploadSegment(RemoteSegmentMetadata metadata, Path logFile, Path indexFile) throws IOException;
+
+    /**
+     * Reads up to {@code length} bytes of one of a segment's files starting at {@code position};
+     * fewer bytes are returned at the end of the file.
+     */
+    byte[] fetch(RemoteSegmentMetadata metadata, RemoteFile file, long position, int length) throws IOException;
+
+    List<RemoteSegmentMetadata> listSegments(String partition) throws IOException;
+
+    void deleteSegment(RemoteSegmentMetadata metadata) throws IOException;
+}
@@ -0,0 +1,82 @@
+package org.periplus.tools;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Counts latencies in log-linear buckets: exact below 128ns, then 64 buckets per power of two,
+ * so any recorded value is reported within 1.6% of what was measured. Recording is a single array
+ * increment; a histogram belongs to one thread and histograms are combined with {@link #add}.
+ */
+public class LatencyHistogram {
+    private static final int LINEAR_BUCKETS = 128;
+    private static final int SUB_BUCKET_BITS = 6;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    private final long[] counts = new long[LINEAR_BUCKETS + (63 - SUB_BUCKET_BITS) * SUB_BUCKETS];
+    private long totalCount;
+    private long maxValue;
+
+    public void recordNanos(long value) {
+        long clamped = Math.max(0L, value);
+        counts[bucketOf(clamped)]++;
+        totalCount++;
+        maxValue = Math.max(maxValue, clamped);
+    }
+
+    public void add(LatencyHistogram other) {
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] += other.counts[i];
+        }
+        totalCount += other.totalCount;
+        maxValue = Math.max(maxValue, other.maxValue);
+    }
+
+    /**
+     * The smallest recorded value that {@code percentile} percent of all values are at or below,
+     * reported as the upper end of its bucket.
+     */
+    public long percentileNanos(double percentile) {
+        if (totalCount == 0) {
+            return 0L;
+        }
+        long target = Math.max(1L, (long) Math.ceil(percentile / 100.0 * totalCount));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= target) {
+                return Math.min(highestValueIn(i), maxValue);
+            }
+        }
+        return maxValue;
+    }
+
+    public double percentileMillis(double percentile) {
+        return percentileNanos(percentile) / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    public long getTotalCount() {
+        return totalCount;
+    }
+
+    public long getMaxNanos() {
+        return maxValue;
+    }
+
+    static int bucketOf(long value) {
+        if (value < LINEAR_BUCKETS) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        int mantissa = (int) (value >>> shift);
+        return LINEAR_BUCKETS + (shift - 1) * SUB_BUCKETS + (mantissa - SUB_BUCKETS);
+    }
+
+    static long highestValueIn(int bucket) {
+        if (bucket < LINEAR_BUCKETS) {
+            return bucket;
+        }
+        int shift = (bucket - LINEAR_BUCKETS) / SUB_BUCKETS + 1;
+        long mantissa = (bucket - LINEAR_BUCKETS) % SUB_BUCKETS + SUB_BUCKETS;
+        return ((mantissa + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,241 @@
+package org.periplus.tools;
+
+import org.periplus.config.BrokerConfig;
+import org.periplus.replication.InMemoryReplicationTransport;
+import org.periplus.replication.Replica;
+import org.periplus.storage.Message;
+import org.periplus.storage.PartitionLog;
+import org.periplus.storage.ReadResult;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Stream;
+
+/**
+ * Drives an in-process broker with paced producers and tailing consumers and reports throughput
+ * and latency, e.g. to compare flush settings or segment sizes.
+ *
+ * <p>Every message is given an intended send time on a fixed schedule and latencies are measured
+ * from that time rather than from when the producer got around to sending it. A stall therefore
+ * shows up in the latency of every message that was due during it, instead of only the one that
+ * was in flight (coordinated omission).
+ */
+public class LoadGenerator {
+    static final String SEND_TIME_HEADER = "loadgen.intended.nanos";
+    private static final int CONSUMER_FETCH_MESSAGES = 500;
+    private static final long CONSUMER_IDLE_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+    private static final long CONSUMER_DRAIN_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    private final BrokerConfig config;
+    private final LoadGeneratorOptions options;
+    private final AtomicInteger producersRunning = new AtomicInteger();
+
+    public LoadGenerator(BrokerConfig config, LoadGeneratorOptions options) {
+        this.config = config;
+        this.options = options;
+    }
+
+    public static void main(String[] args) throws Exception {
+        LoadGeneratorOptions options;
+        try {
+            options = LoadGeneratorOptions.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.print(LoadGeneratorOptions.USAGE);
+            System.exit(2);
+            return;
+        }
+        LoadReport report = new LoadGenerator(BrokerConfig.fromProperties(options.configFile()), options).run();
+        System.out.print(report.format());
+    }
+
+    /**
+     * Runs against a fresh partition under the configured data directory, which is deleted
+     * afterwards.
+     */
+    public LoadReport run() throws IOException, InterruptedException {
+        Path dataDirectory = Path.of(config.dataDirectory());
+        Files.createDirectories(dataDirectory);
+        Path partitionDirectory = Files.createTempDirectory(dataDirectory, "loadgen-");
+        try {
+            return runAgainst(partitionDirectory);
+        } finally {
+            deleteRecursively(partitionDirectory);
+        }
+    }
+
+    private LoadReport runAgainst(Path partitionDirectory) throws IOException, InterruptedException {
+        InMemoryReplicationTransport transport = new InMemoryReplicationTransport();
+        ExecutorService workers = Executors.newFixedThreadPool(options.producers() + options.consumers());
+        try (PartitionLog log = new PartitionLog(partitionDirectory, config)) {
+            Replica leader = new Replica(config, log, transport);
+            transport.register(leader);
+            leader.becomeLeader(Set.of());
+
+            long startNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(50);
+            long measureFromNanos = startNanos + TimeUnit.SECONDS.toNanos(options.warmupSeconds());
+            long endNanos = startNanos + TimeUnit.SECONDS.toNanos(options.durationSeconds());
+
+            producersRunning.set(options.producers());
+            List<Future<ProducerResult>> producers = new ArrayList<>();
+            for (int i = 0; i < options.producers(); i++) {
+                int producerId = i;
+                producers.add(workers.submit(() -> produce(leader, producerId, startNanos, measureFromNanos, endNanos)));
+            }
+            List<Future<LatencyHistogram>> consumers = new ArrayList<>();
+            for (int i = 0; i < options.consumers(); i++) {
+                consumers.add(workers.submit(() -> consume(leader, measureFromNanos)));
+            }
+
+            long messages = 0;
+            long finishedNanos = measureFromNanos;
+            LatencyHistogram produceLatency = new LatencyHistogram();
+            for (Future<ProducerResult> producer : producers) {
+                ProducerResult result = await(producer);
+                messages += result.measuredMessages();
+                finishedNanos = Math.max(finishedNanos, result.finishedNanos());
+                produceLatency.add(result.latency());
+            }
+            LatencyHistogram endToEndLatency = new LatencyHistogram();
+            for (Future<LatencyHistogram> consumer : consumers) {
+                endToEndLatency.add(await(consumer));
+            }
+            leader.close();
+            transport.close();
+
+            return new LoadReport(
+                    messages,
+                    messages * options.messageBytes(),
+                    (finishedNanos - measureFromNanos) / 1e9,
+                    options.targetRate(),
+                    produceLatency,
+                    endToEndLatency,
+                    config.segmentSizeBytes(),
+                    config.flushIntervalMessages(),
+                    config.flushIntervalMs());
+        } finally {
+            workers.shutdownNow();
+            workers.awaitTermination(10, TimeUnit.SECONDS);
+        }
+    }
+
+    private record ProducerResult(long measuredMessages, long finishedNanos, LatencyHistogram latency) {
+    }
+
+    private ProducerResult produce(Replica leader, int producerId, long startNanos, long measureFromNanos, long endNanos)
+            throws IOException {
+        double intervalNanos = 1e9 * options.producers() / options.targetRate();
+        // Stagger producers so their schedules interleave instead of all firing at once.
+        double offsetNanos = intervalNanos * producerId / options.producers();
+        String value = "x".repeat(options.messageBytes());
+        String key = "producer-" + producerId;
+        LatencyHistogram latency = new LatencyHistogram();
+        long measured = 0;
+        try {
+            for (long sequence = 0; ; sequence++) {
+                long intendedNanos = startNanos + (long) (offsetNanos + sequence * intervalNanos);
+                if (intendedNanos >= endNanos) {
+                    break;
+                }
+                long waitNanos;
+                while ((waitNanos = intendedNanos - System.nanoTime()) > 0) {
+                    LockSupport.parkNanos(waitNanos);
+                }
+
+                leader.append(Message.create(key, value, headers(intendedNanos)));
+                if (intendedNanos >= measureFromNanos) {
+                    latency.recordNanos(System.nanoTime() - intendedNanos);
+                    measured++;
+                }
+            }
+        } finally {
+            producersRunning.decrementAndGet();
+        }
+        return new ProducerResult(measured, System.nanoTime(), latency);
+    }
+
+    private Map<String, String> headers(long intendedNanos) {
+        Map<String, String> headers = new LinkedHashMap<>();
+        headers.put(SEND_TIME_HEADER, Long.toString(intendedNanos));
+        for (int i = 0; i < options.headers(); i++) {
+            headers.put("loadgen.header." + i, "value-" + i);
+        }
+        return headers;
+    }
+
+    /**
+     * Tails the log from the start until every producer has finished and everything they wrote has
+     * been read, or the drain deadline passes.
+     */
+    private LatencyHistogram consume(Replica leader, long measureFromNanos) throws IOException {
+        LatencyHistogram latency = new LatencyHistogram();
+        long offset = 0;
+        long drainDeadline = Long.MAX_VALUE;
+        while (true) {
+            ReadResult result = leader.fetchForConsumer(offset, CONSUMER_FETCH_MESSAGES);
+            long now = System.nanoTime();
+            for (Message message : result.messages()) {
+                long intendedNanos = Long.parseLong(message.getHeaders().get(SEND_TIME_HEADER));
+                if (intendedNanos >= measureFromNanos) {
+                    latency.recordNanos(now - intendedNanos);
+                }
+            }
+            offset = result.nextOffset();
+
+            if (result.messages().isEmpty()) {
+                if (producersRunning.get() == 0) {
+                    if (offset >= leader.getLog().getLogEndOffset()) {
+                        return latency;
+                    }
+                    if (drainDeadline == Long.MAX_VALUE) {
+                        drainDeadline = now + CONSUMER_DRAIN_NANOS;
+                    } else if (now - drainDeadline > 0) {
+                        return latency;
+                    }
+                }
+                LockSupport.parkNanos(CONSUMER_IDLE_NANOS);
+            }
+        }
+    }
+
+    private static <T> T await(Future<T> future) throws IOException, InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException io) {
+                throw io;
+            }
+            if (e.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw new IllegalStateException("load generator worker failed", e.getCause());
+        }
+    }
+
+    private static void deleteRecursively(Path directory) throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> {
+                try {
+                    Files.delete(path);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package org.periplus.tools;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Command line settings of the {@link LoadGenerator}.
+ *
+ * @param configFile      broker properties to build the in-process broker from
+ * @param producers       producer threads
+ * @param consumers       consumer threads; each one reads every message
+ * @param targetRate      messages per second over all producers
+ * @param messageBytes    size of each message value
+ * @param headers         extra headers per message, besides the one carrying the send time
+ * @param durationSeconds how long producers run, warmup included
+ * @param warmupSeconds   leading part of the run left out of the results
+ */
+public record LoadGeneratorOptions(
+        String configFile,
+        int producers,
+        int consumers,
+        long targetRate,
+        int messageBytes,
+        int headers,
+        int durationSeconds,
+        int warmupSeconds) {
+
+    public LoadGeneratorOptions {
+        if (producers <= 0) throw new IllegalArgumentException("--producers must be positive");
+        if (consumers < 0) throw new IllegalArgumentException("--consumers must not be negative");
+        if (targetRate <= 0) throw new IllegalArgumentException("--rate must be positive");
+        if (messageBytes < 0) throw new IllegalArgumentException("--message-bytes must not be negative");
+        if (headers < 0) throw new IllegalArgumentException("--headers must not be negative");
+        if (durationSeconds <= warmupSeconds) throw new IllegalArgumentException("--duration must be longer than --warmup");
+    }
+
+    public static final String USAGE = """
+            Usage: LoadGenerator [options]
+              --config <file>        broker properties (default broker.properties)
+              --producers <n>        producer threads (default 1)
+              --consumers <n>        consumer threads, each reading every message (default 1)
+              --rate <n>             target messages per second over all producers (default 10000)
+              --message-bytes <n>    message value size (default 256)
+              --headers <n>          extra headers per message (default 2)
+              --duration <seconds>   run time including warmup (default 30)
+              --warmup <seconds>     leading seconds left out of the results (default 5)
+            """;
+
+    public static LoadGeneratorOptions parse(String[] args) {
+        Map<String, String> values = new HashMap<>();
+        for (int i = 0; i < args.length; i++) {
+            if (!args[i].startsWith("--") || i + 1 == args.length) {
+                throw new IllegalArgumentException("expected --option value but got " + args[i]);
+            }
+            values.put(args[i].substring(2), args[++i]);
+        }
+
+        var options = new LoadGeneratorOptions(
+                values.getOrDefault("config", "broker.properties"),
+                intValue(values, "producers", 1),
+                intValue(values, "consumers", 1),
+                Long.parseLong(values.getOrDefault("rate", "10000")),
+                intValue(values, "message-bytes", 256),
+                intValue(values, "headers", 2),
+                intValue(values, "duration", 30),
+                intValue(values, "warmup", 5));
+        values.keySet().removeAll(Set.of("config", "producers", "consumers", "rate",
+                "message-bytes", "headers", "duration", "warmup"));
+        if (!values.isEmpty()) {
+            throw new IllegalArgumentException("unknown option(s): " + values.keySet());
+        }
+        return options;
+    }
+
+    private static int intValue(Map<String, String> values, String name, int defaultValue) {
+        String value = values.get(name);
+        return value != null ? Integer.parseInt(value) : defaultValue;
+    }
+}
@@ -0,0 +1,63 @@
+package org.periplus.tools;
+
+import java.util.Locale;
+
+/**
+ * Results of one {@link LoadGenerator} run, measured after the warmup.
+ *
+ * @param messages           messages produced after the warmup
+ * @param bytes              value bytes of those messages
+ * @param elapsedSeconds     time from the end of the warmup until the last producer finished
+ * @param targetRate         requested messages per second
+ * @param produceLatency     append completion time minus intended send time
+ * @param endToEndLatency    consumer receive time minus intended send time, over all consumers
+ * @param segmentSizeBytes   segment size the broker ran with
+ * @param flushIntervalMessages flush interval in messages the broker ran with
+ * @param flushIntervalMs    flush interval in milliseconds the broker ran with
+ */
+public record LoadReport(
+        long messages,
+        long bytes,
+        double elapsedSeconds,
+        long targetRate,
+        LatencyHistogram produceLatency,
+        LatencyHistogram endToEndLatency,
+        long segmentSizeBytes,
+        long flushIntervalMessages,
+        long flushIntervalMs) {
+
+    public double messagesPerSecond() {
+        return elapsedSeconds > 0 ? messages / elapsedSeconds : 0.0;
+    }
+
+    public double megabytesPerSecond() {
+        return elapsedSeconds > 0 ? bytes / elapsedSeconds / (1024.0 * 1024.0) : 0.0;
+    }
+
+    public String format() {
+        StringBuilder report = new StringBuilder();
+        report.append(String.format(Locale.ROOT, "segment.bytes=%d flush.interval.messages=%s flush.interval.ms=%d%n",
+                segmentSizeBytes,
+                flushIntervalMessages == Long.MAX_VALUE ? "unset" : Long.toString(flushIntervalMessages),
+                flushIntervalMs));
+        report.append(String.format(Locale.ROOT, "throughput: %.0f msgs/s (target %d), %.2f MB/s over %.1f s%n",
+                messagesPerSecond(), targetRate, megabytesPerSecond(), elapsedSeconds));
+        appendLatency(report, "produce", produceLatency);
+        appendLatency(report, "end-to-end", endToEndLatency);
+        return report.toString();
+    }
+
+    private static void appendLatency(StringBuilder report, String name, LatencyHistogram histogram) {
+        if (histogram.getTotalCount() == 0) {
+            report.append(String.format(Locale.ROOT, "%s latency: no samples%n", name));
+            return;
+        }
+        report.append(String.format(Locale.ROOT, "%s latency ms: p50=%.3f p99=%.3f p999=%.3f max=%.3f (%d samples)%n",
+                name,
+                histogram.percentileMillis(50),
+                histogram.percentileMillis(99),
+                histogram.percentileMillis(99.9),
+                histogram.getMaxNanos() / 1_000_000.0,
+                histogram.getTotalCount()));
+    }
+}
@@ -0,0 +1,260 @@
+package org.periplus.tools;
+
+import org.periplus.storage.SegmentReport;
+import org.periplus.storage.SegmentVerifier;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+/**
+ * Verifies the segments under one or more data, partition or segment directories in parallel and
+ * prints what they hold: record counts, size distribution, timestamp range, index state, any
+ * corruption and offsets that are missing or held twice between a partition's segments. Each segment is streamed by one thread, so with enough threads the scan is bound by
+ * disk bandwidth. Only reads unless {@code --rebuild-index} is given, which must not be used while
+ * a broker has the partitions open.
+ */
+public class SegmentInspector {
+    public static final String USAGE = """
+            Usage: SegmentInspector [options] <directory>...
+              directories may be data, partition or segment directories
+              --rebuild-index     rewrite missing, incomplete or inconsistent indexes from the log
+                                  (only while no broker has the partitions open)
+              --threads <n>       segments verified at once (default: available processors)
+              --verbose           print every segment, not only those with problems
+            """;
+
+    private final int threads;
+    private final boolean rebuildIndex;
+
+    public SegmentInspector(int threads, boolean rebuildIndex) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("--threads must be positive");
+        }
+        this.threads = threads;
+        this.rebuildIndex = rebuildIndex;
+    }
+
+    public static void main(String[] args) throws Exception {
+        List<Path> roots = new ArrayList<>();
+        int threads = Runtime.getRuntime().availableProcessors();
+        boolean rebuildIndex = false;
+        boolean verbose = false;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--rebuild-index" -> rebuildIndex = true;
+                    case "--verbose" -> verbose = true;
+                    case "--threads" -> {
+                        if (i + 1 == args.length) {
+                            throw new IllegalArgumentException("--threads needs a value");
+                        }
+                        threads = Integer.parseInt(args[++i]);
+                    }
+                    default -> {
+                        if (args[i].startsWith("--")) {
+                            throw new IllegalArgumentException("unknown option " + args[i]);
+                        }
+                        roots.add(Path.of(args[i]));
+                    }
+                }
+            }
+            if (roots.isEmpty()) {
+                throw new IllegalArgumentException("no directory given");
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.print(USAGE);
+            System.exit(2);
+            return;
+        }
+
+        Inspection inspection = new SegmentInspector(threads, rebuildIndex).inspect(roots);
+        System.out.print(inspection.format(verbose));
+        System.exit(inspection.isHealthy() ? 0 : 1);
+    }
+
+    /**
+     * Results of one run, grouped by partition directory in path order.
+     *
+     * @param failures segments that could not be verified at all, e.g. because a file is missing
+     */
+    public record Inspection(Map<Path, List<SegmentReport>> partitions, Map<Path, String> failures, long elapsedNanos) {
+
+        public boolean isHealthy() {
+            return failures.isEmpty()
+                    && partitions.values().stream().flatMap(List::stream).allMatch(SegmentReport::isHealthy)
+                    && partitions.values().stream().allMatch(segments -> discontinuities(segments).isEmpty());
+        }
+
+        /**
+         * Places where a segment does not start at the previous segment's next offset. A segment
+         * that could not be read to its end is reported as corrupt already and is not compared.
+         */
+        public static List<Discontinuity> discontinuities(List<SegmentReport> segments) {
+            List<Discontinuity> found = new ArrayList<>();
+            for (int i = 1; i < segments.size(); i++) {
+                SegmentReport previous = segments.get(i - 1);
+                SegmentReport next = segments.get(i);
+                if (previous.corruption().isEmpty() && previous.nextOffset() != next.baseOffset()) {
+                    found.add(new Discontinuity(previous, next));
+                }
+            }
+            return found;
+        }
+
+        public String format(boolean verbose) {
+            StringBuilder out = new StringBuilder();
+            long totalRecords = 0;
+            long totalBytes = 0;
+            int totalSegments = 0;
+            for (Map.Entry<Path, List<SegmentReport>> partition : partitions.entrySet()) {
+                List<SegmentReport> segments = partition.getValue();
+                long records = 0;
+                long controlRecords = 0;
+                long transactionalRecords = 0;
+                long bytes = 0;
+                long minTimestamp = Long.MAX_VALUE;
+                long maxTimestamp = Long.MIN_VALUE;
+                long[] sizes = new long[Integer.SIZE];
+                StringBuilder segmentLines = new StringBuilder();
+                for (SegmentReport segment : segments) {
+                    records += segment.records();
+                    controlRecords += segment.controlRecords();
+                    transactionalRecords += segment.transactionalRecords();
+                    bytes += segment.dataBytes();
+                    minTimestamp = Math.min(minTimestamp, segment.minTimestamp());
+                    maxTimestamp = Math.max(maxTimestamp, segment.maxTimestamp());
+                    for (int i = 0; i < sizes.length; i++) {
+                        sizes[i] += segment.sizeHistogram()[i];
+                    }
+                    if (verbose || !segment.isHealthy()) {
+                        segmentLines.append(describe(segment));
+                    }
+                }
+                for (Discontinuity discontinuity : discontinuities(segments)) {
+                    segmentLines.append(String.format(Locale.ROOT, "  %s: %s of %d offsets after %s, which ends at %d%n",
+                            discontinuity.next().segmentDirectory().getFileName(),
+                            discontinuity.isGap() ? "gap" : "overlap", Math.abs(discontinuity.size()),
+                            discontinuity.previous().segmentDirectory().getFileName(), discontinuity.previous().nextOffset()));
+                }
+                totalRecords += records;
+                totalBytes += bytes;
+                totalSegments += segments.size();
+
+                out.append(String.format(Locale.ROOT, "%s: %d segments, %d records (%d control, %d transactional), %s%n",
+                        partition.getKey(), segments.size(), records, controlRecords, transactionalRecords, megabytes(bytes)));
+                if (records > 0) {
+                    out.append(String.format(Locale.ROOT, "  timestamps %s .. %s%n",
+                            Instant.ofEpochMilli(minTimestamp), Instant.ofEpochMilli(maxTimestamp)));
+                    out.append("  record sizes:");
+                    for (int i = 0; i < sizes.length; i++) {
+                        if (sizes[i] > 0) {
+                            out.append(String.format(Locale.ROOT, " %d-%d B: %d,", 1L << i, (1L << (i + 1)) - 1, sizes[i]));
+                        }
+                    }
+                    out.setLength(out.length() - 1);
+                    out.append(System.lineSeparator());
+                }
+                out.append(segmentLines);
+            }
+            for (Map.Entry<Path, String> failure : failures.entrySet()) {
+                out.append(String.format(Locale.ROOT, "%s: could not be verified: %s%n", failure.getKey(), failure.getValue()));
+            }
+
+            double seconds = elapsedNanos / 1e9;
+            out.append(String.format(Locale.ROOT, "total: %d segments, %d records, %s in %.2f s (%.1f MB/s)%n",
+                    totalSegments, totalRecords, megabytes(totalBytes), seconds,
+                    seconds > 0 ? totalBytes / seconds / (1024 * 1024) : 0.0));
+            return out.toString();
+        }
+
+        private static String describe(SegmentReport segment) {
+            StringBuilder line = new StringBuilder(String.format(Locale.ROOT, "  %s: offsets %d-%d, %d records, %s, index %s",
+                    segment.segmentDirectory().getFileName(), segment.baseOffset(), segment.nextOffset() - 1,
+                    segment.records(), megabytes(segment.dataBytes()), segment.indexStatus()));
+            if (segment.indexMismatches() > 0) {
+                line.append(String.format(Locale.ROOT, " (%d of %d entries wrong)", segment.indexMismatches(), segment.indexEntries()));
+            }
+            if (segment.indexRebuilt()) {
+                line.append(", rebuilt");
+            }
+            segment.corruption().ifPresent(corruption -> line.append(String.format(Locale.ROOT,
+                    ", unreadable from offset %d at position %d: %s",
+                    corruption.offset(), corruption.filePosition(), corruption.errorType())));
+            return line.append(System.lineSeparator()).toString();
+        }
+
+        private static String megabytes(long bytes) {
+            return String.format(Locale.ROOT, "%.2f MB", bytes / (1024.0 * 1024.0));
+        }
+    }
+
+    /**
+     * Two consecutive segments of a partition whose offsets do not follow on from each other.
+     */
+    public record Discontinuity(SegmentReport previous, SegmentReport next) {
+
+        /**
+         * Offsets missing between the segments, or held by both as a negative number.
+         */
+        public long size() {
+            return next.baseOffset() - previous.nextOffset();
+        }
+
+        public boolean isGap() {
+            return size() > 0;
+        }
+    }
+
+    public Inspection inspect(List<Path> roots) throws IOException, InterruptedException {
+        List<Path> segmentDirectories = new ArrayList<>();
+        for (Path given : roots) {
+            Path root = given.toAbsolutePath().normalize();
+            if (SegmentVerifier.isSegmentDirectory(root)) {
+                segmentDirectories.add(root);
+            } else {
+                // data directory/partition/segment at most
+                try (Stream<Path> paths = Files.walk(root, 2)) {
+                    paths.filter(SegmentVerifier::isSegmentDirectory).forEach(segmentDirectories::add);
+                }
+            }
+        }
+        segmentDirectories.sort(null);
+
+        long start = System.nanoTime();
+        ExecutorService workers = Executors.newFixedThreadPool(threads);
+        try {
+            Map<Path, Future<SegmentReport>> pending = new LinkedHashMap<>();
+            for (Path segmentDirectory : segmentDirectories) {
+                pending.put(segmentDirectory, workers.submit(() -> SegmentVerifier.verify(segmentDirectory, rebuildIndex)));
+            }
+
+            Map<Path, List<SegmentReport>> partitions = new TreeMap<>();
+            Map<Path, String> failures = new TreeMap<>();
+            for (Map.Entry<Path, Future<SegmentReport>> segment : pending.entrySet()) {
+                try {
+                    SegmentReport report = segment.getValue().get();
+                    partitions.computeIfAbsent(segment.getKey().getParent(), partition -> new ArrayList<>()).add(report);
+                } catch (ExecutionException e) {
+                    failures.put(segment.getKey(), String.valueOf(e.getCause()));
+                }
+            }
+            return new Inspection(partitions, failures, System.nanoTime() - start);
+        } finally {
+            workers.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package org.periplus.transaction;
+
+import org.periplus.config.BrokerConfig;
+import org.periplus.replication.Replica;
+import org.periplus.storage.ControlRecordType;
+import org.periplus.storage.Message;
+import org.periplus.storage.OffsetEntry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Makes a producer's writes to several partitions visible all at once or not at all. The
+ * coordinator remembers which partitions each open transaction wrote to and ends it by appending a
+ * commit or abort control record to every one of them; until then the data sits above each
+ * partition's last stable offset, out of reach of read-committed consumers.
+ *
+ * <p>Transactions left open longer than {@code transaction.timeout.ms} are aborted in the
+ * background, so an abandoned producer cannot hold back the last stable offset forever.
+ */
+public class TransactionCoordinator implements AutoCloseable {
+    private static final Logger log = LoggerFactory.getLogger(TransactionCoordinator.class);
+
+    private final long timeoutMs;
+    private final LongSupplier clock;
+    private final Map<Long, OpenTransaction> transactions = new HashMap<>();
+    private long nextEpoch;
+    private final ScheduledExecutorService expirer;
+
+    public TransactionCoordinator(BrokerConfig config) {
+        this(config, System::currentTimeMillis);
+    }
+
+    TransactionCoordinator(BrokerConfig config, LongSupplier clock) {
+        this.timeoutMs = config.transactionTimeoutMs();
+        this.clock = clock;
+        this.expirer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "transaction-expirer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long checkIntervalMs = Math.min(timeoutMs, 1000);
+        expirer.scheduleWithFixedDelay(this::abortExpiredTransactions, checkIntervalMs, checkIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Opens a transaction for {@code producerId} and returns its epoch, which the producer passes
+     * with every later call. A call with an epoch that is not the open one is rejected, so a
+     * producer cannot keep writing into a transaction the coordinator has already ended.
+     */
+    public synchronized long begin(long producerId) {
+        if (transactions.containsKey(producerId)) {
+            throw new TransactionException("producer " + producerId + " already has an open transaction");
+        }
+        long epoch = nextEpoch++;
+        transactions.put(producerId, new OpenTransaction(epoch, clock.getAsLong()));
+        return epoch;
+    }
+
+    /**
+     * Registers {@code partition} with the producer's open transaction. Must be called before the
+     * producer's first transactional append to it, so an abort always reaches every partition
+     * that may hold its data.
+     */
+    public void addPartition(long producerId, long epoch, Replica partition) {
+        OpenTransaction transaction = lookup(producerId, epoch);
+        synchronized (transaction) {
+            register(producerId, transaction, partition);
+        }
+    }
+
+    /**
+     * Registers {@code partition} with the producer's open transaction and appends {@code message}
+     * to it. The append and the end of the transaction exclude each other, so the message either
+     * lands before the transaction's marker or is rejected; it is never left behind a marker where
+     * no transaction covers it.
+     */
+    public OffsetEntry append(long producerId, long epoch, Replica partition, Message message) throws IOException {
+        OpenTransaction transaction = lookup(producerId, epoch);
+        synchronized (transaction) {
+            register(producerId, transaction, partition);
+            return partition.append(message);
+        }
+    }
+
+    // the caller holds the transaction's monitor, which also guards its partitions
+    private static void register(long producerId, OpenTransaction transaction, Replica partition) {
+        if (transaction.ending != null) {
+            throw new TransactionException("transaction of producer " + producerId + " is already ending");
+        }
+        transaction.partitions.add(partition);
+    }
+
+    public void commit(long producerId, long epoch) {
+        end(producerId, epoch, ControlRecordType.COMMIT);
+    }
+
+    public void abort(long producerId, long epoch) {
+        end(producerId, epoch, ControlRecordType.ABORT);
+    }
+
+    public synchronized boolean hasOpenTransaction(long producerId) {
+        return transactions.containsKey(producerId);
+    }
+
+    synchronized boolean isOpen(long producerId, long epoch) {
+        OpenTransaction transaction = transactions.get(producerId);
+        return transaction != null && transaction.epoch == epoch;
+    }
+
+    /**
+     * Writes the control record to every partition of the transaction that does not have it yet.
+     * If a write fails the transaction stays open with its outcome decided; ending it again with
+     * the same outcome finishes the remaining partitions. Only the transaction is locked while the
+     * markers are written, so other producers' transactions go on meanwhile. A commit requested
+     * after the timeout is rejected, since the partitions may already have aborted the
+     * transaction themselves.
+     */
+    private void end(long producerId, long epoch, ControlRecordType outcome) {
+        OpenTransaction transaction = lookup(producerId, epoch);
+        // waits for an append in progress, which then lands before the markers
+        synchronized (transaction) {
+            if (transaction.ending == null && outcome == ControlRecordType.COMMIT
+                    && clock.getAsLong() - transaction.startedMs >= timeoutMs) {
+                throw new TransactionException("transaction of producer " + producerId + " has timed out");
+            }
+            if (transaction.ending != null && transaction.ending != outcome) {
+                throw new TransactionException("transaction of producer " + producerId + " is already ending with "
+                        + transaction.ending);
+            }
+            transaction.ending = outcome;
+
+            Iterator<Replica> partitions = transaction.partitions.iterator();
+            while (partitions.hasNext()) {
+                Replica partition = partitions.next();
+                try {
+                    partition.append(Message.controlRecord(producerId, outcome));
+                } catch (IOException e) {
+                    throw new TransactionException("failed to write " + outcome + " marker for producer " + producerId
+                            + " to partition " + partition.getLog().getPartitionDirectory().getFileName(), e);
+                }
+                partitions.remove();
+            }
+        }
+        synchronized (this) {
+            transactions.remove(producerId, transaction);
+        }
+    }
+
+    void abortExpiredTransactions() {
+        List<Long> expired = new ArrayList<>();
+        synchronized (this) {
+            long now = clock.getAsLong();
+            for (Map.Entry<Long, OpenTransaction> entry : transactions.entrySet()) {
+                OpenTransaction transaction = entry.getValue();
+                // transactions whose markers failed are retried here too
+                if (now - transaction.startedMs >= timeoutMs || transaction.ending != null) {
+                    expired.add(entry.getKey());
+                }
+            }
+        }
+        for (long producerId : expired) {
+            try {
+                OpenTransaction transaction;
+                synchronized (this) {
+                    transaction = transactions.get(producerId);
+                }
+                if (transaction != null) {
+                    end(producerId, transaction.epoch, transaction.ending != null ? transaction.ending : ControlRecordType.ABORT);
+                }
+            } catch (RuntimeException e) {
+                log.warn("Failed to end expired transaction of producer {}, will retry: {}", producerId, e.getMessage());
+            }
+        }
+    }
+
+    private synchronized OpenTransaction lookup(long producerId, long epoch) {
+        OpenTransaction transaction = transactions.get(producerId);
+        if (transaction == null || transaction.epoch != epoch) {
+            throw new TransactionException("producer " + producerId + " has no open transaction with epoch " + epoch);
+        }
+        return transaction;
+    }
+
+    @Override
+    public void close() {
+        expirer.shutdownNow();
+    }
+
+    private static final class OpenTransaction {
+        private final long epoch;
+        private final long startedMs;
+        private final Set<Replica> partitions = new LinkedHashSet<>();
+        // the decided outcome once commit or abort was requested; set under the transaction's
+        // monitor and read by the expirer without it
+        private volatile ControlRecordType ending;
+
+        private OpenTransaction(long epoch, long startedMs) {
+            this.epoch = epoch;
+            this.startedMs = startedMs;
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package org.periplus.transaction;
+
+import org.periplus.replication.Replica;
+import org.periplus.storage.Message;
+import org.periplus.storage.OffsetEntry;
+
+import java.io.IOException;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Writes batches of messages to several partitions through a {@link TransactionCoordinator}.
+ * Sequence numbers are kept per partition and carry over from one transaction to the next, so
+ * retried sends are deduplicated by the partitions as for any idempotent producer.
+ */
+public class TransactionalProducer {
+    private final TransactionCoordinator coordinator;
+    private final long producerId;
+    private final Map<Replica, Integer> nextSequences = new IdentityHashMap<>();
+    private boolean inTransaction;
+    // epoch of the current transaction, checked by the coordinator on every call
+    private long epoch;
+
+    public TransactionalProducer(TransactionCoordinator coordinator, long producerId) {
+        this.coordinator = coordinator;
+        this.producerId = producerId;
+    }
+
+    public void beginTransaction() {
+        if (inTransaction) {
+            throw new TransactionException("producer " + producerId + " is already in a transaction");
+        }
+        epoch = coordinator.begin(producerId);
+        inTransaction = true;
+    }
+
+    /**
+     * Stamps {@code message} with this producer's id and next sequence for {@code partition} and
+     * appends it as part of the current transaction. A failed send may be retried with the same
+     * message. Fails with a {@link TransactionException} if the coordinator has ended the
+     * transaction, e.g. after a timeout; the producer can then begin a new one.
+     */
+    public OffsetEntry send(Replica partition, Message message) throws IOException {
+        if (!inTransaction) {
+            throw new TransactionException("producer " + producerId + " has no open transaction");
+        }
+
+        int sequence = nextSequences.getOrDefault(partition, 0);
+        message.setProducerId(producerId);
+        message.setSequence(sequence);
+        message.setTransactional(true);
+        OffsetEntry entry;
+        try {
+            entry = coordinator.append(producerId, epoch, partition, message);
+        } catch (TransactionException e) {
+            resetIfEnded();
+            throw e;
+        }
+        nextSequences.put(partition, sequence + 1);
+        return entry;
+    }
+
+    public void commitTransaction() {
+        try {
+            coordinator.commit(producerId, epoch);
+        } finally {
+            resetIfEnded();
+        }
+    }
+
+    public void abortTransaction() {
+        try {
+            coordinator.abort(producerId, epoch);
+        } finally {
+            resetIfEnded();
+        }
+    }
+
+    // the coordinator may also have ended the transaction on its own after a timeout
+    private void resetIfEnded() {
+        if (!coordinator.isOpen(producerId, epoch)) {
+            inTransaction = false;
+        }
+    }
+
+    public long getProducerId() {
+        return producerId;
+    }
+}
@@ -0,0 +1,123 @@
+package org.periplus.memory;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.periplus.config.BrokerConfig;
+import org.periplus.storage.FetchFilter;
+import org.periplus.storage.Message;
+import org.periplus.storage.PartitionLog;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class BufferPoolTest {
+    @TempDir
+    Path tempDir;
+
+    @Test
+    @DisplayName("Should round sizes up to a size class and reuse released buffers")
+    void testBuffersAreReused() {
+        BufferPool pool = new BufferPool(1024 * 1024, true);
+
+        ByteBuffer first = pool.acquire(600);
+        assertThat(first.isDirect()).isTrue();
+        assertThat(first.capacity()).isEqualTo(1024);
+        assertThat(first.remaining()).isEqualTo(600);
+        pool.release(first);
+
+        ByteBuffer second = pool.acquire(1000);
+        assertThat(second).isSameAs(first);
+        assertThat(second.remaining()).isEqualTo(1000);
+        pool.release(second);
+        assertThat(pool.getDirectBytes()).isEqualTo(1024);
+    }
+
+    @Test
+    @DisplayName("Should fall back to heap buffers once direct memory is exhausted")
+    void testDirectMemoryIsBounded() {
+        BufferPool pool = new BufferPool(2048, false);
+
+        ByteBuffer first = pool.acquire(2048);
+        ByteBuffer second = pool.acquire(2048);
+        ByteBuffer oversized = pool.acquire(4 * 1024 * 1024);
+
+        assertThat(first.isDirect()).isTrue();
+        assertThat(second.isDirect()).isFalse();
+        assertThat(oversized.isDirect()).isFalse();
+        assertThat(pool.getDirectBytes()).isEqualTo(2048);
+        assertThat(pool.getHeapFallbacks()).isEqualTo(2);
+        pool.release(first);
+        pool.release(second);
+        pool.release(oversized);
+        assertThat(pool.getOutstandingBuffers()).isZero();
+    }
+
+    @Test
+    @DisplayName("Should share buffers released on another thread")
+    void testBuffersMoveBetweenThreads() {
+        BufferPool pool = new BufferPool(1024 * 1024, false);
+        ByteBuffer[] buffers = new ByteBuffer[8];
+        for (int i = 0; i < buffers.length; i++) {
+            buffers[i] = pool.acquire(512);
+        }
+
+        CompletableFuture.runAsync(() -> {
+            for (ByteBuffer buffer : buffers) {
+                pool.release(buffer);
+            }
+        }).join();
+        for (int i = 0; i < buffers.length; i++) {
+            pool.acquire(512);
+        }
+
+        // the releasing thread kept a few for itself; the rest came back through the shared list
+        assertThat(pool.getDirectBytes()).isLessThan(16 * 512);
+    }
+
+    @Test
+    @DisplayName("Should report unreleased and doubly released buffers")
+    void testLeakDetection() {
+        BufferPool pool = new BufferPool(1024 * 1024, true);
+        ByteBuffer leaked = pool.acquire(100);
+
+        assertThatThrownBy(pool::checkForLeaks)
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("1 buffer(s)");
+
+        pool.release(leaked);
+        pool.checkForLeaks();
+        assertThatThrownBy(() -> pool.release(leaked)).isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    @DisplayName("Should release every buffer the log acquires")
+    void testPartitionLogDoesNotLeak() throws IOException {
+        BrokerConfig config = new BrokerConfig.Builder()
+                .brokerId(1)
+                .listenAddress("localhost:9092")
+                .segmentSizeBytes(4 * 1024)
+                .maxIndexEntries(10_000)
+                .build();
+        long outstandingBefore = BufferPool.shared().getOutstandingBuffers();
+
+        try (PartitionLog log = new PartitionLog(tempDir.resolve("partition-0"), config)) {
+            for (int i = 0; i < 200; i++) {
+                log.append(new Message(i, "key" + i, "value" + i, Map.of("n", Integer.toString(i % 2))));
+            }
+            assertThat(log.readFrom(0, 1000).messages()).hasSize(200);
+            assertThat(log.readFrom(0, 1000, 200, FetchFilter.headerEquals("n", "1")).messages()).hasSize(100);
+        }
+        try (PartitionLog reopened = new PartitionLog(tempDir.resolve("partition-0"), config)) {
+            assertThat(reopened.getLogEndOffset()).isEqualTo(200);
+        }
+
+        assertThat(BufferPool.shared().getOutstandingBuffers()).isEqualTo(outstandingBefore);
+    }
+}
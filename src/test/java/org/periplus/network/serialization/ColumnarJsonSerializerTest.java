@@ -0,0 +1,119 @@
+package org.periplus.network.serialization;
+
+import org.junit.jupiter.api.Test;
+import org.periplus.storage.ControlRecordType;
+import org.periplus.storage.Message;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ColumnarJsonSerializerTest {
+    private final ColumnarJsonSerializer serializer = new ColumnarJsonSerializer();
+
+    @Test
+    void testRoundTripPreservesEveryField() {
+        List<Message> messages = List.of(
+                new Message(1_000L, "user-1", "{\"id\":1,\"name\":\"alice\",\"score\":9.5,\"active\":true,\"tags\":[\"a\"]}",
+                        Map.of("content-type", "json"), 7L, 0),
+                new Message(1_005L, null, "{\"id\":2,\"name\":\"bob\",\"score\":null,\"active\":false,\"tags\":[]}",
+                        Map.of(), 7L, 1),
+                new Message(1_003L, "user-3", "not json at all", Map.of("a", "b", "c", "d"))
+        );
+
+        List<Message> decoded = serializer.deserializeBatch(serializer.serializeBatch(messages));
+
+        assertThat(decoded).hasSize(3);
+        for (int i = 0; i < messages.size(); i++) {
+            assertThat(decoded.get(i).getTimestamp()).isEqualTo(messages.get(i).getTimestamp());
+            assertThat(decoded.get(i).getKey()).isEqualTo(messages.get(i).getKey());
+            assertThat(decoded.get(i).getValue()).isEqualTo(messages.get(i).getValue());
+            assertThat(decoded.get(i).getHeaders()).isEqualTo(messages.get(i).getHeaders());
+            assertThat(decoded.get(i).getProducerId()).isEqualTo(messages.get(i).getProducerId());
+            assertThat(decoded.get(i).getSequence()).isEqualTo(messages.get(i).getSequence());
+        }
+    }
+
+    @Test
+    void testValuesJacksonWouldReformatAreKeptVerbatim() {
+        List<Message> messages = List.of(
+                createJsonMessage("{\"id\":1,\"name\":\"alice\"}"),
+                createJsonMessage("{ \"id\": 2, \"name\": \"bob\" }"),
+                createJsonMessage("{\"id\":3,\"name\":\"caf\\u00e9\"}"),
+                createJsonMessage("{\"name\":\"carol\",\"id\":4}"),
+                createJsonMessage("{\"id\":\"five\",\"name\":\"dave\"}")
+        );
+
+        List<Message> decoded = serializer.deserializeBatch(serializer.serializeBatch(messages));
+
+        assertThat(decoded).extracting(Message::getValue)
+                .containsExactlyElementsOf(messages.stream().map(Message::getValue).toList());
+    }
+
+    @Test
+    void testProjectionReturnsOnlySelectedFields() {
+        List<Message> messages = List.of(
+                createJsonMessage("{\"id\":1,\"name\":\"alice\",\"country\":\"uk\"}"),
+                createJsonMessage("{\"id\":2,\"name\":\"bob\",\"country\":\"fr\"}"),
+                createJsonMessage("{ \"id\": 3, \"name\": \"carol\", \"country\": \"de\" }")
+        );
+
+        List<Message> decoded = serializer.deserializeBatch(serializer.serializeBatch(messages), Set.of("id", "country"));
+
+        assertThat(decoded).extracting(Message::getValue).containsExactly(
+                "{\"id\":1,\"country\":\"uk\"}",
+                "{\"id\":2,\"country\":\"fr\"}",
+                "{\"id\":3,\"country\":\"de\"}");
+    }
+
+    @Test
+    void testRepetitiveBatchIsSmallerThanBinaryEncoding() {
+        List<Message> messages = new ArrayList<>();
+        for (int i = 0; i < 1_000; i++) {
+            messages.add(new Message(1_700_000_000_000L + i, "device-" + (i % 10),
+                    "{\"deviceId\":" + (i % 10) + ",\"status\":\"" + (i % 2 == 0 ? "ok" : "degraded")
+                            + "\",\"reading\":" + (1000 + i) + "}",
+                    Map.of("source", "sensor")));
+        }
+
+        BinaryMessageSerializer binary = new BinaryMessageSerializer();
+        int binarySize = messages.stream().mapToInt(message -> binary.serialize(message).length).sum();
+        byte[] columnar = serializer.serializeBatch(messages);
+
+        assertThat(columnar.length).isLessThan(binarySize / 5);
+        assertThat(serializer.deserializeBatch(columnar).get(999).getValue()).isEqualTo(messages.get(999).getValue());
+    }
+
+    @Test
+    void testRoundTripPreservesTransactionalAttributes() {
+        Message transactional = new Message(1_000L, "key", "{\"id\":1}", Map.of(), 7L, 0);
+        transactional.setTransactional(true);
+        List<Message> messages = List.of(
+                transactional,
+                new Message(1_001L, "key", "{\"id\":2}", Map.of(), 8L, 0),
+                Message.controlRecord(7L, ControlRecordType.COMMIT),
+                Message.controlRecord(9L, ControlRecordType.ABORT)
+        );
+
+        List<Message> decoded = serializer.deserializeBatch(serializer.serializeBatch(messages));
+
+        assertThat(decoded).extracting(Message::isTransactional).containsExactly(true, false, false, false);
+        assertThat(decoded).extracting(Message::getControlType)
+                .containsExactly(null, null, ControlRecordType.COMMIT, ControlRecordType.ABORT);
+        assertThat(decoded.get(3).getProducerId()).isEqualTo(9L);
+    }
+
+    @Test
+    void testRejectsForeignBytes() {
+        assertThatThrownBy(() -> serializer.deserializeBatch(new byte[]{1, 2, 3}))
+                .isInstanceOf(SerializationException.class);
+    }
+
+    private Message createJsonMessage(String value) {
+        return new Message(System.currentTimeMillis(), "key", value, Map.of());
+    }
+}
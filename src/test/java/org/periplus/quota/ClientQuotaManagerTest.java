@@ -0,0 +1,156 @@
+package org.periplus.quota;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.periplus.config.BrokerConfig;
+import org.periplus.network.serialization.BinaryMessageSerializer;
+import org.periplus.replication.InMemoryReplicationTransport;
+import org.periplus.replication.Replica;
+import org.periplus.storage.Message;
+import org.periplus.storage.OffsetEntry;
+import org.periplus.storage.PartitionLog;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ClientQuotaManagerTest {
+    @TempDir
+    Path tempDir;
+    private BrokerConfig config;
+    private AtomicLong clock;
+    private ClientQuotaManager quotas;
+
+    @BeforeEach
+    void setUp() {
+        config = new BrokerConfig.Builder()
+                .brokerId(1)
+                .listenAddress("localhost:9092")
+                .maxIndexEntries(10_000)
+                .quotaProduceBytesPerSecond(1000)
+                .quotaRequestsPerSecond(100)
+                .quotaBurstMs(1000)
+                .quotaMaxThrottleMs(5000)
+                .connectionMaxInFlightBytes(1024)
+                .build();
+        clock = new AtomicLong(0);
+        quotas = new ClientQuotaManager(config, clock::get);
+    }
+
+    @Test
+    @DisplayName("Should not throttle within the burst and delay in proportion to the excess")
+    void testThrottleTimeGrowsWithExcess() {
+        assertThat(quotas.recordProduce("client-a", 1000)).isZero();
+        assertThat(quotas.recordProduce("client-a", 500)).isEqualTo(500);
+
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(1500));
+        assertThat(quotas.recordProduce("client-a", 1000)).isZero();
+    }
+
+    @Test
+    @DisplayName("Should cap the throttle time")
+    void testThrottleTimeIsCapped() {
+        assertThat(quotas.recordProduce("client-a", 1_000_000)).isEqualTo(5000);
+    }
+
+    @Test
+    @DisplayName("Should not carry debt beyond the throttle cap")
+    void testDebtIsCapped() {
+        assertThat(quotas.recordProduce("client-a", 1_000_000)).isEqualTo(5000);
+
+        // burst plus the capped throttle time repays everything that is owed
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(6000));
+        assertThat(quotas.recordProduce("client-a", 1000)).isZero();
+    }
+
+    @Test
+    @DisplayName("Should forget clients that have been idle with full buckets")
+    void testIdleClientsAreEvicted() {
+        quotas.recordProduce("gone", 100);
+
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(config.quotaClientIdleMs()));
+        quotas.recordProduce("active", 100);
+
+        assertThat(quotas.allMetrics()).containsOnlyKeys("active");
+    }
+
+    @Test
+    @DisplayName("Should keep quotas separate per client ID")
+    void testClientsAreIsolated() {
+        quotas.recordProduce("greedy", 10_000);
+
+        assertThat(quotas.recordProduce("polite", 100)).isZero();
+        assertThat(quotas.allMetrics()).containsOnlyKeys("greedy", "polite");
+    }
+
+    @Test
+    @DisplayName("Should throttle on request rate regardless of size")
+    void testRequestRateQuota() {
+        for (int i = 0; i < 100; i++) {
+            assertThat(quotas.recordFetch("client-a", 0)).isZero();
+        }
+        assertThat(quotas.recordFetch("client-a", 0)).isEqualTo(10);
+    }
+
+    @Test
+    @DisplayName("Should expose usage and throttling as metrics")
+    void testMetrics() {
+        quotas.recordProduce("client-a", 1200);
+        quotas.recordFetch("client-a", 300);
+
+        QuotaMetrics metrics = quotas.metrics("client-a");
+
+        assertThat(metrics.produceBytes()).isEqualTo(1200);
+        assertThat(metrics.fetchBytes()).isEqualTo(300);
+        assertThat(metrics.requests()).isEqualTo(2);
+        assertThat(metrics.throttledRequests()).isEqualTo(1);
+        assertThat(metrics.throttleTimeMs()).isEqualTo(200);
+        assertThat(metrics.produceBytesAvailable()).isEqualTo(-200);
+        assertThat(metrics.fetchBytesAvailable()).isEqualTo(Long.MAX_VALUE);
+    }
+
+    @Test
+    @DisplayName("Should delay produce responses and hold their bytes in the connection budget")
+    void testThrottledProduceHoldsBudget() throws Exception {
+        PartitionLog log = new PartitionLog(tempDir.resolve("partition-0"), config);
+        Replica replica = new Replica(config, log, new InMemoryReplicationTransport());
+        replica.becomeLeader(Set.of());
+        ClientQuotaManager realClock = new ClientQuotaManager(config);
+        ClientConnection connection = new ClientConnection("client-a", config);
+        Message message = new Message(1L, "key", "x".repeat(700), Map.of());
+        int size = new BinaryMessageSerializer().serializedSize(message);
+
+        try (ThrottledRequestHandler handler = new ThrottledRequestHandler(replica, realClock)) {
+            CompletableFuture<OffsetEntry> first = handler.produce(connection, message);
+            CompletableFuture<OffsetEntry> second = handler.produce(connection, message);
+
+            assertThat(first).isCompleted();
+            assertThat(second).isNotDone();
+            assertThat(connection.getBudget().getInFlightBytes()).isEqualTo(size);
+            assertThat(second.get(5, TimeUnit.SECONDS).logicalOffset()).isEqualTo(1);
+            assertThat(connection.getBudget().getInFlightBytes()).isZero();
+            assertThat(log.getLogEndOffset()).isEqualTo(2);
+        } finally {
+            replica.close();
+            log.close();
+        }
+    }
+
+    @Test
+    @DisplayName("Should compute the serialized size without serializing")
+    void testSerializedSize() {
+        BinaryMessageSerializer serializer = new BinaryMessageSerializer();
+        Message message = new Message(1L, "ключ", "value 😀", Map.of("h", "é"), 7L, 3);
+
+        assertThat(serializer.serializedSize(message)).isEqualTo(serializer.serialize(message).length);
+    }
+}
@@ -0,0 +1,131 @@
+package org.periplus.replication;
+
+import org.periplus.config.BrokerConfig;
+import org.periplus.storage.PartitionLog;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Collectors;
+
+/**
+ * Runs several brokers' replicas of a single partition inside one JVM, wired together with an
+ * {@link InMemoryReplicationTransport}, so replication and failover can be exercised in tests.
+ */
+class LocalCluster implements AutoCloseable {
+    private final List<FetchRequest> fetches = new CopyOnWriteArrayList<>();
+    private final InMemoryReplicationTransport transport = new InMemoryReplicationTransport() {
+        @Override
+        public CompletableFuture<FetchResponse> fetch(int leaderId, FetchRequest request) {
+            fetches.add(request);
+            return super.fetch(leaderId, request);
+        }
+    };
+    private final Map<Integer, Replica> replicas = new TreeMap<>();
+
+    LocalCluster(Path dataRoot, int brokerCount, long segmentSizeBytes) throws IOException {
+        for (int brokerId = 0; brokerId < brokerCount; brokerId++) {
+            BrokerConfig config = new BrokerConfig.Builder()
+                    .brokerId(brokerId)
+                    .listenAddress("localhost:" + (9092 + brokerId))
+                    .dataDirectory(dataRoot.resolve("broker-" + brokerId).toString())
+                    .segmentSizeBytes(segmentSizeBytes)
+                    .maxIndexEntries(100_000)
+                    .replicaFetchMaxMessages(64)
+                    .replicaFetchMaxInFlight(4)
+                    .replicaFetchBackoffMs(1)
+                    .build();
+            PartitionLog log = new PartitionLog(Path.of(config.dataDirectory()).resolve("partition-0"), config);
+            Replica replica = new Replica(config, log, transport);
+            transport.register(replica);
+            replicas.put(brokerId, replica);
+        }
+    }
+
+    void electLeader(int leaderId) throws IOException {
+        Set<Integer> followers = replicas.keySet().stream()
+                .filter(id -> id != leaderId)
+                .collect(Collectors.toSet());
+        replicas.get(leaderId).becomeLeader(followers);
+        for (int followerId : followers) {
+            replicas.get(followerId).becomeFollower(leaderId);
+        }
+    }
+
+    /**
+     * Elects the surviving replica with the longest log, which always holds every message below
+     * the old leader's high watermark.
+     */
+    int failover() throws IOException {
+        int newLeader = replicas.values().stream()
+                .max(Comparator.comparingLong(replica -> replica.getLog().getLogEndOffset()))
+                .orElseThrow()
+                .getBrokerId();
+        electLeader(newLeader);
+        return newLeader;
+    }
+
+    void kill(int brokerId) throws IOException {
+        transport.unregister(brokerId);
+        Replica replica = replicas.remove(brokerId);
+        replica.close();
+        replica.getLog().close();
+    }
+
+    Replica leader() {
+        return replicas.values().stream()
+                .filter(Replica::isLeader)
+                .findFirst()
+                .orElseThrow();
+    }
+
+    Replica replica(int brokerId) {
+        return replicas.get(brokerId);
+    }
+
+    /**
+     * Every fetch the followers have sent, oldest first.
+     */
+    List<FetchRequest> fetches() {
+        return fetches;
+    }
+
+    void awaitHighWatermark(long offset, long timeoutMs) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        while (System.currentTimeMillis() < deadline) {
+            boolean replicated = replicas.values().stream()
+                    .allMatch(replica -> replica.getLog().getHighWatermark() >= offset);
+            if (replicated) {
+                return;
+            }
+            Thread.sleep(1);
+        }
+        throw new AssertionError("high watermark did not reach " + offset + " within " + timeoutMs + "ms");
+    }
+
+    void awaitFetches(int count, long timeoutMs) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        while (System.currentTimeMillis() < deadline) {
+            if (fetches.size() >= count) {
+                return;
+            }
+            Thread.sleep(1);
+        }
+        throw new AssertionError("only " + fetches.size() + " of " + count + " fetches were sent within " + timeoutMs + "ms");
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (Replica replica : replicas.values()) {
+            replica.close();
+            replica.getLog().close();
+        }
+        transport.close();
+    }
+}
@@ -0,0 +1,175 @@
+package org.periplus.replication;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.periplus.storage.Message;
+import org.periplus.storage.ReadResult;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ReplicationTest {
+    private static final long TIMEOUT_MS = 10_000;
+
+    @TempDir
+    Path tempDir;
+    private LocalCluster cluster;
+
+    @AfterEach
+    void tearDown() throws IOException {
+        if (cluster != null) {
+            cluster.close();
+        }
+    }
+
+    @Test
+    @DisplayName("Followers should copy the leader's log and advance the high watermark")
+    void testFollowersReplicateLeaderLog() throws Exception {
+        cluster = new LocalCluster(tempDir, 3, 1024 * 1024);
+        cluster.electLeader(0);
+
+        for (int i = 0; i < 100; i++) {
+            cluster.leader().append(createTestMessage("key" + i, "value" + i));
+        }
+        cluster.awaitHighWatermark(100, TIMEOUT_MS);
+
+        for (int brokerId = 0; brokerId < 3; brokerId++) {
+            ReadResult result = cluster.replica(brokerId).getLog().readFrom(0, 1000);
+            assertThat(result.messages()).hasSize(100);
+            assertThat(result.messages().get(42).getKey()).isEqualTo("key42");
+            assertThat(result.messages().get(99).getValue()).isEqualTo("value99");
+        }
+    }
+
+    @Test
+    @DisplayName("Consumers should only see messages below the high watermark")
+    void testHighWatermarkGatesConsumerReads() throws Exception {
+        cluster = new LocalCluster(tempDir, 2, 1024 * 1024);
+        cluster.electLeader(0);
+        cluster.kill(1);
+
+        Replica leader = cluster.leader();
+        leader.append(createTestMessage("key", "value"));
+
+        // the follower is gone but still counts as in-sync until replica.lag.time.max.ms passes
+        assertThat(leader.getLog().getLogEndOffset()).isEqualTo(1);
+        assertThat(leader.getLog().getHighWatermark()).isZero();
+        assertThat(leader.fetchForConsumer(0, 10).messages()).isEmpty();
+    }
+
+    @Test
+    @DisplayName("Appends should be rejected by followers")
+    void testFollowerRejectsAppends() throws IOException {
+        cluster = new LocalCluster(tempDir, 2, 1024 * 1024);
+        cluster.electLeader(0);
+
+        assertThatThrownBy(() -> cluster.replica(1).append(createTestMessage("key", "value")))
+                .isInstanceOf(ReplicationException.class);
+    }
+
+    @Test
+    @DisplayName("Committed messages should survive leader failover")
+    void testFailoverPreservesCommittedMessages() throws Exception {
+        cluster = new LocalCluster(tempDir, 3, 1024 * 1024);
+        cluster.electLeader(0);
+
+        for (int i = 0; i < 50; i++) {
+            cluster.leader().append(createTestMessage("key" + i, "before" + i));
+        }
+        cluster.awaitHighWatermark(50, TIMEOUT_MS);
+
+        cluster.kill(0);
+        int newLeader = cluster.failover();
+        assertThat(newLeader).isNotZero();
+
+        for (int i = 0; i < 50; i++) {
+            cluster.leader().append(createTestMessage("key" + i, "after" + i));
+        }
+        cluster.awaitHighWatermark(100, TIMEOUT_MS);
+
+        ReadResult result = cluster.leader().fetchForConsumer(0, 1000);
+        assertThat(result.messages()).hasSize(100);
+        assertThat(result.messages().get(49).getValue()).isEqualTo("before49");
+        assertThat(result.messages().get(50).getValue()).isEqualTo("after0");
+    }
+
+    @Test
+    @DisplayName("Pipelined fetches should replicate across segment rolls")
+    void testReplicationAcrossSegments() throws Exception {
+        // small segments force the leader to roll several times while followers fetch
+        cluster = new LocalCluster(tempDir, 3, 4 * 1024);
+        cluster.electLeader(0);
+
+        int messageCount = 5_000;
+        for (int i = 0; i < messageCount; i++) {
+            cluster.leader().append(createTestMessage("key" + i, "value" + i));
+        }
+        cluster.awaitHighWatermark(messageCount, TIMEOUT_MS);
+
+        ReadResult result = cluster.replica(2).getLog().readFrom(0, messageCount);
+        assertThat(result.messages()).hasSize(messageCount);
+        for (int i = 0; i < messageCount; i += 997) {
+            assertThat(result.messages().get(i).getValue()).isEqualTo("value" + i);
+        }
+    }
+
+    @Test
+    @DisplayName("A follower whose log ran past the new leader's should truncate and follow it")
+    void testFollowerTruncatesDivergentTail() throws Exception {
+        cluster = new LocalCluster(tempDir, 2, 1024);
+        cluster.electLeader(0);
+        for (int i = 0; i < 30; i++) {
+            cluster.leader().append(createTestMessage("key" + i, "value" + i));
+        }
+        cluster.awaitHighWatermark(30, TIMEOUT_MS);
+
+        // broker 1 stops fetching, so the rest of broker 0's appends are never replicated
+        cluster.replica(1).becomeLeader(Set.of());
+        Replica oldLeader = cluster.replica(0);
+        for (int i = 30; i < 90; i++) {
+            oldLeader.append(createTestMessage("key" + i, "lost" + i));
+        }
+        assertThat(oldLeader.getLog().getLogEndOffset()).isEqualTo(90);
+
+        cluster.electLeader(1);
+        for (int i = 30; i < 40; i++) {
+            cluster.leader().append(createTestMessage("key" + i, "value" + i));
+        }
+        cluster.awaitHighWatermark(40, TIMEOUT_MS);
+
+        ReadResult result = oldLeader.getLog().readFrom(0, 1000);
+        assertThat(oldLeader.getLog().getLogEndOffset()).isEqualTo(40);
+        assertThat(result.messages()).hasSize(40);
+        for (int i = 0; i < 40; i++) {
+            assertThat(result.messages().get(i).getValue()).isEqualTo("value" + i);
+        }
+    }
+
+    @Test
+    @DisplayName("A caught-up follower should not fetch windows past the leader's end")
+    void testCaughtUpFollowerDoesNotPipeline() throws Exception {
+        cluster = new LocalCluster(tempDir, 2, 1024 * 1024);
+        cluster.electLeader(0);
+        for (int i = 0; i < 10; i++) {
+            cluster.leader().append(createTestMessage("key" + i, "value" + i));
+        }
+        cluster.awaitHighWatermark(10, TIMEOUT_MS);
+        int fetchesWhenCaughtUp = cluster.fetches().size();
+
+        // the follower keeps polling the idle leader
+        cluster.awaitFetches(fetchesWhenCaughtUp + 5, TIMEOUT_MS);
+
+        assertThat(cluster.fetches()).allSatisfy(request -> assertThat(request.fetchOffset()).isLessThanOrEqualTo(10));
+    }
+
+    private Message createTestMessage(String key, String value) {
+        return new Message(System.currentTimeMillis(), key, value, new HashMap<>());
+    }
+}
@@ -0,0 +1,139 @@
+package org.periplus.storage;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.periplus.config.BrokerConfig;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class FetchFilterTest {
+    @TempDir
+    Path tempDir;
+    private PartitionLog log;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        BrokerConfig config = new BrokerConfig.Builder()
+                .brokerId(1)
+                .listenAddress("localhost:9092")
+                .segmentSizeBytes(4 * 1024)
+                .maxIndexEntries(10_000)
+                .build();
+        log = new PartitionLog(tempDir.resolve("partition-0"), config);
+
+        for (int i = 0; i < 300; i++) {
+            String region = i % 3 == 0 ? "eu" : "us";
+            log.append(new Message(1_000L + i, (i % 2 == 0 ? "order-" : "refund-") + i, "value" + i,
+                    Map.of("region", region, "type", "event")));
+        }
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        log.close();
+    }
+
+    @Test
+    @DisplayName("Should return only messages whose key has the prefix")
+    void testKeyPrefixFilter() throws IOException {
+        ReadResult result = log.readFrom(0, 1000, log.getLogEndOffset(), FetchFilter.keyPrefix("refund-"));
+
+        assertThat(result.messages()).hasSize(150);
+        assertThat(result.messages()).allMatch(message -> message.getKey().startsWith("refund-"));
+        assertThat(result.nextOffset()).isEqualTo(300);
+    }
+
+    @Test
+    @DisplayName("Should match header name and value exactly")
+    void testHeaderEqualsFilter() throws IOException {
+        ReadResult result = log.readFrom(0, 1000, log.getLogEndOffset(), FetchFilter.headerEquals("region", "eu"));
+
+        assertThat(result.messages()).hasSize(100);
+        assertThat(result.messages()).allMatch(message -> message.getHeaders().get("region").equals("eu"));
+        assertThat(log.readFrom(0, 1000, log.getLogEndOffset(), FetchFilter.headerEquals("region", "e")).messages()).isEmpty();
+    }
+
+    @Test
+    @DisplayName("Should combine filters and respect the timestamp range")
+    void testCombinedFilters() throws IOException {
+        FetchFilter filter = FetchFilter.timestampBetween(1_100L, 1_200L)
+                .and(FetchFilter.headerEquals("region", "eu"))
+                .and(FetchFilter.keyPrefix("order-"));
+
+        ReadResult result = log.readFrom(0, 1000, log.getLogEndOffset(), filter);
+
+        // offsets 100..199 divisible by 6
+        assertThat(result.messages()).extracting(Message::getValue)
+                .containsExactly("value102", "value108", "value114", "value120", "value126", "value132", "value138",
+                        "value144", "value150", "value156", "value162", "value168", "value174", "value180",
+                        "value186", "value192", "value198");
+    }
+
+    @Test
+    @DisplayName("Should report where to resume when the match limit is reached")
+    void testNextOffsetAfterMaxCount() throws IOException {
+        FetchFilter filter = FetchFilter.headerEquals("region", "eu");
+
+        ReadResult first = log.readFrom(0, 5, log.getLogEndOffset(), filter);
+        ReadResult second = log.readFrom(first.nextOffset(), 5, log.getLogEndOffset(), filter);
+
+        assertThat(first.messages()).extracting(Message::getValue)
+                .containsExactly("value0", "value3", "value6", "value9", "value12");
+        assertThat(first.nextOffset()).isEqualTo(13);
+        assertThat(second.messages().get(0).getValue()).isEqualTo("value15");
+    }
+
+    @Test
+    @DisplayName("Should stop scanning at the max offset")
+    void testScanStopsAtMaxOffset() throws IOException {
+        ReadResult result = log.readFrom(0, 1000, 10, FetchFilter.keyPrefix("refund-"));
+
+        assertThat(result.messages()).hasSize(5);
+        assertThat(result.nextOffset()).isEqualTo(10);
+    }
+
+    @Test
+    @DisplayName("Should return where to resume when the scan budget runs out before anything matches")
+    void testScanBudgetBoundsFilteredFetch() throws IOException {
+        BrokerConfig config = new BrokerConfig.Builder()
+                .brokerId(1)
+                .listenAddress("localhost:9092")
+                .segmentSizeBytes(4 * 1024)
+                .maxIndexEntries(10_000)
+                .fetchMaxScanBytes(1024)
+                .build();
+        try (PartitionLog budgeted = new PartitionLog(tempDir.resolve("partition-1"), config)) {
+            for (int i = 0; i < 300; i++) {
+                budgeted.append(new Message(1_000L + i, "order-" + i, "value" + i, Map.of()));
+            }
+            budgeted.append(new Message(2_000L, "refund-300", "value300", Map.of()));
+            FetchFilter filter = FetchFilter.keyPrefix("refund-");
+
+            ReadResult first = budgeted.readFrom(0, 10, budgeted.getLogEndOffset(), filter);
+            assertThat(first.messages()).isEmpty();
+            assertThat(first.nextOffset()).isPositive().isLessThan(300);
+
+            List<Message> matched = new ArrayList<>();
+            long offset = first.nextOffset();
+            int fetches = 1;
+            while (offset < budgeted.getLogEndOffset()) {
+                ReadResult result = budgeted.readFrom(offset, 10, budgeted.getLogEndOffset(), filter);
+                assertThat(result.nextOffset()).isGreaterThan(offset);
+                matched.addAll(result.messages());
+                offset = result.nextOffset();
+                fetches++;
+            }
+            assertThat(matched).extracting(Message::getValue).containsExactly("value300");
+            assertThat(fetches).isGreaterThan(1);
+        }
+    }
+}
@@ -4,6 +4,7 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Arrays;
@@ -27,7 +28,9 @@ public class LogFileTest {
         byte[] bytes = new byte[1024];
         Arrays.fill(bytes, (byte) 'a');
         logFile.append(bytes);
-        byte[] bytesReadFromFile = logFile.readBytesAtPosition(0, 1024);
-        assertArrayEquals(bytes, bytesReadFromFile);
+        ByteBuffer bytesReadFromFile = ByteBuffer.allocate(2048);
+        assertEquals(1024, logFile.read(0, bytesReadFromFile));
+        assertArrayEquals(bytes, Arrays.copyOf(bytesReadFromFile.array(), 1024));
+        assertEquals(0, logFile.read(1024, ByteBuffer.allocate(16)));
     }
 }
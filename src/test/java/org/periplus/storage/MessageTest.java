@@ -7,6 +7,8 @@ import org.periplus.network.serialization.MessageSerializer;
 import java.util.Map;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class MessageTest {
     @Test
@@ -39,4 +41,19 @@ public class MessageTest {
 
 
     }
+
+    @Test
+    public void testTransactionAttributesRoundTrip() {
+        MessageSerializer serializer = new BinaryMessageSerializer();
+        Message data = new Message(123L, "key", "data", Map.of(), 7L, 0);
+        data.setTransactional(true);
+
+        Message decodedData = serializer.deserialize(serializer.serialize(data));
+        Message decodedMarker = serializer.deserialize(serializer.serialize(Message.controlRecord(7L, ControlRecordType.ABORT)));
+
+        assertTrue(decodedData.isTransactional());
+        assertFalse(decodedData.isControl());
+        assertEquals(ControlRecordType.ABORT, decodedMarker.getControlType());
+        assertEquals(7L, decodedMarker.getProducerId());
+    }
 }
@@ -0,0 +1,262 @@
+package org.periplus.storage;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.periplus.config.BrokerConfig;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PartitionLogTest {
+    private static final long SEGMENT_SIZE_BYTES = 4 * 1024;
+
+    @TempDir
+    Path tempDir;
+    private Path partitionDir;
+    private BrokerConfig config;
+    private BrokerConfig preallocatingConfig;
+    private PartitionLog log;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        partitionDir = tempDir.resolve("partition-0");
+        config = new BrokerConfig.Builder()
+                .brokerId(1)
+                .listenAddress("localhost:9092")
+                .segmentSizeBytes(SEGMENT_SIZE_BYTES)
+                .maxIndexEntries(10_000)
+                .build();
+        log = new PartitionLog(partitionDir, config);
+        preallocatingConfig = new BrokerConfig.Builder()
+                .brokerId(1)
+                .listenAddress("localhost:9092")
+                .segmentSizeBytes(SEGMENT_SIZE_BYTES)
+                .maxIndexEntries(10_000)
+                .preallocate(true)
+                .build();
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        log.close();
+    }
+
+    @Test
+    @DisplayName("Should roll into new segments and read across them")
+    void testReadAcrossSegments() throws IOException {
+        appendMessages(500);
+
+        assertThat(segmentDirectories()).hasSizeGreaterThan(1);
+        List<Message> messages = log.readFrom(0, 1000).messages();
+        assertThat(messages).hasSize(500);
+        assertThat(messages.get(123).getValue()).isEqualTo("value123");
+        assertThat(log.readFrom(480, 1000).messages().get(0).getValue()).isEqualTo("value480");
+    }
+
+    @Test
+    @DisplayName("Should create the first segment in place and preallocate the next ones in the background")
+    void testRolledSegmentsArePreallocated() throws IOException {
+        Path directory = tempDir.resolve("preallocated");
+        try (PartitionLog preallocated = new PartitionLog(directory, preallocatingConfig)) {
+            preallocated.append(createTestMessage("key", "value"));
+            assertThat(Files.size(directory.resolve("segment-0000000000000000").resolve("log"))).isLessThan(SEGMENT_SIZE_BYTES);
+
+            appendUntilRolled(preallocated, directory);
+            assertThat(Files.size(lastSegment(directory).resolve("log"))).isEqualTo(SEGMENT_SIZE_BYTES);
+        }
+    }
+
+    @Test
+    @DisplayName("Should trim rolled segments and drop the pending segment on close")
+    void testSegmentsAreTrimmedOnClose() throws IOException {
+        Path directory = tempDir.resolve("preallocated");
+        try (PartitionLog preallocated = new PartitionLog(directory, preallocatingConfig)) {
+            for (int i = 0; i < 500; i++) {
+                preallocated.append(createTestMessage("key" + i, "value" + i));
+            }
+        }
+
+        for (Path segment : segmentDirectories(directory)) {
+            assertThat(Files.size(segment.resolve("log"))).isLessThan(SEGMENT_SIZE_BYTES + 1024);
+        }
+        assertThat(Files.size(lastSegment(directory).resolve("log"))).isLessThan(SEGMENT_SIZE_BYTES);
+        assertThat(directory.resolve(PreparedSegment.PENDING_DIRECTORY)).doesNotExist();
+
+        try (PartitionLog reopened = new PartitionLog(directory, preallocatingConfig)) {
+            assertThat(reopened.getLogEndOffset()).isEqualTo(500);
+        }
+    }
+
+    @Test
+    @DisplayName("Should find the end of an untrimmed preallocated segment after a crash")
+    void testRecoversEndOfPreallocatedSegment() throws IOException {
+        Path directory = tempDir.resolve("preallocated");
+        Path crashed = tempDir.resolve("crashed");
+        long logEndOffset;
+        try (PartitionLog preallocated = new PartitionLog(directory, preallocatingConfig)) {
+            appendUntilRolled(preallocated, directory);
+            logEndOffset = preallocated.getLogEndOffset();
+            // a copy of the open log is what the disk holds if the broker dies before trimming
+            copyDirectory(directory, crashed);
+        }
+        assertThat(Files.size(lastSegment(crashed).resolve("log"))).isEqualTo(SEGMENT_SIZE_BYTES);
+
+        try (PartitionLog recovered = new PartitionLog(crashed, preallocatingConfig)) {
+            assertThat(recovered.getLogEndOffset()).isEqualTo(logEndOffset);
+            recovered.append(createTestMessage("key", "after-crash"));
+            assertThat(recovered.readFrom(logEndOffset, 1).messages().get(0).getValue()).isEqualTo("after-crash");
+        }
+    }
+
+    @Test
+    @DisplayName("Should append flushed index entries and checkpoint the recovery point")
+    void testFlushCheckpointsRecoveryPoint() throws IOException {
+        appendMessages(500);
+        log.flush();
+
+        assertThat(log.getRecoveryPoint().offset()).isEqualTo(500);
+        assertThat(partitionDir.resolve("recovery-point")).exists();
+        assertThat(indexedEntries(partitionDir)).isEqualTo(500);
+    }
+
+    @Test
+    @DisplayName("Should rebuild only what was appended after the last checkpoint")
+    void testRecoversFromCheckpoint() throws IOException {
+        // no roll and no periodic flush may move the checkpoint past the explicit flush
+        BrokerConfig largeSegments = new BrokerConfig.Builder()
+                .brokerId(1)
+                .listenAddress("localhost:9092")
+                .segmentSizeBytes(1024 * 1024)
+                .maxIndexEntries(10_000)
+                .flushIntervalMs(60_000)
+                .build();
+        Path source = tempDir.resolve("partition-1");
+        Path crashed = tempDir.resolve("crashed");
+        try (PartitionLog original = new PartitionLog(source, largeSegments)) {
+            for (int i = 0; i < 350; i++) {
+                original.append(createTestMessage("key" + i, "value" + i));
+                if (i == 299) {
+                    original.flush();
+                }
+            }
+            // a copy taken now is what the disk holds if the broker dies before the next flush
+            copyDirectory(source, crashed);
+        }
+        assertThat(indexedEntries(crashed)).isEqualTo(300);
+
+        try (PartitionLog recovered = new PartitionLog(crashed, largeSegments)) {
+            assertThat(recovered.getRecoveryPoint().offset()).isEqualTo(300);
+            assertThat(recovered.getLogEndOffset()).isEqualTo(350);
+            List<Message> messages = recovered.readFrom(0, 1000).messages();
+            assertThat(messages).hasSize(350);
+            assertThat(messages.get(320).getValue()).isEqualTo("value320");
+
+            recovered.flush();
+            assertThat(indexedEntries(crashed)).isEqualTo(350);
+        }
+    }
+
+    @Test
+    @DisplayName("Should drop a torn index entry left by a crash mid-append")
+    void testTornIndexEntryIsDropped() throws IOException {
+        appendMessages(20);
+        log.close();
+        Path index = segmentDirectories().get(0).resolve("index");
+        Files.write(index, new byte[7], StandardOpenOption.APPEND);
+
+        log = new PartitionLog(partitionDir, config);
+
+        assertThat(Files.size(index) % 16).isZero();
+        assertThat(log.getLogEndOffset()).isEqualTo(20);
+        assertThat(log.readFrom(19, 1).messages().get(0).getValue()).isEqualTo("value19");
+    }
+
+    @ParameterizedTest
+    @DisplayName("Should drop a torn record whose length prefix points past the end of the file")
+    @ValueSource(ints = {Integer.MAX_VALUE, 1_500_000_000, 64})
+    void testCorruptTailLengthIsDropped(int length) throws IOException {
+        appendMessages(20);
+        log.close();
+        Path activeLog = segmentDirectories().get(segmentDirectories().size() - 1).resolve("log");
+        long dataSize = Files.size(activeLog);
+        Files.write(activeLog, ByteBuffer.allocate(Integer.BYTES).putInt(length).array(), StandardOpenOption.APPEND);
+
+        log = new PartitionLog(partitionDir, config);
+
+        assertThat(log.getLogEndOffset()).isEqualTo(20);
+        log.append(createTestMessage("key", "after-crash"));
+        assertThat(log.readFrom(19, 2).messages()).extracting(Message::getValue).containsExactly("value19", "after-crash");
+        log.close();
+        assertThat(Files.size(activeLog)).isGreaterThan(dataSize + Integer.BYTES);
+        log = new PartitionLog(partitionDir, config);
+        assertThat(log.getLogEndOffset()).isEqualTo(21);
+    }
+
+    private void appendMessages(int count) throws IOException {
+        for (int i = 0; i < count; i++) {
+            log.append(createTestMessage("key" + i, "value" + i));
+        }
+    }
+
+    // appends until the log has rolled into a second segment, which comes from the preparer
+    private void appendUntilRolled(PartitionLog partitionLog, Path directory) throws IOException {
+        partitionLog.awaitNextSegment();
+        for (int i = 0; segmentDirectories(directory).size() < 2; i++) {
+            partitionLog.append(createTestMessage("key" + i, "value" + i));
+        }
+    }
+
+    private Path lastSegment(Path directory) throws IOException {
+        List<Path> segments = segmentDirectories(directory);
+        return segments.get(segments.size() - 1);
+    }
+
+    private long indexedEntries(Path partition) throws IOException {
+        try (var files = Files.walk(partition)) {
+            long bytes = 0;
+            for (Path file : (Iterable<Path>) files::iterator) {
+                if (file.getFileName().toString().equals("index") && file.getParent().getFileName().toString().matches("segment-\\d{16}")) {
+                    bytes += Files.size(file);
+                }
+            }
+            return bytes / 16;
+        }
+    }
+
+    private static void copyDirectory(Path source, Path target) throws IOException {
+        try (var files = Files.walk(source)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.copy(file, target.resolve(source.relativize(file).toString()));
+            }
+        }
+    }
+
+    private List<Path> segmentDirectories() throws IOException {
+        return segmentDirectories(partitionDir);
+    }
+
+    private static List<Path> segmentDirectories(Path directory) throws IOException {
+        try (var children = Files.list(directory)) {
+            return children
+                    .filter(path -> path.getFileName().toString().matches("segment-\\d{16}"))
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    private Message createTestMessage(String key, String value) {
+        return new Message(System.currentTimeMillis(), key, value, new HashMap<>());
+    }
+}
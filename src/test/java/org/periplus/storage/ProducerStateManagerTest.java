@@ -0,0 +1,157 @@
+package org.periplus.storage;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.periplus.config.BrokerConfig;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.HashMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ProducerStateManagerTest {
+    private static final long PRODUCER_ID = 42L;
+
+    @TempDir
+    Path tempDir;
+    private BrokerConfig config;
+    private PartitionLog log;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        config = new BrokerConfig.Builder()
+                .brokerId(1)
+                .listenAddress("localhost:9092")
+                .maxIndexEntries(10_000)
+                .producerSequenceWindow(5)
+                .build();
+        log = new PartitionLog(tempDir.resolve("partition-0"), config);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        log.close();
+    }
+
+    @Test
+    @DisplayName("Should return the original offset when a sequence is retried")
+    void testRetriedSequenceIsDeduplicated() throws IOException {
+        OffsetEntry first = log.append(createProducerMessage(0, "value0"));
+        log.append(createProducerMessage(1, "value1"));
+        OffsetEntry retried = log.append(createProducerMessage(0, "value0"));
+
+        assertThat(retried).isEqualTo(first);
+        assertThat(log.getLogEndOffset()).isEqualTo(2);
+        assertThat(log.readFrom(0, 10).messages()).hasSize(2);
+    }
+
+    @Test
+    @DisplayName("Should reject sequences that skip ahead")
+    void testSequenceGapIsRejected() throws IOException {
+        log.append(createProducerMessage(0, "value0"));
+
+        assertThatThrownBy(() -> log.append(createProducerMessage(2, "value2")))
+                .isInstanceOf(OutOfOrderSequenceException.class);
+    }
+
+    @Test
+    @DisplayName("Should reject retries older than the sequence window")
+    void testSequenceOutsideWindowIsRejected() throws IOException {
+        for (int sequence = 0; sequence < 10; sequence++) {
+            log.append(createProducerMessage(sequence, "value" + sequence));
+        }
+
+        assertThat(log.append(createProducerMessage(6, "value6")).logicalOffset()).isEqualTo(6);
+        assertThatThrownBy(() -> log.append(createProducerMessage(2, "value2")))
+                .isInstanceOf(OutOfOrderSequenceException.class);
+    }
+
+    @Test
+    @DisplayName("Should leave messages without a producer id alone")
+    void testMessagesWithoutProducerIdAreNotDeduplicated() throws IOException {
+        Message message = new Message(System.currentTimeMillis(), "key", "value", new HashMap<>());
+
+        log.append(message);
+        log.append(message);
+
+        assertThat(log.getLogEndOffset()).isEqualTo(2);
+    }
+
+    @Test
+    @DisplayName("Should keep rejecting duplicates after a restart")
+    void testProducerStateSurvivesRestart() throws IOException {
+        OffsetEntry first = log.append(createProducerMessage(0, "value0"));
+        log.append(createProducerMessage(1, "value1"));
+        log.close();
+
+        try (PartitionLog reopened = new PartitionLog(tempDir.resolve("partition-0"), config)) {
+            assertThat(reopened.append(createProducerMessage(0, "value0")).logicalOffset()).isEqualTo(first.logicalOffset());
+            assertThatThrownBy(() -> reopened.append(createProducerMessage(5, "value5")))
+                    .isInstanceOf(OutOfOrderSequenceException.class);
+        }
+    }
+
+    @Test
+    @DisplayName("Should restore the table from a snapshot taken with a different window size")
+    void testSnapshotRoundTrip() throws IOException {
+        ProducerStateManager original = new ProducerStateManager(5, 100);
+        for (int sequence = 0; sequence < 8; sequence++) {
+            original.update(createProducerMessage(sequence, "value"), new OffsetEntry(100 + sequence, sequence * 10L));
+        }
+        Path snapshot = tempDir.resolve("producer.snapshot");
+        original.writeSnapshot(snapshot, 108);
+
+        ProducerStateManager restored = new ProducerStateManager(3, 100);
+        assertThat(restored.loadSnapshot(snapshot)).isEqualTo(108);
+        assertThat(restored.producerCount()).isEqualTo(1);
+        assertThat(restored.checkSequence(createProducerMessage(7, "value"))).contains(new OffsetEntry(107, 70));
+        assertThat(restored.checkSequence(createProducerMessage(8, "value"))).isEmpty();
+        assertThatThrownBy(() -> restored.checkSequence(createProducerMessage(4, "value")))
+                .isInstanceOf(OutOfOrderSequenceException.class);
+    }
+
+    @Test
+    @DisplayName("Should drop idle producers and let them resume at any sequence")
+    void testIdleProducersExpire() {
+        ProducerStateManager producers = new ProducerStateManager(5, 100);
+        producers.update(createProducerMessage(0, "value"), new OffsetEntry(0, 0));
+        producers.update(createProducerMessage(1, "value"), new OffsetEntry(1, 10));
+
+        producers.removeExpired(System.currentTimeMillis() - 60_000);
+        assertThat(producers.producerCount()).isEqualTo(1);
+
+        producers.removeExpired(System.currentTimeMillis() + 1);
+        assertThat(producers.producerCount()).isZero();
+        // the producer's state is gone, so it carries on without a gap being detected
+        assertThat(producers.checkSequence(createProducerMessage(5, "value"))).isEmpty();
+    }
+
+    @Test
+    @DisplayName("Should evict the least recently active producer beyond the table size")
+    void testProducerTableIsBounded() {
+        ProducerStateManager producers = new ProducerStateManager(5, 2);
+        producers.update(createProducerMessage(1L, 0), new OffsetEntry(0, 0));
+        producers.update(createProducerMessage(2L, 0), new OffsetEntry(1, 10));
+        producers.update(createProducerMessage(1L, 1), new OffsetEntry(2, 20));
+        producers.update(createProducerMessage(3L, 0), new OffsetEntry(3, 30));
+
+        assertThat(producers.producerCount()).isEqualTo(2);
+        assertThat(producers.checkSequence(createProducerMessage(1L, 1))).contains(new OffsetEntry(2, 20));
+        assertThat(producers.checkSequence(createProducerMessage(3L, 0))).contains(new OffsetEntry(3, 30));
+        // producer 2 was evicted, so its old sequence is no longer known as a duplicate
+        assertThat(producers.checkSequence(createProducerMessage(2L, 0))).isEmpty();
+    }
+
+    private Message createProducerMessage(int sequence, String value) {
+        return new Message(System.currentTimeMillis(), "key", value, new HashMap<>(), PRODUCER_ID, sequence);
+    }
+
+    private Message createProducerMessage(long producerId, int sequence) {
+        return new Message(System.currentTimeMillis(), "key", "value", new HashMap<>(), producerId, sequence);
+    }
+}
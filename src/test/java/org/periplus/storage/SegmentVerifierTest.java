@@ -0,0 +1,137 @@
+package org.periplus.storage;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.periplus.config.BrokerConfig;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SegmentVerifierTest {
+    private static final int MESSAGE_COUNT = 300;
+
+    @TempDir
+    Path tempDir;
+    private Path partitionDir;
+    private BrokerConfig config;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        partitionDir = tempDir.resolve("partition-0");
+        config = new BrokerConfig.Builder()
+                .brokerId(1)
+                .listenAddress("localhost:9092")
+                .segmentSizeBytes(4 * 1024)
+                .maxIndexEntries(10_000)
+                .build();
+        try (PartitionLog log = new PartitionLog(partitionDir, config)) {
+            for (int i = 0; i < MESSAGE_COUNT; i++) {
+                log.append(new Message(1_000L + i, "key" + i, "value" + i, new HashMap<>()));
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("Should find every record of a cleanly closed partition and a consistent index")
+    void testHealthyPartition() throws IOException {
+        List<Path> segments = segmentDirectories();
+        assertThat(segments).hasSizeGreaterThan(1);
+
+        long records = 0;
+        long expectedBase = 0;
+        for (Path segment : segments) {
+            SegmentReport report = SegmentVerifier.verify(segment, false);
+            assertThat(report.baseOffset()).isEqualTo(expectedBase);
+            assertThat(report.indexStatus()).isEqualTo(SegmentReport.IndexStatus.CONSISTENT);
+            assertThat(report.corruption()).isEmpty();
+            assertThat(report.isHealthy()).isTrue();
+            records += report.records();
+            expectedBase = report.nextOffset();
+        }
+        assertThat(records).isEqualTo(MESSAGE_COUNT);
+
+        SegmentReport first = SegmentVerifier.verify(segments.get(0), false);
+        assertThat(first.minTimestamp()).isEqualTo(1_000L);
+        assertThat(first.sizeHistogram()).containsOnlyOnce(first.records());
+    }
+
+    @Test
+    @DisplayName("Should rebuild a missing index so the partition reads the same as before")
+    void testRebuildsMissingIndex() throws IOException {
+        Path segment = segmentDirectories().get(0);
+        Files.delete(segment.resolve("index"));
+
+        assertThat(SegmentVerifier.verify(segment, false).indexStatus()).isEqualTo(SegmentReport.IndexStatus.MISSING);
+        assertThat(segment.resolve("index")).doesNotExist();
+
+        SegmentReport rebuilt = SegmentVerifier.verify(segment, true);
+        assertThat(rebuilt.indexRebuilt()).isTrue();
+        assertThat(rebuilt.isHealthy()).isTrue();
+        assertThat(SegmentVerifier.verify(segment, false).indexStatus()).isEqualTo(SegmentReport.IndexStatus.CONSISTENT);
+
+        try (PartitionLog log = new PartitionLog(partitionDir, config)) {
+            List<Message> messages = log.readFrom(0, MESSAGE_COUNT).messages();
+            assertThat(messages).hasSize(MESSAGE_COUNT);
+            assertThat(messages.get(5).getValue()).isEqualTo("value5");
+        }
+    }
+
+    @Test
+    @DisplayName("Should count index entries that point at the wrong position and fix them")
+    void testDetectsInconsistentIndex() throws IOException {
+        Path segment = segmentDirectories().get(0);
+        try (FileChannel index = FileChannel.open(segment.resolve("index"), StandardOpenOption.WRITE)) {
+            index.write(ByteBuffer.allocate(8).putLong(0, 12_345L), 3 * 16 + 8);
+        }
+
+        SegmentReport report = SegmentVerifier.verify(segment, false);
+        assertThat(report.indexStatus()).isEqualTo(SegmentReport.IndexStatus.INCONSISTENT);
+        assertThat(report.indexMismatches()).isEqualTo(1);
+        assertThat(report.isHealthy()).isFalse();
+
+        assertThat(SegmentVerifier.verify(segment, true).indexRebuilt()).isTrue();
+        assertThat(SegmentVerifier.verify(segment, false).indexStatus()).isEqualTo(SegmentReport.IndexStatus.CONSISTENT);
+    }
+
+    @Test
+    @DisplayName("Should report a corrupt record length without trusting it")
+    void testReportsCorruptLength() throws IOException {
+        Path segment = segmentDirectories().get(0);
+        SegmentReport intact = SegmentVerifier.verify(segment, false);
+        long thirdRecord;
+        try (FileChannel index = FileChannel.open(segment.resolve("index"), StandardOpenOption.READ)) {
+            ByteBuffer entry = ByteBuffer.allocate(16);
+            index.read(entry, 2 * 16);
+            thirdRecord = entry.getLong(8);
+        }
+        try (FileChannel log = FileChannel.open(segment.resolve("log"), StandardOpenOption.WRITE)) {
+            log.write(ByteBuffer.allocate(4).putInt(0, Integer.MAX_VALUE), thirdRecord);
+        }
+
+        SegmentReport report = SegmentVerifier.verify(segment, false);
+
+        assertThat(report.records()).isEqualTo(2);
+        assertThat(report.corruption()).hasValueSatisfying(corruption -> {
+            assertThat(corruption.offset()).isEqualTo(intact.baseOffset() + 2);
+            assertThat(corruption.filePosition()).isEqualTo(thirdRecord);
+        });
+        assertThat(report.isHealthy()).isFalse();
+    }
+
+    private List<Path> segmentDirectories() throws IOException {
+        try (Stream<Path> children = Files.list(partitionDir)) {
+            return children.filter(SegmentVerifier::isSegmentDirectory).sorted().toList();
+        }
+    }
+}
@@ -0,0 +1,274 @@
+package org.periplus.storage;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.periplus.config.BrokerConfig;
+import org.periplus.storage.remote.LocalFileSystemRemoteStorage;
+import org.periplus.storage.remote.RemoteFile;
+import org.periplus.storage.remote.RemoteSegmentMetadata;
+import org.periplus.storage.remote.RemoteStorage;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TieredStorageTest {
+    @TempDir
+    Path tempDir;
+    private BrokerConfig config;
+    private LocalFileSystemRemoteStorage remoteStorage;
+    private PartitionLog log;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        config = new BrokerConfig.Builder()
+                .brokerId(1)
+                .listenAddress("localhost:9092")
+                .segmentSizeBytes(4 * 1024)
+                .maxIndexEntries(10_000)
+                // uploads are triggered by the tests
+                .remoteUploadIntervalMs(60_000)
+                .remoteChunkBytes(512)
+                .remoteCacheBytes(4 * 512)
+                .remotePrefetchChunks(1)
+                .build();
+        remoteStorage = new LocalFileSystemRemoteStorage(tempDir.resolve("remote"));
+        log = new PartitionLog(tempDir.resolve("local").resolve("partition-0"), config, remoteStorage);
+        for (int i = 0; i < 500; i++) {
+            log.append(new Message(1_000L + i, "key" + i, "value" + i, Map.of("n", Integer.toString(i % 2))));
+        }
+        // only flushed segments are offloaded
+        log.flush();
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        log.close();
+    }
+
+    @Test
+    @DisplayName("Should upload closed segments and drop their local copies")
+    void testClosedSegmentsAreOffloaded() throws IOException {
+        int localBefore = localSegmentCount();
+
+        log.getTieredStorage().uploadClosedSegments();
+
+        assertThat(localBefore).isGreaterThan(1);
+        assertThat(localSegmentCount()).isEqualTo(1);
+        assertThat(remoteStorage.listSegments("partition-0")).hasSize(localBefore - 1);
+        assertThat(log.getLogStartOffset()).isZero();
+        assertThat(log.getLogEndOffset()).isEqualTo(500);
+    }
+
+    @Test
+    @DisplayName("Should read old offsets from remote storage and continue into local segments")
+    void testReadsSpanRemoteAndLocalSegments() throws IOException {
+        log.getTieredStorage().uploadClosedSegments();
+
+        List<Message> messages = log.readFrom(0, 1000).messages();
+
+        assertThat(messages).hasSize(500);
+        for (int i = 0; i < 500; i++) {
+            assertThat(messages.get(i).getValue()).isEqualTo("value" + i);
+        }
+        assertThat(log.readFrom(137, 1).messages().get(0).getKey()).isEqualTo("key137");
+    }
+
+    @Test
+    @DisplayName("Should apply fetch filters to remote segments")
+    void testFilteredRemoteRead() throws IOException {
+        log.getTieredStorage().uploadClosedSegments();
+
+        ReadResult result = log.readFrom(0, 1000, log.getLogEndOffset(), FetchFilter.headerEquals("n", "1"));
+
+        assertThat(result.messages()).hasSize(250);
+        assertThat(result.nextOffset()).isEqualTo(500);
+    }
+
+    @Test
+    @DisplayName("Should keep the chunk cache within its bound")
+    void testChunkCacheIsBounded() throws IOException {
+        log.getTieredStorage().uploadClosedSegments();
+
+        log.readFrom(0, 1000);
+
+        assertThat(log.getTieredStorage().getCache().size()).isLessThanOrEqualTo(4);
+    }
+
+    @Test
+    @DisplayName("Should find remote segments again after a restart")
+    void testRemoteSegmentsSurviveRestart() throws IOException {
+        log.getTieredStorage().uploadClosedSegments();
+        log.close();
+
+        log = new PartitionLog(tempDir.resolve("local").resolve("partition-0"), config, remoteStorage);
+
+        assertThat(log.getLogStartOffset()).isZero();
+        assertThat(log.readFrom(0, 1000).messages()).hasSize(500);
+    }
+
+    @Test
+    @DisplayName("Should keep producer and transaction state of offloaded segments across a crash")
+    void testProducerStateSurvivesOffloadAndCrash() throws IOException {
+        Path partition = tempDir.resolve("local").resolve("partition-1");
+        Path crashed = tempDir.resolve("crashed").resolve("partition-1");
+        try (PartitionLog original = new PartitionLog(partition, config, remoteStorage)) {
+            for (int sequence = 0; sequence < 5; sequence++) {
+                original.append(new Message(1_000L, "key", "idempotent" + sequence, Map.of(), 7L, sequence));
+            }
+            Message open = new Message(1_000L, "key", "open", Map.of(), 8L, 0);
+            open.setTransactional(true);
+            original.append(open);
+            for (int i = 0; i < 500; i++) {
+                original.append(new Message(1_000L + i, "key" + i, "value" + i, Map.of()));
+            }
+            original.flush();
+            original.getTieredStorage().uploadClosedSegments();
+            assertThat(original.closedSegments()).isEmpty();
+
+            // a copy taken now is what the disk holds if the broker dies without closing the log
+            Files.createDirectories(crashed.getParent());
+            copyDirectory(partition, crashed);
+        }
+
+        try (PartitionLog recovered = new PartitionLog(crashed, config, remoteStorage)) {
+            Message retry = new Message(1_000L, "key", "idempotent4", Map.of(), 7L, 4);
+            assertThat(recovered.append(retry).logicalOffset()).isEqualTo(4);
+            assertThat(recovered.getLogEndOffset()).isEqualTo(506);
+
+            recovered.updateHighWatermark(recovered.getLogEndOffset());
+            assertThat(recovered.getLastStableOffset()).isEqualTo(5);
+        }
+    }
+
+    @Test
+    @DisplayName("Should keep appending while a remote read waits for a chunk")
+    void testRemoteReadDoesNotBlockAppends() throws Exception {
+        log.getTieredStorage().uploadClosedSegments();
+        log.close();
+        CountDownLatch fetchStarted = new CountDownLatch(1);
+        CountDownLatch releaseFetch = new CountDownLatch(1);
+        RemoteStorage slowStorage = new RemoteStorage() {
+            @Override
+            public void uploadSegment(RemoteSegmentMetadata metadata, Path logFile, Path indexFile) throws IOException {
+                remoteStorage.uploadSegment(metadata, logFile, indexFile);
+            }
+
+            @Override
+            public byte[] fetch(RemoteSegmentMetadata metadata, RemoteFile file, long position, int length) throws IOException {
+                fetchStarted.countDown();
+                try {
+                    releaseFetch.await();
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+                return remoteStorage.fetch(metadata, file, position, length);
+            }
+
+            @Override
+            public List<RemoteSegmentMetadata> listSegments(String partition) throws IOException {
+                return remoteStorage.listSegments(partition);
+            }
+
+            @Override
+            public void deleteSegment(RemoteSegmentMetadata metadata) throws IOException {
+                remoteStorage.deleteSegment(metadata);
+            }
+        };
+        log = new PartitionLog(tempDir.resolve("local").resolve("partition-0"), config, slowStorage);
+
+        ExecutorService reader = Executors.newSingleThreadExecutor();
+        try {
+            Future<ReadResult> read = reader.submit(() -> log.readFrom(0, 10));
+            assertThat(fetchStarted.await(5, TimeUnit.SECONDS)).isTrue();
+
+            CompletableFuture<OffsetEntry> append = CompletableFuture.supplyAsync(() -> {
+                try {
+                    OffsetEntry entry = log.append(new Message(2_000L, "key", "while-reading", Map.of()));
+                    log.updateHighWatermark(log.getLogEndOffset());
+                    return entry;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            assertThat(append.get(5, TimeUnit.SECONDS).logicalOffset()).isEqualTo(500);
+            assertThat(read.isDone()).isFalse();
+
+            releaseFetch.countDown();
+            assertThat(read.get(5, TimeUnit.SECONDS).messages()).hasSize(10);
+        } finally {
+            releaseFetch.countDown();
+            reader.shutdownNow();
+        }
+    }
+
+    @Test
+    @DisplayName("Should discard an upload that a truncation made stale")
+    void testTruncationDuringUploadDiscardsRemoteCopy() throws IOException {
+        log.close();
+        RemoteStorage truncatingStorage = new RemoteStorage() {
+            @Override
+            public void uploadSegment(RemoteSegmentMetadata metadata, Path logFile, Path indexFile) throws IOException {
+                remoteStorage.uploadSegment(metadata, logFile, indexFile);
+                // the log is truncated into the first segment while its upload is in flight
+                if (metadata.baseOffset() == 0) {
+                    log.truncateTo(10);
+                }
+            }
+
+            @Override
+            public byte[] fetch(RemoteSegmentMetadata metadata, RemoteFile file, long position, int length) throws IOException {
+                return remoteStorage.fetch(metadata, file, position, length);
+            }
+
+            @Override
+            public List<RemoteSegmentMetadata> listSegments(String partition) throws IOException {
+                return remoteStorage.listSegments(partition);
+            }
+
+            @Override
+            public void deleteSegment(RemoteSegmentMetadata metadata) throws IOException {
+                remoteStorage.deleteSegment(metadata);
+            }
+        };
+        log = new PartitionLog(tempDir.resolve("local").resolve("partition-0"), config, truncatingStorage);
+
+        log.getTieredStorage().uploadClosedSegments();
+
+        assertThat(remoteStorage.listSegments("partition-0")).isEmpty();
+        assertThat(localSegmentCount()).isEqualTo(1);
+        assertThat(log.getLogEndOffset()).isEqualTo(10);
+        log.append(new Message(2_000L, "key", "after-truncation", Map.of()));
+        List<Message> messages = log.readFrom(0, 1000).messages();
+        assertThat(messages).hasSize(11);
+        assertThat(messages.get(10).getValue()).isEqualTo("after-truncation");
+    }
+
+    private static void copyDirectory(Path source, Path target) throws IOException {
+        try (var files = Files.walk(source)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.copy(file, target.resolve(source.relativize(file).toString()));
+            }
+        }
+    }
+
+    private int localSegmentCount() throws IOException {
+        try (var children = Files.list(tempDir.resolve("local").resolve("partition-0"))) {
+            return (int) children.filter(path -> path.getFileName().toString().matches("segment-\\d{16}")).count();
+        }
+    }
+}
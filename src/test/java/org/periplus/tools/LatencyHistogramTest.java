@@ -0,0 +1,55 @@
+package org.periplus.tools;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class LatencyHistogramTest {
+
+    @Test
+    @DisplayName("Should report percentiles within the bucket precision")
+    void testPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long micros = 1; micros <= 10_000; micros++) {
+            histogram.recordNanos(micros * 1_000);
+        }
+
+        assertThat(histogram.getTotalCount()).isEqualTo(10_000);
+        assertThat((double) histogram.percentileNanos(50)).isCloseTo(5_000_000, within(5_000_000 * 0.016));
+        assertThat((double) histogram.percentileNanos(99)).isCloseTo(9_900_000, within(9_900_000 * 0.016));
+        assertThat((double) histogram.percentileNanos(99.9)).isCloseTo(9_990_000, within(9_990_000 * 0.016));
+        assertThat(histogram.percentileNanos(100)).isEqualTo(10_000_000);
+    }
+
+    @Test
+    @DisplayName("Should map every value into the bucket that covers it")
+    void testBucketBounds() {
+        for (long value : new long[]{0, 1, 127, 128, 129, 255, 256, 1_000_003, Long.MAX_VALUE / 3, Long.MAX_VALUE}) {
+            int bucket = LatencyHistogram.bucketOf(value);
+            assertThat(LatencyHistogram.highestValueIn(bucket)).isGreaterThanOrEqualTo(value);
+            if (bucket > 0) {
+                assertThat(LatencyHistogram.highestValueIn(bucket - 1)).isLessThan(value);
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("Should combine per-thread histograms")
+    void testAdd() {
+        LatencyHistogram fast = new LatencyHistogram();
+        LatencyHistogram slow = new LatencyHistogram();
+        for (int i = 0; i < 99; i++) {
+            fast.recordNanos(100);
+        }
+        slow.recordNanos(50_000_000);
+
+        fast.add(slow);
+
+        assertThat(fast.getTotalCount()).isEqualTo(100);
+        assertThat(fast.percentileNanos(99)).isEqualTo(100);
+        assertThat(fast.percentileNanos(99.9)).isEqualTo(50_000_000);
+        assertThat(fast.getMaxNanos()).isEqualTo(50_000_000);
+    }
+}
@@ -0,0 +1,51 @@
+package org.periplus.tools;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.periplus.config.BrokerConfig;
+
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class LoadGeneratorTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    @DisplayName("Should deliver every produced message to every consumer")
+    void testShortRun() throws Exception {
+        BrokerConfig config = new BrokerConfig.Builder()
+                .brokerId(1)
+                .listenAddress("localhost:9092")
+                .dataDirectory(tempDir.toString())
+                .segmentSizeBytes(64 * 1024)
+                .maxIndexEntries(10_000)
+                .build();
+        LoadGeneratorOptions options = LoadGeneratorOptions.parse(new String[]{
+                "--producers", "2", "--consumers", "2", "--rate", "2000",
+                "--message-bytes", "100", "--headers", "3", "--duration", "2", "--warmup", "1"});
+
+        LoadReport report = new LoadGenerator(config, options).run();
+
+        assertThat(report.messages()).isBetween(1_800L, 2_000L);
+        assertThat(report.bytes()).isEqualTo(report.messages() * 100);
+        assertThat(report.produceLatency().getTotalCount()).isEqualTo(report.messages());
+        assertThat(report.endToEndLatency().getTotalCount()).isEqualTo(2 * report.messages());
+        assertThat(report.format()).contains("p999", "segment.bytes=65536");
+        assertThat(tempDir).isEmptyDirectory();
+    }
+
+    @Test
+    @DisplayName("Should reject unknown options and inconsistent durations")
+    void testOptionValidation() {
+        assertThatThrownBy(() -> LoadGeneratorOptions.parse(new String[]{"--partitions", "4"}))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("partitions");
+        assertThatThrownBy(() -> LoadGeneratorOptions.parse(new String[]{"--duration", "5", "--warmup", "5"}))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,85 @@
+package org.periplus.tools;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.periplus.config.BrokerConfig;
+import org.periplus.storage.Message;
+import org.periplus.storage.PartitionLog;
+import org.periplus.storage.SegmentReport;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SegmentInspectorTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    @DisplayName("Should verify every partition of a data directory and rebuild what is broken")
+    void testInspectDataDirectory() throws Exception {
+        BrokerConfig config = new BrokerConfig.Builder()
+                .brokerId(1)
+                .listenAddress("localhost:9092")
+                .segmentSizeBytes(4 * 1024)
+                .maxIndexEntries(10_000)
+                .build();
+        for (String partition : List.of("partition-0", "partition-1")) {
+            try (PartitionLog log = new PartitionLog(tempDir.resolve(partition), config)) {
+                for (int i = 0; i < 200; i++) {
+                    log.append(new Message(System.currentTimeMillis(), "key" + i, "value" + i, new HashMap<>()));
+                }
+            }
+        }
+        Files.delete(tempDir.resolve("partition-1").resolve("segment-0000000000000000").resolve("index"));
+
+        SegmentInspector.Inspection before = new SegmentInspector(4, false).inspect(List.of(tempDir));
+        assertThat(before.partitions()).hasSize(2);
+        assertThat(before.isHealthy()).isFalse();
+        assertThat(before.format(false)).contains("index MISSING", "total: ");
+
+        SegmentInspector.Inspection after = new SegmentInspector(4, true).inspect(List.of(tempDir));
+        assertThat(after.isHealthy()).isTrue();
+        assertThat(after.partitions().values().stream().flatMap(List::stream).mapToLong(SegmentReport::records).sum())
+                .isEqualTo(400);
+        assertThat(after.failures()).isEmpty();
+    }
+
+    @Test
+    @DisplayName("Should report offsets missing or held twice between segments")
+    void testReportsGapsAndOverlaps() throws Exception {
+        BrokerConfig config = new BrokerConfig.Builder()
+                .brokerId(1)
+                .listenAddress("localhost:9092")
+                .segmentSizeBytes(4 * 1024)
+                .maxIndexEntries(10_000)
+                .build();
+        Path partition = tempDir.resolve("partition-0");
+        try (PartitionLog log = new PartitionLog(partition, config)) {
+            for (int i = 0; i < 300; i++) {
+                log.append(new Message(System.currentTimeMillis(), "key" + i, "value" + i, new HashMap<>()));
+            }
+        }
+        List<SegmentReport> segments = new SegmentInspector(1, false).inspect(List.of(partition))
+                .partitions().get(partition.toAbsolutePath().normalize());
+        assertThat(segments).hasSizeGreaterThan(2);
+        assertThat(SegmentInspector.Inspection.discontinuities(segments)).isEmpty();
+
+        // moving a segment's base offset up leaves a gap before it and makes it overlap the next one
+        Path second = segments.get(1).segmentDirectory();
+        Files.move(second, second.resolveSibling(String.format("segment-%016d", segments.get(1).baseOffset() + 5)));
+
+        SegmentInspector.Inspection inspection = new SegmentInspector(1, false).inspect(List.of(partition));
+        List<SegmentInspector.Discontinuity> discontinuities = SegmentInspector.Inspection.discontinuities(
+                inspection.partitions().get(partition.toAbsolutePath().normalize()));
+
+        assertThat(discontinuities).extracting(SegmentInspector.Discontinuity::size).containsExactly(5L, -5L);
+        assertThat(inspection.isHealthy()).isFalse();
+        assertThat(inspection.format(false)).contains("gap of 5 offsets", "overlap of 5 offsets");
+    }
+}
@@ -0,0 +1,274 @@
+package org.periplus.transaction;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.periplus.config.BrokerConfig;
+import org.periplus.replication.InMemoryReplicationTransport;
+import org.periplus.replication.Replica;
+import org.periplus.storage.FetchFilter;
+import org.periplus.storage.IsolationLevel;
+import org.periplus.storage.Message;
+import org.periplus.storage.PartitionLog;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class TransactionCoordinatorTest {
+    private static final long TIMEOUT_MS = 10_000;
+
+    @TempDir
+    Path tempDir;
+    private BrokerConfig config;
+    private InMemoryReplicationTransport transport;
+    private Replica partition0;
+    private Replica partition1;
+    private AtomicLong clock;
+    private TransactionCoordinator coordinator;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        config = new BrokerConfig.Builder()
+                .brokerId(1)
+                .listenAddress("localhost:9092")
+                .maxIndexEntries(10_000)
+                .transactionTimeoutMs(TIMEOUT_MS)
+                .build();
+        transport = new InMemoryReplicationTransport();
+        partition0 = openPartition("partition-0");
+        partition1 = openPartition("partition-1");
+        clock = new AtomicLong(0);
+        coordinator = new TransactionCoordinator(config, clock::get);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        coordinator.close();
+        for (Replica partition : List.of(partition0, partition1)) {
+            partition.close();
+            partition.getLog().close();
+        }
+        transport.close();
+    }
+
+    @Test
+    @DisplayName("Committed writes should become visible on every partition at once")
+    void testCommitAcrossPartitions() throws IOException {
+        TransactionalProducer producer = new TransactionalProducer(coordinator, 100L);
+        producer.beginTransaction();
+        producer.send(partition0, createTestMessage("a"));
+        producer.send(partition1, createTestMessage("b"));
+        producer.send(partition0, createTestMessage("c"));
+
+        assertThat(values(partition0, IsolationLevel.READ_COMMITTED)).isEmpty();
+        assertThat(values(partition1, IsolationLevel.READ_COMMITTED)).isEmpty();
+        assertThat(values(partition0, IsolationLevel.READ_UNCOMMITTED)).containsExactly("a", "c");
+        assertThat(partition0.getLog().getLastStableOffset()).isZero();
+
+        producer.commitTransaction();
+
+        assertThat(values(partition0, IsolationLevel.READ_COMMITTED)).containsExactly("a", "c");
+        assertThat(values(partition1, IsolationLevel.READ_COMMITTED)).containsExactly("b");
+        assertThat(partition0.getLog().getLastStableOffset()).isEqualTo(partition0.getLog().getLogEndOffset());
+        // the commit markers are in the logs but never returned to consumers
+        assertThat(partition0.getLog().readFrom(0, 10).messages()).hasSize(3);
+    }
+
+    @Test
+    @DisplayName("Read-committed consumers should skip aborted data but see everything around it")
+    void testAbortedDataIsSkipped() throws IOException {
+        TransactionalProducer producer = new TransactionalProducer(coordinator, 100L);
+        producer.beginTransaction();
+        producer.send(partition0, createTestMessage("aborted-1"));
+        partition0.append(createTestMessage("plain-1"));
+        producer.send(partition0, createTestMessage("aborted-2"));
+        producer.send(partition1, createTestMessage("aborted-3"));
+        producer.abortTransaction();
+        partition0.append(createTestMessage("plain-2"));
+
+        producer.beginTransaction();
+        producer.send(partition0, createTestMessage("committed"));
+        producer.commitTransaction();
+
+        assertThat(values(partition0, IsolationLevel.READ_COMMITTED)).containsExactly("plain-1", "plain-2", "committed");
+        assertThat(values(partition1, IsolationLevel.READ_COMMITTED)).isEmpty();
+        assertThat(values(partition0, IsolationLevel.READ_UNCOMMITTED))
+                .containsExactly("aborted-1", "plain-1", "aborted-2", "plain-2", "committed");
+    }
+
+    @Test
+    @DisplayName("An abort should hide only its own producer's data inside the aborted range")
+    void testAbortKeepsInterleavedTransactionsVisible() throws IOException {
+        TransactionalProducer aborting = new TransactionalProducer(coordinator, 100L);
+        TransactionalProducer committing = new TransactionalProducer(coordinator, 200L);
+        aborting.beginTransaction();
+        committing.beginTransaction();
+        aborting.send(partition0, createTestMessage("aborted-1"));
+        committing.send(partition0, createTestMessage("committed-1"));
+        aborting.send(partition0, createTestMessage("aborted-2"));
+        committing.send(partition0, createTestMessage("committed-2"));
+        aborting.abortTransaction();
+        committing.commitTransaction();
+
+        assertThat(values(partition0, IsolationLevel.READ_COMMITTED)).containsExactly("committed-1", "committed-2");
+
+        // the range is written with the next flush and read back on restart
+        partition0.close();
+        partition0.getLog().close();
+        partition0 = openPartition("partition-0");
+        assertThat(values(partition0, IsolationLevel.READ_COMMITTED)).containsExactly("committed-1", "committed-2");
+    }
+
+    @Test
+    @DisplayName("An open transaction should hold back the last stable offset, not other producers")
+    void testLastStableOffsetStopsAtOldestOpenTransaction() throws IOException {
+        partition0.append(createTestMessage("before"));
+        TransactionalProducer slow = new TransactionalProducer(coordinator, 100L);
+        TransactionalProducer fast = new TransactionalProducer(coordinator, 200L);
+        slow.beginTransaction();
+        slow.send(partition0, createTestMessage("slow"));
+        fast.beginTransaction();
+        fast.send(partition0, createTestMessage("fast"));
+        fast.commitTransaction();
+
+        assertThat(partition0.getLog().getLastStableOffset()).isEqualTo(1);
+        assertThat(values(partition0, IsolationLevel.READ_COMMITTED)).containsExactly("before");
+
+        slow.commitTransaction();
+
+        assertThat(values(partition0, IsolationLevel.READ_COMMITTED)).containsExactly("before", "slow", "fast");
+    }
+
+    @Test
+    @DisplayName("Transactions left open past the timeout should be aborted")
+    void testExpiredTransactionIsAborted() throws IOException {
+        TransactionalProducer producer = new TransactionalProducer(coordinator, 100L);
+        producer.beginTransaction();
+        producer.send(partition0, createTestMessage("abandoned"));
+
+        clock.addAndGet(TIMEOUT_MS);
+        coordinator.abortExpiredTransactions();
+
+        assertThat(coordinator.hasOpenTransaction(100L)).isFalse();
+        assertThat(values(partition0, IsolationLevel.READ_COMMITTED)).isEmpty();
+        assertThat(partition0.getLog().getLastStableOffset()).isEqualTo(partition0.getLog().getLogEndOffset());
+        assertThatThrownBy(producer::commitTransaction).isInstanceOf(TransactionException.class);
+
+        producer.beginTransaction();
+        producer.send(partition0, createTestMessage("retried"));
+        producer.commitTransaction();
+        assertThat(values(partition0, IsolationLevel.READ_COMMITTED)).containsExactly("retried");
+    }
+
+    @Test
+    @DisplayName("Sends into a transaction the coordinator has aborted should be rejected")
+    void testSendAfterExpiryIsRejected() throws IOException {
+        TransactionalProducer producer = new TransactionalProducer(coordinator, 100L);
+        producer.beginTransaction();
+        producer.send(partition0, createTestMessage("abandoned"));
+        long staleEpoch = coordinator.begin(300L);
+        clock.addAndGet(TIMEOUT_MS);
+        coordinator.abortExpiredTransactions();
+
+        assertThatThrownBy(() -> producer.send(partition0, createTestMessage("late")))
+                .isInstanceOf(TransactionException.class);
+        assertThatThrownBy(() -> coordinator.addPartition(300L, staleEpoch, partition1))
+                .isInstanceOf(TransactionException.class);
+        partition0.append(createTestMessage("plain"));
+
+        assertThat(partition0.getLog().getLastStableOffset()).isEqualTo(partition0.getLog().getLogEndOffset());
+        assertThat(values(partition0, IsolationLevel.READ_COMMITTED)).containsExactly("plain");
+
+        // a new transaction gets a new epoch; the old one stays fenced
+        producer.beginTransaction();
+        assertThatThrownBy(() -> coordinator.commit(300L, staleEpoch)).isInstanceOf(TransactionException.class);
+        producer.send(partition0, createTestMessage("retried"));
+        producer.commitTransaction();
+        assertThat(values(partition0, IsolationLevel.READ_COMMITTED)).containsExactly("plain", "retried");
+    }
+
+    @Test
+    @DisplayName("Aborted data and open transactions should survive a restart")
+    void testTransactionStateSurvivesRestart() throws IOException {
+        TransactionalProducer producer = new TransactionalProducer(coordinator, 100L);
+        producer.beginTransaction();
+        producer.send(partition0, createTestMessage("aborted"));
+        producer.abortTransaction();
+        TransactionalProducer open = new TransactionalProducer(coordinator, 200L);
+        open.beginTransaction();
+        open.send(partition0, createTestMessage("open"));
+
+        partition0.close();
+        partition0.getLog().close();
+        partition0 = openPartition("partition-0");
+
+        assertThat(values(partition0, IsolationLevel.READ_UNCOMMITTED)).containsExactly("aborted", "open");
+        assertThat(values(partition0, IsolationLevel.READ_COMMITTED)).isEmpty();
+        assertThat(partition0.getLog().getLastStableOffset()).isEqualTo(2);
+    }
+
+    @Test
+    @DisplayName("A transaction restored after a restart should be aborted by the partition once it times out")
+    void testRestoredTransactionIsAbortedByPartition() throws IOException {
+        TransactionalProducer producer = new TransactionalProducer(coordinator, 100L);
+        producer.beginTransaction();
+        producer.send(partition0, createTestMessage("orphaned"));
+        partition0.append(createTestMessage("plain"));
+
+        // the coordinator still refers to the partition as it was before the restart
+        partition0.close();
+        partition0.getLog().close();
+        partition0 = openPartition("partition-0");
+        assertThat(partition0.getLog().getLastStableOffset()).isZero();
+
+        long now = System.currentTimeMillis();
+        partition0.abortExpiredTransactions(now);
+        assertThat(partition0.getLog().openTransactions()).containsOnlyKeys(100L);
+
+        partition0.abortExpiredTransactions(now + TIMEOUT_MS);
+        assertThat(partition0.getLog().openTransactions()).isEmpty();
+        assertThat(partition0.getLog().getLastStableOffset()).isEqualTo(partition0.getLog().getLogEndOffset());
+        assertThat(values(partition0, IsolationLevel.READ_COMMITTED)).containsExactly("plain");
+    }
+
+    @Test
+    @DisplayName("A commit requested after the timeout should be rejected and the transaction aborted")
+    void testCommitAfterTimeoutIsRejected() throws IOException {
+        TransactionalProducer producer = new TransactionalProducer(coordinator, 100L);
+        producer.beginTransaction();
+        producer.send(partition0, createTestMessage("late"));
+
+        clock.addAndGet(TIMEOUT_MS);
+        assertThatThrownBy(producer::commitTransaction).isInstanceOf(TransactionException.class);
+        coordinator.abortExpiredTransactions();
+
+        assertThat(coordinator.hasOpenTransaction(100L)).isFalse();
+        assertThat(values(partition0, IsolationLevel.READ_COMMITTED)).isEmpty();
+    }
+
+    private Replica openPartition(String name) throws IOException {
+        PartitionLog log = new PartitionLog(tempDir.resolve(name), config);
+        Replica replica = new Replica(config, log, transport);
+        replica.becomeLeader(Set.of());
+        return replica;
+    }
+
+    private static List<String> values(Replica partition, IsolationLevel isolation) throws IOException {
+        return partition.fetchForConsumer(0, 100, FetchFilter.ALL, isolation).messages().stream()
+                .map(Message::getValue)
+                .toList();
+    }
+
+    private static Message createTestMessage(String value) {
+        return new Message(System.currentTimeMillis(), "key", value, new HashMap<>());
+    }
+}